@@ -0,0 +1,502 @@
+package com.manulaiko.assetsobscurer.assets;
+
+import com.manulaiko.assetsobscurer.main.EncryptionManager;
+import com.manulaiko.assetsobscurer.main.Header;
+import lombok.Getter;
+
+import javax.crypto.Cipher;
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.NonWritableChannelException;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Asset channel.
+ * ==============
+ *
+ * Read only channel that decrypts an encrypted asset on the fly.
+ *
+ * Only the blocks that are actually read are decrypted, so seeking
+ * to any position of the asset is cheap. Sequential reads reuse
+ * the same cipher.
+ *
+ * @author Manulaiko <manulaiko@gmail.com>
+ */
+public class AssetChannel implements SeekableByteChannel {
+    /**
+     * Opens an encrypted asset.
+     *
+     * @param path Path to the encrypted asset.
+     *
+     * @return Channel for the asset.
+     *
+     * @throws IOException If the asset couldn't be opened.
+     */
+    public static AssetChannel open(Path path) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+
+        try {
+            return new AssetChannel(channel, 0, channel.size());
+        } catch (IOException e) {
+            channel.close();
+
+            throw e;
+        }
+    }
+
+    /**
+     * Underlying channel.
+     *
+     * Null if the asset is read from `_mapped`.
+     */
+    private final FileChannel _channel;
+
+    /**
+     * Called when the channel is closed (null if the asset is read from `_mapped`).
+     */
+    private final Closeable _onClose;
+
+    /**
+     * Memory mapped encrypted asset.
+     *
+     * Null if the asset is read from `_channel`.
+     */
+    private final ByteBuffer _mapped;
+
+    /**
+     * Whether the channel is open or not.
+     */
+    private boolean _isOpen = true;
+
+    /**
+     * Position of the payload in the underlying channel.
+     */
+    private final long _offset;
+
+    /**
+     * Payload length (ciphertext).
+     */
+    private final long _length;
+
+    /**
+     * Asset header.
+     */
+    @Getter
+    private final Header _header;
+
+    /**
+     * Decrypted size of the asset.
+     */
+    private final long _size;
+
+    /**
+     * Current position.
+     */
+    private long _position = 0;
+
+    /**
+     * Cipher synchronized with `_cipherBlock`.
+     */
+    private Cipher _cipher;
+
+    /**
+     * Next block `_cipher` expects.
+     */
+    private long _cipherBlock = -1;
+
+    /**
+     * Ciphertext buffer.
+     */
+    private final ByteBuffer _encrypted = ByteBuffer.allocate(EncryptionManager.BUFFER_SIZE);
+
+    /**
+     * Decrypted bytes starting at `_decryptedPosition`.
+     */
+    private final ByteBuffer _decrypted = ByteBuffer.allocate(EncryptionManager.BUFFER_SIZE);
+
+    /**
+     * Position of the first byte of `_decrypted`.
+     */
+    private long _decryptedPosition = 0;
+
+    /**
+     * Constructor.
+     *
+     * `channel` is closed when this channel is closed.
+     *
+     * @param channel Channel with the encrypted asset.
+     * @param offset  Position of the encrypted asset in `channel`.
+     * @param length  Length of the encrypted asset.
+     *
+     * @throws IOException If the header couldn't be read.
+     */
+    public AssetChannel(FileChannel channel, long offset, long length) throws IOException {
+        this(channel, offset, length, channel);
+    }
+
+    /**
+     * Constructor.
+     *
+     * `channel` is only read with positional reads, so it can be
+     * shared with other threads.
+     *
+     * @param channel Channel with the encrypted asset.
+     * @param offset  Position of the encrypted asset in `channel`.
+     * @param length  Length of the encrypted asset.
+     * @param onClose Called when this channel is closed.
+     *
+     * @throws IOException If the header couldn't be read.
+     */
+    public AssetChannel(FileChannel channel, long offset, long length, Closeable onClose) throws IOException {
+        this._channel = channel;
+        this._onClose = onClose;
+        this._mapped = null;
+
+        this._header = this._readHeader(new BufferedInputStream(new InputStream() {
+            private long _position = offset;
+
+            @Override
+            public int read() throws IOException {
+                byte[] b = new byte[1];
+
+                return this.read(b, 0, 1) == -1 ? -1 : b[0] & 0xFF;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                int read = channel.read(ByteBuffer.wrap(b, off, len), this._position);
+                if (read > 0) {
+                    this._position += read;
+                }
+
+                return read;
+            }
+        }));
+
+        this._offset = offset + this._header.length();
+        this._length = length - this._header.length();
+        this._size = this._header.isLegacy() ? this._legacySize() : this._length;
+        this._decrypted.limit(0);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param mapped Memory mapped encrypted asset (from its position to its limit).
+     *
+     * @throws IOException If the header couldn't be read.
+     */
+    public AssetChannel(ByteBuffer mapped) throws IOException {
+        this._channel = null;
+        this._onClose = null;
+        this._mapped = mapped.slice();
+
+        this._header = this._readHeader(new InputStream() {
+            private final ByteBuffer _buffer = AssetChannel.this._mapped.duplicate();
+
+            @Override
+            public int read() {
+                return this._buffer.hasRemaining() ? this._buffer.get() & 0xFF : -1;
+            }
+        });
+
+        this._offset = this._header.length();
+        this._length = this._mapped.remaining() - this._header.length();
+        this._size = this._header.isLegacy() ? this._legacySize() : this._length;
+        this._decrypted.limit(0);
+    }
+
+    /**
+     * Reads the asset header.
+     *
+     * @param input Input positioned at the beginning of the asset.
+     *
+     * @return Asset header.
+     *
+     * @throws IOException If the header couldn't be read.
+     */
+    private Header _readHeader(InputStream input) throws IOException {
+        try {
+            return EncryptionManager.instance().readHeader(new DataInputStream(input));
+        } catch (IOException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException("Couldn't read asset header!", e);
+        }
+    }
+
+    /**
+     * Fills a buffer with the bytes at the given position of the encrypted asset.
+     *
+     * @param dst      Buffer to fill.
+     * @param position Position in the underlying channel (or mapped buffer).
+     *
+     * @throws IOException If couldn't read the asset.
+     */
+    private void _readFully(ByteBuffer dst, long position) throws IOException {
+        if (this._mapped != null) {
+            if (position + dst.remaining() > this._mapped.limit()) {
+                throw new IOException("Unexpected end of asset!");
+            }
+
+            ByteBuffer src = this._mapped.duplicate();
+            src.position((int) position);
+            src.limit((int) position + dst.remaining());
+            dst.put(src);
+
+            return;
+        }
+
+        while (dst.hasRemaining()) {
+            if (this._channel.read(dst, position + dst.position()) == -1) {
+                throw new IOException("Unexpected end of asset!");
+            }
+        }
+    }
+
+    /**
+     * Reads a sequence of bytes from this channel into the given buffer.
+     *
+     * @param dst Destination buffer.
+     *
+     * @return Amount of read bytes or -1 if the end of the asset has been reached.
+     *
+     * @throws IOException If couldn't read the asset.
+     */
+    @Override
+    public int read(ByteBuffer dst) throws IOException {
+        if (this._position >= this._size) {
+            return -1;
+        }
+
+        long start = this._position - this._decryptedPosition;
+        if (start < 0 || start >= this._decrypted.limit()) {
+            this._fill();
+            start = this._position - this._decryptedPosition;
+        }
+
+        int length = (int) Math.min(dst.remaining(), this._decrypted.limit() - start);
+        ByteBuffer slice = this._decrypted.duplicate();
+        slice.position((int) start);
+        slice.limit((int) start + length);
+
+        dst.put(slice);
+        this._position += length;
+
+        return length;
+    }
+
+    /**
+     * Decrypts the blocks around the current position.
+     *
+     * @throws IOException If couldn't read the asset.
+     */
+    private void _fill() throws IOException {
+        long block = this._position / EncryptionManager.BLOCK_SIZE;
+        long start = block * EncryptionManager.BLOCK_SIZE;
+
+        try {
+            if (this._cipher == null || this._cipherBlock != block) {
+                this._releaseCipher();
+                this._cipher = EncryptionManager.instance().cipher(
+                        this._header,
+                        block,
+                        this._header.isLegacy() ? this._previous(block) : null
+                );
+            }
+
+            this._encrypted.clear();
+            this._encrypted.limit((int) Math.min(this._encrypted.capacity(), this._length - start));
+            this._readFully(this._encrypted, this._offset + start);
+            this._encrypted.flip();
+
+            this._decrypted.clear();
+            this._cipher.update(this._encrypted, this._decrypted);
+            this._decrypted.flip();
+        } catch (IOException e) {
+            throw e;
+        } catch (Exception e) {
+            // Its state is unknown, don't give it back to the pool.
+            this._cipher = null;
+
+            throw new IOException("Couldn't decrypt asset!", e);
+        }
+
+        this._decryptedPosition = start;
+        this._cipherBlock = block + this._decrypted.limit() / EncryptionManager.BLOCK_SIZE;
+
+        // Don't expose the padding of legacy assets.
+        if (this._decryptedPosition + this._decrypted.limit() > this._size) {
+            this._decrypted.limit((int) (this._size - this._decryptedPosition));
+        }
+    }
+
+    /**
+     * Gives back the cipher to the pool, if any.
+     */
+    private void _releaseCipher() {
+        if (this._cipher != null) {
+            EncryptionManager.instance().release(this._cipher);
+            this._cipher = null;
+        }
+    }
+
+    /**
+     * Returns the ciphertext of the block before the given one.
+     *
+     * @param block Block index.
+     *
+     * @return Ciphertext of the previous block, or null for the first block.
+     *
+     * @throws IOException If couldn't read the asset.
+     */
+    private byte[] _previous(long block) throws IOException {
+        if (block == 0) {
+            return null;
+        }
+
+        ByteBuffer previous = ByteBuffer.allocate(EncryptionManager.BLOCK_SIZE);
+        this._readFully(previous, this._offset + (block - 1) * EncryptionManager.BLOCK_SIZE);
+
+        return previous.array();
+    }
+
+    /**
+     * Calculates the decrypted size of a legacy asset.
+     *
+     * The last block is decrypted to find out how many padding bytes it contains.
+     *
+     * @return Decrypted size.
+     *
+     * @throws IOException If couldn't read the asset.
+     */
+    private long _legacySize() throws IOException {
+        if (this._length < EncryptionManager.BLOCK_SIZE || this._length % EncryptionManager.BLOCK_SIZE != 0) {
+            throw new IOException("Invalid legacy asset length!");
+        }
+
+        long block = this._length / EncryptionManager.BLOCK_SIZE - 1;
+
+        try {
+            byte[] previous = this._previous(block);
+            ByteBuffer last = ByteBuffer.allocate(EncryptionManager.BLOCK_SIZE);
+            this._readFully(last, this._offset + block * EncryptionManager.BLOCK_SIZE);
+
+            byte[] decrypted;
+            Cipher cipher = EncryptionManager.instance().cipher(this._header, block, previous);
+            try {
+                decrypted = cipher.doFinal(last.array());
+            } finally {
+                EncryptionManager.instance().release(cipher);
+            }
+            int padding = decrypted[decrypted.length - 1] & 0xFF;
+            if (padding < 1 || padding > EncryptionManager.BLOCK_SIZE) {
+                throw new IOException("Invalid legacy asset padding!");
+            }
+
+            return this._length - padding;
+        } catch (IOException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException("Couldn't decrypt asset!", e);
+        }
+    }
+
+    /**
+     * Writing isn't supported.
+     *
+     * @param src Source buffer.
+     *
+     * @return Nothing.
+     */
+    @Override
+    public int write(ByteBuffer src) {
+        throw new NonWritableChannelException();
+    }
+
+    /**
+     * Returns the current position.
+     *
+     * @return Current position.
+     */
+    @Override
+    public long position() {
+        return this._position;
+    }
+
+    /**
+     * Sets the current position.
+     *
+     * @param newPosition New position.
+     *
+     * @return This channel.
+     */
+    @Override
+    public SeekableByteChannel position(long newPosition) {
+        if (newPosition < 0) {
+            throw new IllegalArgumentException("Position can't be negative!");
+        }
+
+        this._position = newPosition;
+
+        return this;
+    }
+
+    /**
+     * Returns the decrypted size of the asset.
+     *
+     * @return Decrypted size.
+     */
+    @Override
+    public long size() {
+        return this._size;
+    }
+
+    /**
+     * Truncating isn't supported.
+     *
+     * @param size New size.
+     *
+     * @return Nothing.
+     */
+    @Override
+    public SeekableByteChannel truncate(long size) {
+        throw new NonWritableChannelException();
+    }
+
+    /**
+     * Returns whether the channel is open or not.
+     *
+     * @return Whether the channel is open or not.
+     */
+    @Override
+    public boolean isOpen() {
+        return this._isOpen && (this._channel == null || this._channel.isOpen());
+    }
+
+    /**
+     * Closes the channel.
+     *
+     * @throws IOException If the underlying channel couldn't be closed.
+     */
+    @Override
+    public void close() throws IOException {
+        if (!this._isOpen) {
+            return;
+        }
+
+        this._isOpen = false;
+        this._releaseCipher();
+
+        if (this._onClose != null) {
+            this._onClose.close();
+        }
+    }
+}
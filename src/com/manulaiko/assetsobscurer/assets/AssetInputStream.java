@@ -0,0 +1,204 @@
+package com.manulaiko.assetsobscurer.assets;
+
+import com.manulaiko.assetsobscurer.main.EncryptionManager;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Asset input stream.
+ * ===================
+ *
+ * Input stream that decrypts an asset as it's read.
+ *
+ * Two buffers are used: while one is being read, the next one
+ * is decrypted in background. Only the first buffer has to be
+ * decrypted before the first byte can be read, so latency
+ * doesn't depend on the asset size, and memory is bounded
+ * by the buffers.
+ *
+ * @author Manulaiko <manulaiko@gmail.com>
+ */
+public class AssetInputStream extends InputStream {
+    /**
+     * Executor for the read-ahead tasks.
+     */
+    private static final ExecutorService executor = Executors.newCachedThreadPool(r -> {
+        Thread thread = new Thread(r, "AssetInputStream read-ahead");
+        thread.setDaemon(true);
+
+        return thread;
+    });
+
+    /**
+     * Channel with the decrypted asset.
+     */
+    private final SeekableByteChannel _channel;
+
+    /**
+     * Buffer being read.
+     */
+    private ByteBuffer _current;
+
+    /**
+     * Buffer being filled in background.
+     */
+    private Future<ByteBuffer> _next;
+
+    /**
+     * Constructor.
+     *
+     * @param channel Channel with the decrypted asset.
+     */
+    public AssetInputStream(SeekableByteChannel channel) {
+        this._channel = channel;
+
+        this._current = ByteBuffer.allocate(EncryptionManager.BUFFER_SIZE);
+        this._current.limit(0);
+        this._next = this._fill(ByteBuffer.allocate(EncryptionManager.BUFFER_SIZE));
+    }
+
+    /**
+     * Reads a byte.
+     *
+     * @return Read byte or -1 if the end of the asset has been reached.
+     *
+     * @throws IOException If couldn't read the asset.
+     */
+    @Override
+    public int read() throws IOException {
+        if (!this._ensure()) {
+            return -1;
+        }
+
+        return this._current.get() & 0xFF;
+    }
+
+    /**
+     * Reads up to `len` bytes.
+     *
+     * @param b   Destination array.
+     * @param off Offset in `b`.
+     * @param len Maximum amount of bytes to read.
+     *
+     * @return Amount of read bytes or -1 if the end of the asset has been reached.
+     *
+     * @throws IOException If couldn't read the asset.
+     */
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+
+        if (!this._ensure()) {
+            return -1;
+        }
+
+        len = Math.min(len, this._current.remaining());
+        this._current.get(b, off, len);
+
+        return len;
+    }
+
+    /**
+     * Returns the amount of bytes that can be read without blocking.
+     *
+     * @return Bytes left in the current buffer.
+     */
+    @Override
+    public int available() {
+        return this._current.remaining();
+    }
+
+    /**
+     * Closes the stream.
+     *
+     * @throws IOException If the channel couldn't be closed.
+     */
+    @Override
+    public void close() throws IOException {
+        if (this._next != null) {
+            try {
+                this._next.get();
+            } catch (Exception ignored) {
+                // We're closing anyway.
+            }
+
+            this._next = null;
+        }
+
+        this._current.limit(0);
+        this._channel.close();
+    }
+
+    /**
+     * Makes sure there are bytes left in the current buffer.
+     *
+     * If the current buffer has been consumed it's swapped with
+     * the one filled in background, which starts filling the old one.
+     *
+     * @return Whether there are bytes left or the end of the asset has been reached.
+     *
+     * @throws IOException If couldn't read the asset.
+     */
+    private boolean _ensure() throws IOException {
+        if (this._current.hasRemaining()) {
+            return true;
+        }
+
+        if (this._next == null) {
+            return false;
+        }
+
+        ByteBuffer next;
+        try {
+            next = this._next.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+
+            throw new IOException("Interrupted while reading asset!", e);
+        } catch (ExecutionException e) {
+            this._next = null;
+
+            throw new IOException("Couldn't read asset!", e.getCause());
+        }
+
+        if (!next.hasRemaining()) {
+            this._next = null;
+
+            return false;
+        }
+
+        ByteBuffer old = this._current;
+        this._current = next;
+        this._next = this._fill(old);
+
+        return true;
+    }
+
+    /**
+     * Fills a buffer in background.
+     *
+     * @param buffer Buffer to fill.
+     *
+     * @return Filled buffer, empty if the end of the asset has been reached.
+     */
+    private Future<ByteBuffer> _fill(ByteBuffer buffer) {
+        return AssetInputStream.executor.submit(() -> {
+            buffer.clear();
+            while (buffer.hasRemaining() && this._channel.read(buffer) != -1) {
+                // Keep reading until the buffer is full.
+            }
+            buffer.flip();
+
+            return buffer;
+        });
+    }
+}
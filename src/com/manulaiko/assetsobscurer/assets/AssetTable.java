@@ -0,0 +1,945 @@
+package com.manulaiko.assetsobscurer.assets;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * Asset table class.
+ * ==================
+ *
+ * Packed storage of the indexed assets.
+ *
+ * The entries are stored by position in chunks of `CHUNK_SIZE` entries,
+ * each chunk keeps their fields in primitive arrays: the 20 bytes of the
+ * hash in two longs and an int, the directory as the id of an interned
+ * directory name, the file name as UTF-8 bytes in a shared pool and the
+ * flags in bit sets. The `Index.Asset`s are built when an entry is read,
+ * so a big index takes a fraction of the memory of a list of assets.
+ *
+ * Each directory has an open addressing table with the positions of its
+ * entries by file name, and the directories are sorted for prefix scans.
+ *
+ * Copies share the chunks and the directory tables: a table copies them
+ * before modifying them if they're older than its last copy (copy on write),
+ * so a copy is cheap and isn't affected by later changes to either table.
+ *
+ * @author Manulaiko <manulaiko@gmail.com>
+ */
+public class AssetTable {
+    /**
+     * Entries per chunk.
+     */
+    public static final int CHUNK_SIZE = 1024;
+
+    /**
+     * Bits of the position of an entry in its chunk.
+     */
+    private static final int CHUNK_BITS = 10;
+
+    /**
+     * Initial capacity of a chunk.
+     */
+    private static final int INITIAL_CAPACITY = 16;
+
+    /**
+     * Chunks.
+     */
+    private Chunk[] _chunks = new Chunk[0];
+
+    /**
+     * Amount of entries.
+     */
+    private int _size;
+
+    /**
+     * Directories by name.
+     */
+    private TreeMap<String, Dir> _dirs = new TreeMap<>();
+
+    /**
+     * Interned directory names by id.
+     */
+    private String[] _dirNames = new String[0];
+
+    /**
+     * Generation of the table, chunks and directories of an
+     * older generation may be shared with a copy.
+     */
+    private int _generation;
+
+    /**
+     * Positions (plus one) of the hashed entries by hash, in an open
+     * addressing table (null until `references` needs it).
+     */
+    private int[] _digests;
+
+    /**
+     * Amount of positions in `_digests`.
+     */
+    private int _digestsCount;
+
+    /**
+     * Returns a copy of the table.
+     *
+     * @return Copy that shares the storage with this table until either of them is modified.
+     */
+    public AssetTable copy() {
+        this._generation++;
+
+        AssetTable copy = new AssetTable();
+        copy._chunks = Arrays.copyOf(this._chunks, this._chunks.length);
+        copy._size = this._size;
+        copy._dirs = new TreeMap<>(this._dirs);
+        copy._dirNames = Arrays.copyOf(this._dirNames, this._dirs.size());
+        copy._generation = this._generation;
+
+        return copy;
+    }
+
+    /**
+     * Returns the amount of entries.
+     *
+     * @return Amount of entries.
+     */
+    public int size() {
+        return this._size;
+    }
+
+    /**
+     * Returns an entry.
+     *
+     * @param position Entry position.
+     *
+     * @return New asset with the fields of the entry.
+     */
+    public Index.Asset get(int position) {
+        Chunk chunk = this._chunk(position);
+        int i = position & (AssetTable.CHUNK_SIZE - 1);
+
+        return new Index.Asset(
+                chunk.digest(i),
+                this._dirNames[chunk._dirs[i]],
+                chunk.name(i),
+                chunk.isEncrypted(i),
+                chunk._sizes[i],
+                chunk._modified[i]
+        );
+    }
+
+    /**
+     * Returns the path of an entry.
+     *
+     * @param position Entry position.
+     *
+     * @return Normalized path.
+     */
+    public String path(int position) {
+        Chunk chunk = this._chunk(position);
+        int i = position & (AssetTable.CHUNK_SIZE - 1);
+        String dir = this._dirNames[chunk._dirs[i]];
+
+        return dir.isEmpty() ? chunk.name(i) : dir + File.separator + chunk.name(i);
+    }
+
+    /**
+     * Returns whether an entry is encrypted or not.
+     *
+     * @param position Entry position.
+     *
+     * @return Whether the entry is encrypted or not.
+     */
+    public boolean isEncrypted(int position) {
+        return this._chunk(position).isEncrypted(position & (AssetTable.CHUNK_SIZE - 1));
+    }
+
+    /**
+     * Finds an entry.
+     *
+     * @param path Path of the entry.
+     *
+     * @return Position of the entry or -1 if there's no entry with `path`.
+     */
+    public int find(String path) {
+        return this.find(Paths.get(path).normalize());
+    }
+
+    /**
+     * Finds an entry.
+     *
+     * @param normalized Normalized path of the entry.
+     *
+     * @return Position of the entry or -1 if there's no entry with `normalized`.
+     */
+    public int find(Path normalized) {
+        Dir dir = this._dirs.get(Index.Asset.dir(normalized));
+        if (dir == null) {
+            return -1;
+        }
+
+        return this._find(dir, Index.Asset.name(normalized).getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Returns the names of the directories with entries.
+     *
+     * @return Sorted directory names.
+     */
+    public NavigableSet<String> dirs() {
+        return Collections.unmodifiableNavigableSet(this._dirs.navigableKeySet());
+    }
+
+    /**
+     * Returns the entries of a directory.
+     *
+     * @param dir Directory name.
+     *
+     * @return Entries of `dir`, in no particular order.
+     */
+    public Stream<Index.Asset> dir(String dir) {
+        Dir entries = this._dirs.get(dir);
+        if (entries == null) {
+            return Stream.empty();
+        }
+
+        return IntStream.of(entries._slots)
+                        .filter(s -> s != 0)
+                        .mapToObj(s -> this.get(s - 1));
+    }
+
+    /**
+     * Adds an entry.
+     *
+     * The table must not have an entry with the same path.
+     *
+     * @param asset Asset to add.
+     *
+     * @return Position of the entry.
+     */
+    public int add(Index.Asset asset) {
+        byte[] name = asset.name().getBytes(StandardCharsets.UTF_8);
+        int position = this._append(asset.dir(), name, 0, name.length);
+
+        this._set(position, asset);
+
+        return position;
+    }
+
+    /**
+     * Replaces the fields of an entry.
+     *
+     * @param position Entry position.
+     * @param asset    Asset with the same path as the entry.
+     */
+    public void set(int position, Index.Asset asset) {
+        if (position < 0 || position >= this._size) {
+            throw new IndexOutOfBoundsException("Position: " + position + ", size: " + this._size);
+        }
+
+        if (this._digests != null) {
+            this._unhash(position);
+        }
+
+        this._set(position, asset);
+    }
+
+    /**
+     * Removes some entries.
+     *
+     * The rest are moved to fill the gaps, keeping their order,
+     * so the table is rebuilt once for all the entries.
+     *
+     * @param positions Positions of the entries to remove.
+     */
+    public void remove(BitSet positions) {
+        if (positions.nextSetBit(0) == -1 || positions.nextSetBit(0) >= this._size) {
+            return;
+        }
+
+        Chunk[] chunks = this._chunks;
+        String[] dirNames = this._dirNames;
+        int size = this._size;
+
+        this._chunks = new Chunk[0];
+        this._size = 0;
+        this._dirs = new TreeMap<>();
+        this._dirNames = new String[0];
+        this._digests = null;
+        this._digestsCount = 0;
+
+        for (int position = 0; position < size; position++) {
+            if (positions.get(position)) {
+                continue;
+            }
+
+            Chunk source = chunks[position >>> AssetTable.CHUNK_BITS];
+            int i = position & (AssetTable.CHUNK_SIZE - 1);
+            int added = this._append(dirNames[source._dirs[i]], source._pool, source._names[i], source._names[i + 1] - source._names[i]);
+
+            this._chunks[added >>> AssetTable.CHUNK_BITS].copy(added & (AssetTable.CHUNK_SIZE - 1), source, i);
+        }
+    }
+
+    /**
+     * Returns how many entries have a hash.
+     *
+     * The table of the hashes is built by the first call.
+     *
+     * @param digest Hash.
+     *
+     * @return Amount of entries with `digest`.
+     */
+    public int references(Hash digest) {
+        if (this._digests == null) {
+            this._buildDigests(this._size);
+        }
+
+        int mask = this._digests.length - 1;
+        int count = 0;
+        for (int s = AssetTable._slot(digest.high(), mask); this._digests[s] != 0; s = (s + 1) & mask) {
+            if (this._hasDigest(this._digests[s] - 1, digest)) {
+                count++;
+            }
+        }
+
+        return count;
+    }
+
+    /**
+     * Returns the chunk of an entry.
+     *
+     * @param position Entry position.
+     *
+     * @return Chunk of the entry at `position`.
+     *
+     * @throws IndexOutOfBoundsException If there's no entry at `position`.
+     */
+    private Chunk _chunk(int position) {
+        if (position < 0 || position >= this._size) {
+            throw new IndexOutOfBoundsException("Position: " + position + ", size: " + this._size);
+        }
+
+        return this._chunks[position >>> AssetTable.CHUNK_BITS];
+    }
+
+    /**
+     * Appends an entry with a path and empty fields.
+     *
+     * @param dir    Directory name.
+     * @param name   Buffer with the UTF-8 file name.
+     * @param offset Offset of the file name in `name`.
+     * @param length Length of the file name.
+     *
+     * @return Position of the entry.
+     */
+    private int _append(String dir, byte[] name, int offset, int length) {
+        int position = this._size;
+        int c = position >>> AssetTable.CHUNK_BITS;
+        if (c == this._chunks.length) {
+            this._chunks = Arrays.copyOf(this._chunks, c + 1);
+            this._chunks[c] = new Chunk(this._generation);
+        }
+
+        Dir entries = this._dir(dir);
+        this._writable(c).append(entries._id, name, offset, length);
+        this._size++;
+        this._insert(entries, position, name, offset, length);
+
+        return position;
+    }
+
+    /**
+     * Sets the fields of an entry.
+     *
+     * @param position Entry position.
+     * @param asset    Asset with the fields.
+     */
+    private void _set(int position, Index.Asset asset) {
+        this._writable(position >>> AssetTable.CHUNK_BITS).set(position & (AssetTable.CHUNK_SIZE - 1), asset);
+
+        if (this._digests != null) {
+            this._hash(position);
+        }
+    }
+
+    /**
+     * Returns a chunk that can be modified, copying it if it may be shared.
+     *
+     * @param c Chunk number.
+     *
+     * @return Chunk that isn't shared.
+     */
+    private Chunk _writable(int c) {
+        Chunk chunk = this._chunks[c];
+        if (chunk._generation != this._generation) {
+            chunk = chunk.copy(this._generation);
+            this._chunks[c] = chunk;
+        }
+
+        return chunk;
+    }
+
+    /**
+     * Returns the table of a directory that can be modified,
+     * adding it or copying it if it may be shared.
+     *
+     * @param name Directory name.
+     *
+     * @return Directory table that isn't shared.
+     */
+    private Dir _dir(String name) {
+        Dir dir = this._dirs.get(name);
+        if (dir == null) {
+            int id = this._dirs.size();
+            if (id == this._dirNames.length) {
+                this._dirNames = Arrays.copyOf(this._dirNames, Math.max(16, id * 2));
+            }
+            this._dirNames[id] = name.intern();
+
+            dir = new Dir(id, this._generation, new int[4]);
+            this._dirs.put(this._dirNames[id], dir);
+        } else if (dir._generation != this._generation) {
+            Dir copy = new Dir(dir._id, this._generation, dir._slots.clone());
+            copy._count = dir._count;
+
+            this._dirs.put(this._dirNames[dir._id], copy);
+            dir = copy;
+        }
+
+        return dir;
+    }
+
+    /**
+     * Finds an entry of a directory.
+     *
+     * @param dir  Directory table.
+     * @param name UTF-8 file name.
+     *
+     * @return Position of the entry or -1 if there's no entry with `name` in `dir`.
+     */
+    private int _find(Dir dir, byte[] name) {
+        int[] slots = dir._slots;
+        int mask = slots.length - 1;
+
+        for (int s = AssetTable._hash(name, 0, name.length) & mask; slots[s] != 0; s = (s + 1) & mask) {
+            int position = slots[s] - 1;
+            Chunk chunk = this._chunks[position >>> AssetTable.CHUNK_BITS];
+
+            if (chunk.nameEquals(position & (AssetTable.CHUNK_SIZE - 1), name)) {
+                return position;
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * Inserts an entry in the table of its directory.
+     *
+     * The table is grown once it's 3/4 full.
+     *
+     * @param dir      Directory table (not shared).
+     * @param position Entry position.
+     * @param name     Buffer with the UTF-8 file name.
+     * @param offset   Offset of the file name in `name`.
+     * @param length   Length of the file name.
+     */
+    private void _insert(Dir dir, int position, byte[] name, int offset, int length) {
+        if ((dir._count + 1) * 4 > dir._slots.length * 3) {
+            int[] slots = dir._slots;
+            dir._slots = new int[slots.length * 2];
+
+            for (int slot : slots) {
+                if (slot == 0) {
+                    continue;
+                }
+
+                Chunk chunk = this._chunks[(slot - 1) >>> AssetTable.CHUNK_BITS];
+                int i = (slot - 1) & (AssetTable.CHUNK_SIZE - 1);
+                AssetTable._put(dir._slots, AssetTable._hash(chunk._pool, chunk._names[i], chunk._names[i + 1] - chunk._names[i]), slot);
+            }
+        }
+
+        AssetTable._put(dir._slots, AssetTable._hash(name, offset, length), position + 1);
+        dir._count++;
+    }
+
+    /**
+     * Builds the table of the hashes.
+     *
+     * @param expected Expected amount of hashed entries.
+     */
+    private void _buildDigests(int expected) {
+        int capacity = 16;
+        while (capacity * 3 < expected * 4) {
+            capacity *= 2;
+        }
+
+        this._digests = new int[capacity];
+        this._digestsCount = 0;
+        for (int position = 0; position < this._size; position++) {
+            this._hash(position);
+        }
+    }
+
+    /**
+     * Adds an entry to the table of the hashes, if it's hashed.
+     *
+     * @param position Entry position.
+     */
+    private void _hash(int position) {
+        Chunk chunk = this._chunks[position >>> AssetTable.CHUNK_BITS];
+        int i = position & (AssetTable.CHUNK_SIZE - 1);
+        if (!chunk.isHashed(i)) {
+            return;
+        }
+
+        if ((this._digestsCount + 1) * 4 > this._digests.length * 3) {
+            // The entry is added while the table is built again.
+            this._buildDigests(this._digestsCount + 1);
+
+            return;
+        }
+
+        AssetTable._put(this._digests, AssetTable._slot(chunk._high[i], this._digests.length - 1), position + 1);
+        this._digestsCount++;
+    }
+
+    /**
+     * Removes an entry from the table of the hashes, if it's there.
+     *
+     * The entries after it are moved back, so the table doesn't
+     * need markers of removed entries.
+     *
+     * @param position Entry position.
+     */
+    private void _unhash(int position) {
+        Chunk chunk = this._chunks[position >>> AssetTable.CHUNK_BITS];
+        int i = position & (AssetTable.CHUNK_SIZE - 1);
+        if (!chunk.isHashed(i)) {
+            return;
+        }
+
+        int[] slots = this._digests;
+        int mask = slots.length - 1;
+        int s = AssetTable._slot(chunk._high[i], mask);
+        while (slots[s] != position + 1) {
+            if (slots[s] == 0) {
+                return;
+            }
+            s = (s + 1) & mask;
+        }
+
+        for (int next = (s + 1) & mask; slots[next] != 0; next = (next + 1) & mask) {
+            int moved = slots[next] - 1;
+            int home = AssetTable._slot(this._chunks[moved >>> AssetTable.CHUNK_BITS]._high[moved & (AssetTable.CHUNK_SIZE - 1)], mask);
+
+            // Entries whose home slot is between the gap and them stay.
+            boolean stays = (s <= next) ? (s < home && home <= next) : (s < home || home <= next);
+            if (!stays) {
+                slots[s] = slots[next];
+                s = next;
+            }
+        }
+
+        slots[s] = 0;
+        this._digestsCount--;
+    }
+
+    /**
+     * Checks whether an entry has a hash.
+     *
+     * @param position Entry position.
+     * @param digest   Hash.
+     *
+     * @return Whether the entry at `position` has `digest`.
+     */
+    private boolean _hasDigest(int position, Hash digest) {
+        Chunk chunk = this._chunks[position >>> AssetTable.CHUNK_BITS];
+        int i = position & (AssetTable.CHUNK_SIZE - 1);
+
+        return chunk._high[i] == digest.high() && chunk._middle[i] == digest.middle() && chunk._low[i] == digest.low();
+    }
+
+    /**
+     * Puts a value in the first free slot of an open addressing table.
+     *
+     * @param slots Table slots.
+     * @param hash  Hash of the value.
+     * @param value Value (not 0).
+     */
+    private static void _put(int[] slots, int hash, int value) {
+        int mask = slots.length - 1;
+        int s = hash & mask;
+        while (slots[s] != 0) {
+            s = (s + 1) & mask;
+        }
+
+        slots[s] = value;
+    }
+
+    /**
+     * Returns the home slot of a hash in the table of the hashes.
+     *
+     * @param high First bytes of the hash.
+     * @param mask Table size minus one.
+     *
+     * @return Slot.
+     */
+    private static int _slot(long high, int mask) {
+        return AssetTable._mix((int) (high ^ (high >>> 32))) & mask;
+    }
+
+    /**
+     * Hashes a file name.
+     *
+     * @param bytes  Buffer with the UTF-8 file name.
+     * @param offset Offset of the file name in `bytes`.
+     * @param length Length of the file name.
+     *
+     * @return Hash of the file name.
+     */
+    private static int _hash(byte[] bytes, int offset, int length) {
+        int hash = 1;
+        for (int i = offset; i < offset + length; i++) {
+            hash = 31 * hash + bytes[i];
+        }
+
+        return AssetTable._mix(hash);
+    }
+
+    /**
+     * Spreads the bits of a hash, so the low bits depend on all of them.
+     *
+     * @param hash Hash.
+     *
+     * @return Mixed hash.
+     */
+    private static int _mix(int hash) {
+        hash ^= hash >>> 16;
+        hash *= 0x85EBCA6B;
+        hash ^= hash >>> 13;
+
+        return hash;
+    }
+
+    /**
+     * Chunk class.
+     * ============
+     *
+     * Fields of up to `CHUNK_SIZE` consecutive entries.
+     *
+     * The arrays grow as entries are appended, the file names
+     * of entry `i` are the bytes `_names[i]` to `_names[i + 1]`
+     * of `_pool`.
+     *
+     * @author Manulaiko <manulaiko@gmail.com>
+     */
+    private static class Chunk {
+        /**
+         * Generation of the table that created (or copied) the chunk.
+         */
+        private final int _generation;
+
+        /**
+         * Amount of entries.
+         */
+        private int _count;
+
+        /**
+         * Bytes 0 to 7 of the hashes.
+         */
+        private long[] _high;
+
+        /**
+         * Bytes 8 to 15 of the hashes.
+         */
+        private long[] _middle;
+
+        /**
+         * Bytes 16 to 19 of the hashes.
+         */
+        private int[] _low;
+
+        /**
+         * Sizes of the decrypted files.
+         */
+        private long[] _sizes;
+
+        /**
+         * Modification times of the decrypted files.
+         */
+        private long[] _modified;
+
+        /**
+         * Directory ids.
+         */
+        private int[] _dirs;
+
+        /**
+         * Offsets of the file names in `_pool`.
+         */
+        private int[] _names;
+
+        /**
+         * UTF-8 file names.
+         */
+        private byte[] _pool;
+
+        /**
+         * Bit set of the hashed entries.
+         */
+        private long[] _hashed;
+
+        /**
+         * Bit set of the encrypted entries.
+         */
+        private long[] _encrypted;
+
+        /**
+         * Constructor.
+         *
+         * @param generation Generation of the table.
+         */
+        private Chunk(int generation) {
+            this._generation = generation;
+            this._high = new long[AssetTable.INITIAL_CAPACITY];
+            this._middle = new long[AssetTable.INITIAL_CAPACITY];
+            this._low = new int[AssetTable.INITIAL_CAPACITY];
+            this._sizes = new long[AssetTable.INITIAL_CAPACITY];
+            this._modified = new long[AssetTable.INITIAL_CAPACITY];
+            this._dirs = new int[AssetTable.INITIAL_CAPACITY];
+            this._names = new int[AssetTable.INITIAL_CAPACITY + 1];
+            this._pool = new byte[AssetTable.INITIAL_CAPACITY * 16];
+            this._hashed = new long[AssetTable.CHUNK_SIZE / 64];
+            this._encrypted = new long[AssetTable.CHUNK_SIZE / 64];
+        }
+
+        /**
+         * Returns a copy of the chunk.
+         *
+         * @param generation Generation of the table that copies it.
+         *
+         * @return Copy of the chunk.
+         */
+        private Chunk copy(int generation) {
+            Chunk chunk = new Chunk(generation);
+            chunk._count = this._count;
+            chunk._high = this._high.clone();
+            chunk._middle = this._middle.clone();
+            chunk._low = this._low.clone();
+            chunk._sizes = this._sizes.clone();
+            chunk._modified = this._modified.clone();
+            chunk._dirs = this._dirs.clone();
+            chunk._names = this._names.clone();
+            chunk._pool = this._pool.clone();
+            chunk._hashed = this._hashed.clone();
+            chunk._encrypted = this._encrypted.clone();
+
+            return chunk;
+        }
+
+        /**
+         * Appends an entry with empty fields.
+         *
+         * @param dir    Directory id.
+         * @param name   Buffer with the UTF-8 file name.
+         * @param offset Offset of the file name in `name`.
+         * @param length Length of the file name.
+         */
+        private void append(int dir, byte[] name, int offset, int length) {
+            int i = this._count;
+            if (i == this._dirs.length) {
+                int capacity = Math.min(AssetTable.CHUNK_SIZE, i * 2);
+
+                this._high = Arrays.copyOf(this._high, capacity);
+                this._middle = Arrays.copyOf(this._middle, capacity);
+                this._low = Arrays.copyOf(this._low, capacity);
+                this._sizes = Arrays.copyOf(this._sizes, capacity);
+                this._modified = Arrays.copyOf(this._modified, capacity);
+                this._dirs = Arrays.copyOf(this._dirs, capacity);
+                this._names = Arrays.copyOf(this._names, capacity + 1);
+            }
+
+            int start = this._names[i];
+            if (start + length > this._pool.length) {
+                this._pool = Arrays.copyOf(this._pool, Math.max(start + length, this._pool.length * 2));
+            }
+            System.arraycopy(name, offset, this._pool, start, length);
+
+            this._dirs[i] = dir;
+            this._names[i + 1] = start + length;
+            this._count++;
+
+            if (this._count == AssetTable.CHUNK_SIZE) {
+                // Full, so the pool won't grow anymore.
+                this._pool = Arrays.copyOf(this._pool, this._names[this._count]);
+            }
+        }
+
+        /**
+         * Sets the fields of an entry.
+         *
+         * @param i     Entry number.
+         * @param asset Asset with the fields.
+         */
+        private void set(int i, Index.Asset asset) {
+            Hash digest = asset.digest();
+
+            this._high[i] = digest == null ? 0 : digest.high();
+            this._middle[i] = digest == null ? 0 : digest.middle();
+            this._low[i] = digest == null ? 0 : digest.low();
+            this._sizes[i] = asset.size();
+            this._modified[i] = asset.modified();
+            Chunk._set(this._hashed, i, digest != null);
+            Chunk._set(this._encrypted, i, asset.isEncrypted());
+        }
+
+        /**
+         * Copies the fields of an entry of another chunk.
+         *
+         * @param i      Entry number.
+         * @param source Chunk to copy from.
+         * @param j      Entry number in `source`.
+         */
+        private void copy(int i, Chunk source, int j) {
+            this._high[i] = source._high[j];
+            this._middle[i] = source._middle[j];
+            this._low[i] = source._low[j];
+            this._sizes[i] = source._sizes[j];
+            this._modified[i] = source._modified[j];
+            Chunk._set(this._hashed, i, source.isHashed(j));
+            Chunk._set(this._encrypted, i, source.isEncrypted(j));
+        }
+
+        /**
+         * Returns the hash of an entry.
+         *
+         * @param i Entry number.
+         *
+         * @return Hash or null if the entry isn't hashed.
+         */
+        private Hash digest(int i) {
+            return this.isHashed(i) ? new Hash(this._high[i], this._middle[i], this._low[i]) : null;
+        }
+
+        /**
+         * Returns the file name of an entry.
+         *
+         * @param i Entry number.
+         *
+         * @return File name.
+         */
+        private String name(int i) {
+            return new String(this._pool, this._names[i], this._names[i + 1] - this._names[i], StandardCharsets.UTF_8);
+        }
+
+        /**
+         * Checks the file name of an entry.
+         *
+         * @param i    Entry number.
+         * @param name UTF-8 file name.
+         *
+         * @return Whether the entry is named `name`.
+         */
+        private boolean nameEquals(int i, byte[] name) {
+            int start = this._names[i];
+            if (this._names[i + 1] - start != name.length) {
+                return false;
+            }
+
+            for (int k = 0; k < name.length; k++) {
+                if (this._pool[start + k] != name[k]) {
+                    return false;
+                }
+            }
+
+            return true;
+        }
+
+        /**
+         * Returns whether an entry is hashed or not.
+         *
+         * @param i Entry number.
+         *
+         * @return Whether the entry is hashed or not.
+         */
+        private boolean isHashed(int i) {
+            return (this._hashed[i >>> 6] & (1L << i)) != 0;
+        }
+
+        /**
+         * Returns whether an entry is encrypted or not.
+         *
+         * @param i Entry number.
+         *
+         * @return Whether the entry is encrypted or not.
+         */
+        private boolean isEncrypted(int i) {
+            return (this._encrypted[i >>> 6] & (1L << i)) != 0;
+        }
+
+        /**
+         * Sets or clears a bit.
+         *
+         * @param bits  Bit set.
+         * @param i     Bit number.
+         * @param value Whether to set the bit or to clear it.
+         */
+        private static void _set(long[] bits, int i, boolean value) {
+            if (value) {
+                bits[i >>> 6] |= 1L << i;
+            } else {
+                bits[i >>> 6] &= ~(1L << i);
+            }
+        }
+    }
+
+    /**
+     * Dir class.
+     * ==========
+     *
+     * Open addressing table with the positions (plus one)
+     * of the entries of a directory, by file name.
+     *
+     * @author Manulaiko <manulaiko@gmail.com>
+     */
+    private static class Dir {
+        /**
+         * Directory id.
+         */
+        private final int _id;
+
+        /**
+         * Generation of the table that created (or copied) the directory.
+         */
+        private final int _generation;
+
+        /**
+         * Slots.
+         */
+        private int[] _slots;
+
+        /**
+         * Amount of entries.
+         */
+        private int _count;
+
+        /**
+         * Constructor.
+         *
+         * @param id         Directory id.
+         * @param generation Generation of the table.
+         * @param slots      Slots.
+         */
+        private Dir(int id, int generation, int[] slots) {
+            this._id = id;
+            this._generation = generation;
+            this._slots = slots;
+        }
+    }
+}
@@ -1,20 +1,35 @@
 package com.manulaiko.assetsobscurer.assets;
 
 import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
 import com.manulaiko.assetsobscurer.main.EncryptionManager;
 import com.manulaiko.assetsobscurer.main.Settings;
 import com.manulaiko.tabitha.log.Console;
 import com.manulaiko.tabitha.log.ConsoleManager;
+import lombok.AccessLevel;
 import lombok.Data;
+import lombok.Getter;
+import lombok.Setter;
 
-import java.io.File;
-import java.io.IOException;
-import java.io.InputStream;
-import java.nio.file.Files;
-import java.nio.file.Path;
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
 import java.security.InvalidKeyException;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
 
 /**
  * Assets manager.
@@ -22,6 +37,10 @@ import java.util.List;
  *
  * Manages the assets folder.
  *
+ * Assets are looked up (`find`, `asInputStream`, `asChannel`) in an
+ * immutable snapshot of the index that is replaced after each change,
+ * so lookups never block nor see an index being modified.
+ *
  * @author Manulaiko <manulaiko@gmail.com>
  */
 @Data
@@ -68,11 +87,84 @@ public class AssetsManager {
      */
     private Index _index;
 
+    /**
+     * Binary assets index, until `_index` is needed.
+     */
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private BinaryIndex _binaryIndex;
+
+    /**
+     * Parts of a split index that aren't in `_index` yet.
+     */
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private Set<String> _pendingParts = Collections.emptySet();
+
+    /**
+     * Pack with the encrypted files (may be null).
+     */
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private Pack _loadedPack;
+
+    /**
+     * Packs replaced since the last snapshot was published.
+     *
+     * The published snapshot may still reference them, so
+     * they're closed once the next snapshot is published.
+     */
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private final List<Pack> _replacedPacks = new ArrayList<>();
+
+    /**
+     * Assets folder watcher (may be null).
+     */
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private Watcher _watcher;
+
+    /**
+     * Last published snapshot of the index.
+     */
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private final AtomicReference<Snapshot> _snapshot = new AtomicReference<>();
+
+    /**
+     * Index of the last published snapshot (null if it wasn't built from an `Index`).
+     */
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private Index _published;
+
+    /**
+     * Index journal (may be null).
+     */
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private Journal _journal;
+
+    /**
+     * Whether the index is being saved in background.
+     */
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private final AtomicBoolean _compacting = new AtomicBoolean(false);
+
+    /**
+     * Lock held while the whole index is written.
+     */
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private final Object _snapshotLock = new Object();
+
     /**
      * Initializes the asset manager.
      */
     public void initialize() {
-        if (this.index() != null) {
+        if (this._index != null || this._binaryIndex != null) {
             return;
         }
 
@@ -81,6 +173,16 @@ public class AssetsManager {
         } catch (Exception e) {
             AssetsManager.console.info("Asset index not found, a new one will be created.");
             this.index(new Index(new ArrayList<>()));
+            this._openPack();
+
+            try {
+                // Changes of a previous index.
+                Files.deleteIfExists(this._journalPath());
+            } catch (IOException ex) {
+                AssetsManager.console.exception("Couldn't delete " + this._journalPath() + "!", ex);
+            }
+            this._openJournal(0);
+            this._publish();
         }
     }
 
@@ -93,32 +195,324 @@ public class AssetsManager {
      */
     public void reinitialize() throws NullPointerException, IOException, InvalidKeyException {
         File file = this.assets().listFiles(f -> f.getName().equals("assets.index") && f.isFile())[0];
-        byte[] bytes = EncryptionManager.instance().decrypt(Files.readAllBytes(file.toPath()));
 
-        if (bytes == null) {
-            throw new InvalidKeyException();
+        AssetsManager._read(
+                file.toPath(),
+                binary -> {
+                    this._index = null;
+                    this._binaryIndex = binary;
+                },
+                index -> {
+                    this._index = index;
+                    this._binaryIndex = null;
+                }
+        );
+        this._pendingParts = SplitIndex.list(this.assets().toPath());
+
+        int shardDepth = this._index == null ? this._binaryIndex.shardDepth() : this._index.shardDepth();
+        long journalOffset = this._index == null ? this._binaryIndex.journalOffset() : this._index.journalOffset();
+
+        if (shardDepth != Settings.shardDepth && Settings.shardDepthSet) {
+            AssetsManager.console.warning("The index uses shard depth " + shardDepth + ", use the `reshard` command to move the encrypted files to depth " + Settings.shardDepth + ".");
+        }
+        Settings.shardDepth = shardDepth;
+
+        this._openPack();
+        this._openJournal(journalOffset);
+        this._publish();
+    }
+
+    /**
+     * Reads an index file.
+     *
+     * @param file   Index file.
+     * @param binary Called with the index if it's a binary index.
+     * @param json   Called with the index if it's a JSON index.
+     *
+     * @throws IOException         If couldn't read the index.
+     * @throws InvalidKeyException If couldn't decrypt the index.
+     */
+    private static void _read(Path file, Consumer<BinaryIndex> binary, Consumer<Index> json) throws IOException, InvalidKeyException {
+        AssetChannel channel = AssetChannel.open(file);
+        try (InputStream input = new BufferedInputStream(new AssetInputStream(channel), EncryptionManager.BUFFER_SIZE)) {
+            DataInputStream magic = new DataInputStream(input);
+
+            input.mark(4);
+            boolean isBinary = channel.size() >= 4 && magic.readInt() == BinaryIndex.MAGIC;
+            input.reset();
+
+            if (isBinary) {
+                ByteBuffer buffer = ByteBuffer.allocateDirect((int) channel.size());
+                ReadableByteChannel in = Channels.newChannel(input);
+                while (buffer.hasRemaining()) {
+                    if (in.read(buffer) == -1) {
+                        throw new EOFException("Assets index is truncated!");
+                    }
+                }
+                buffer.flip();
+
+                binary.accept(BinaryIndex.read(buffer));
+            } else {
+                JsonReader reader = new JsonReader(new InputStreamReader(input, StandardCharsets.UTF_8));
+
+                json.accept(new Gson().fromJson(reader, Index.class));
+            }
+        } catch (JsonParseException e) {
+            throw new InvalidKeyException(e);
+        }
+    }
+
+    /**
+     * Returns the assets index.
+     *
+     * A binary index and the parts of a split index are only fully loaded
+     * when this is called, looking up assets with `find` doesn't need them.
+     *
+     * @return Assets index.
+     *
+     * @throws UncheckedIOException If a part of the index couldn't be read.
+     */
+    public Index index() {
+        if (this._index == null && this._binaryIndex != null) {
+            this._index = this._binaryIndex.toIndex();
+            this._index.pack(this._loadedPack);
+            this._index.journal(Settings.journal ? this._journal : null);
+            this._binaryIndex = null;
+        }
+
+        if (this._index != null && !this._pendingParts.isEmpty()) {
+            for (String name : this._pendingParts) {
+                Index part = this._readPart(name);
+                if (part == null) {
+                    throw new UncheckedIOException(new IOException("Couldn't read index part " + name + "!"));
+                }
+
+                this._index.merge(part);
+            }
+
+            this._pendingParts = Collections.emptySet();
+        }
+
+        return this._index;
+    }
+
+    /**
+     * Reads a part of a split index.
+     *
+     * @param name Part name.
+     *
+     * @return Part of the index or null if it couldn't be read.
+     */
+    private Index _readPart(String name) {
+        Path path = SplitIndex.path(this.assets().toPath(), name);
+        Index[] part = new Index[1];
+
+        try {
+            AssetsManager._read(path, binary -> part[0] = binary.toIndex(), index -> part[0] = index);
+        } catch (IOException | InvalidKeyException e) {
+            AssetsManager.console.exception("Couldn't read " + path + "!", e);
+        }
+
+        return part[0];
+    }
+
+    /**
+     * Sets the assets index.
+     *
+     * @param index Assets index.
+     *
+     * @return This assets manager.
+     */
+    public synchronized AssetsManager index(Index index) {
+        this._index = index;
+        this._binaryIndex = null;
+        this._pendingParts = Collections.emptySet();
+        this._publish();
+
+        return this;
+    }
+
+    /**
+     * Returns the last published snapshot of the index.
+     *
+     * @return Snapshot of the index (null if there's no index).
+     */
+    public Snapshot snapshot() {
+        return this._snapshot.get();
+    }
+
+    /**
+     * Publishes a snapshot of the current index.
+     */
+    private synchronized void _publish() {
+        Snapshot snapshot = null;
+        if (!this._pendingParts.isEmpty() && (this._index != null || this._binaryIndex != null)) {
+            snapshot = this._index == null ?
+                       new SplitSnapshot(this._binaryIndex, this._loadedPack, this._pendingParts, this::_readPart) :
+                       new SplitSnapshot(this._index, this._loadedPack, this._pendingParts, this::_readPart);
+        } else if (this._index != null) {
+            Snapshot previous = this._snapshot.get();
+            Map<String, Index.Asset> changes = this._index.changes();
+
+            snapshot = previous == null || this._published != this._index ?
+                       new Snapshot(this._index, this._loadedPack) :
+                       previous.update(this._index, changes, this._loadedPack);
+        } else if (this._binaryIndex != null) {
+            snapshot = new Snapshot(this._binaryIndex, this._loadedPack);
         }
 
-        String json = new String(bytes);
+        this._snapshot.set(snapshot);
+        this._published = this._index;
 
-        this.index(new Gson().fromJson(json, Index.class));
+        // Reads of older snapshots that get a closed pack retry with this one.
+        for (Pack pack : this._replacedPacks) {
+            try {
+                pack.close();
+            } catch (IOException e) {
+                AssetsManager.console.exception("Couldn't close pack!", e);
+            }
+        }
+        this._replacedPacks.clear();
+    }
+
+    /**
+     * Opens the pack of the assets folder, if any.
+     */
+    private void _openPack() {
+        this._closePack();
+
+        Path path = this._packPath();
+        if (Files.isRegularFile(path)) {
+            try {
+                this._loadedPack = Pack.open(path);
+                AssetsManager.console.fine("Opened pack with " + this._loadedPack.count() + " encrypted files.");
+            } catch (IOException e) {
+                AssetsManager.console.exception("Couldn't open " + path + "!", e);
+            }
+        }
+
+        if (this._index != null) {
+            this._index.pack(this._loadedPack);
+        }
+    }
+
+    /**
+     * Closes the opened pack, if any.
+     *
+     * The pack is actually closed once the next snapshot is published,
+     * see `_publish`.
+     */
+    private synchronized void _closePack() {
+        if (this._loadedPack == null) {
+            return;
+        }
+
+        this._replacedPacks.add(this._loadedPack);
+        this._loadedPack = null;
+        if (this._index != null) {
+            this._index.pack(null);
+        }
+    }
+
+    /**
+     * Returns the path to the pack of the assets folder.
+     *
+     * @return Path to the pack.
+     */
+    private Path _packPath() {
+        return this.assets().toPath().resolve("assets.pack");
+    }
+
+    /**
+     * Opens the journal of the assets folder and applies
+     * the changes that aren't in the index yet.
+     *
+     * The journal is only opened if it's enabled or if there's
+     * a journal left from when it was enabled.
+     *
+     * @param offset Journal offset of the first change that isn't in the index.
+     */
+    private void _openJournal(long offset) {
+        this._closeJournal();
+
+        Path path = this._journalPath();
+        if (!Settings.journal && !Files.isRegularFile(path)) {
+            return;
+        }
+
+        try {
+            this._journal = Journal.open(path);
+
+            if (this._journal.end() > offset) {
+                int changes = this._journal.replay(this.index(), offset);
+                AssetsManager.console.fine("Applied " + changes + " changes from the journal.");
+            }
+        } catch (IOException e) {
+            AssetsManager.console.exception("Couldn't open " + path + "!", e);
+            this._closeJournal();
+        }
+
+        if (this._index != null) {
+            this._index.journal(Settings.journal ? this._journal : null);
+        }
+    }
+
+    /**
+     * Closes the opened journal, if any.
+     */
+    private void _closeJournal() {
+        if (this._journal == null) {
+            return;
+        }
+
+        try {
+            this._journal.close();
+        } catch (IOException e) {
+            AssetsManager.console.exception("Couldn't close journal!", e);
+        }
+
+        this._journal = null;
+        if (this._index != null) {
+            this._index.journal(null);
+        }
+    }
+
+    /**
+     * Returns the path to the index of the assets folder.
+     *
+     * @return Path to the index.
+     */
+    private Path _indexPath() {
+        return this.assets().toPath().resolve("assets.index");
+    }
+
+    /**
+     * Returns the path to the journal of the assets folder.
+     *
+     * @return Path to the journal.
+     */
+    private Path _journalPath() {
+        return this.assets().toPath().resolve("assets.journal");
     }
 
     /**
      * Finds and returns an asset.
      *
+     * The asset is looked up in the last published snapshot, modifying
+     * it doesn't modify the index (use `index().update`).
+     *
      * @param path Path to the asset.
      *
      * @return Asset entry on index.
      */
     public Index.Asset find(String path) {
+        Snapshot snapshot = this.snapshot();
+        if (snapshot == null) {
+            return null;
+        }
+
         try {
-            return this.index()
-                       .assets()
-                       .stream()
-                       .filter(a -> a.path().equals(path))
-                       .findFirst()
-                       .get();
+            return snapshot.find(path);
         } catch (Exception e) {
             return null;
         }
@@ -133,40 +527,312 @@ public class AssetsManager {
      * @return Input stream for `asset` or null.
      */
     public InputStream asInputStream(String path) {
-        try {
-            Index.Asset asset = this.find(path);
-            Obscurer obscurer = new Obscurer(null);
+        Snapshot snapshot = this.snapshot();
+        boolean retried = false;
+        while (true) {
+            try {
+                Index.Asset asset = this._readable(snapshot, path);
+                if (asset == null) {
+                    return null;
+                }
 
-            return obscurer.asInputStream(asset);
-        } catch (Exception e) {
+                Obscurer obscurer = new Obscurer(null);
+                obscurer.pack(snapshot.pack());
+
+                return obscurer.asInputStream(asset);
+            } catch (ClosedChannelException e) {
+                // The pack was replaced since the snapshot was taken.
+                if (snapshot == this.snapshot()) {
+                    return null;
+                }
+                snapshot = this.snapshot();
+            } catch (FileNotFoundException | NoSuchFileException e) {
+                // The asset was encrypted (or decrypted) since it was found, read the other copy.
+                if (retried) {
+                    return null;
+                }
+                retried = true;
+                snapshot = this.snapshot();
+            } catch (Exception e) {
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Builds and returns a seekable channel for the
+     * given asset.
+     *
+     * Encrypted assets are decrypted on the fly, so any range
+     * of the asset can be read without decrypting the whole file.
+     *
+     * @param path Path to the asset.
+     *
+     * @return Channel for `asset` or null.
+     */
+    public SeekableByteChannel asChannel(String path) {
+        Snapshot snapshot = this.snapshot();
+        boolean retried = false;
+        while (true) {
+            try {
+                Index.Asset asset = this._readable(snapshot, path);
+                if (asset == null) {
+                    return null;
+                }
+
+                Obscurer obscurer = new Obscurer(null);
+                obscurer.pack(snapshot.pack());
+
+                return obscurer.asChannel(asset);
+            } catch (ClosedChannelException e) {
+                // The pack was replaced since the snapshot was taken.
+                if (snapshot == this.snapshot()) {
+                    return null;
+                }
+                snapshot = this.snapshot();
+            } catch (FileNotFoundException | NoSuchFileException e) {
+                // The asset was encrypted (or decrypted) since it was found, read the other copy.
+                if (retried) {
+                    return null;
+                }
+                retried = true;
+                snapshot = this.snapshot();
+            } catch (Exception e) {
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Finds an asset in a snapshot and makes sure it can be read.
+     *
+     * If the asset is being encrypted (or decrypted) since the snapshot was
+     * published, its file may be gone already, so the other copy is read instead.
+     *
+     * @param snapshot Snapshot of the index.
+     * @param path     Path to the asset.
+     *
+     * @return Asset entry to read (null if it isn't indexed).
+     */
+    private Index.Asset _readable(Snapshot snapshot, String path) {
+        if (snapshot == null) {
             return null;
         }
+
+        Index.Asset asset = snapshot.find(path);
+        if (asset == null || asset.hash().isEmpty()) {
+            return asset;
+        }
+
+        boolean exists = asset.isEncrypted() ?
+                         Files.isRegularFile(asset.blob()) || (snapshot.pack() != null && snapshot.pack().contains(asset.hash())) :
+                         Files.isRegularFile(Paths.get(asset.path()));
+        if (exists) {
+            return asset;
+        }
+
+        return new Index.Asset(asset.hash(), asset.path(), !asset.isEncrypted(), asset.size(), asset.modified());
     }
 
     /**
      * Saves the asset index.
+     *
+     * If the journal is enabled only the changes are saved,
+     * see `saveIndex(boolean)`.
      */
     public void saveIndex() {
+        this.saveIndex(false);
+    }
+
+    /**
+     * Saves the asset index.
+     *
+     * If the journal is enabled (and the index was already saved)
+     * the changes are appended to the journal, once the journal
+     * grows past `Settings.journalThreshold` the whole index is
+     * saved in background and the journal is emptied.
+     *
+     * @param snapshot Whether to save the whole index even if the journal is enabled.
+     */
+    public synchronized void saveIndex(boolean snapshot) {
         try {
             this.index().check();
-            String json = new Gson().toJson(this.index());
-            Path path = this.assets().toPath().resolve("assets.index");
+            Path path = this._indexPath();
+
+            if (Settings.journal && this._journal == null) {
+                this._openJournal(this.index().journalOffset());
+            }
+
+            if (!snapshot && Settings.journal && this._journal != null && Files.isRegularFile(path)) {
+                this._journal.flush();
+                AssetsManager.console.info("Assets index changes saved to " + this._journalPath() + ".");
+
+                if (this._journal.length() >= Settings.journalThreshold) {
+                    this._compact();
+                }
+
+                return;
+            }
 
             AssetsManager.console.info("Saving assets index to " + path + "...");
+            synchronized (this._snapshotLock) {
+                if (this._journal != null) {
+                    this._journal.flush();
+                    this.index().journalOffset(this._journal.end());
+                }
 
-            byte[] encryptedIndex = EncryptionManager.instance().encrypt(json.getBytes("UTF-8"));
-            Files.write(path, encryptedIndex);
+                this._write(this.index(), path);
+
+                if (this._journal != null) {
+                    this._journal.truncate(this.index().journalOffset());
+                }
+            }
+
+            if (!Settings.journal && this._journal != null) {
+                this._closeJournal();
+                Files.deleteIfExists(this._journalPath());
+            }
 
             AssetsManager.console.info("Assets index updated.");
         } catch (Exception e) {
             AssetsManager.console.exception("Couldn't save assets index!", e);
+        } finally {
+            this._publish();
+        }
+    }
+
+    /**
+     * Saves a copy of the index in background and empties the journal.
+     *
+     * The changes logged while the copy is being saved are kept in the journal.
+     *
+     * @throws IOException If the journal couldn't be read.
+     */
+    private void _compact() throws IOException {
+        if (!this._compacting.compareAndSet(false, true)) {
+            return;
+        }
+
+        Journal journal = this._journal;
+        Index index = this.index().copy();
+        index.journalOffset(journal.end());
+
+        Thread thread = new Thread(() -> {
+            try {
+                synchronized (this._snapshotLock) {
+                    this._write(index, this._indexPath());
+                    journal.truncate(index.journalOffset());
+                }
+
+                AssetsManager.console.info("Assets index compacted.");
+            } catch (Exception e) {
+                AssetsManager.console.exception("Couldn't compact assets index!", e);
+            } finally {
+                this._compacting.set(false);
+            }
+        }, "Index compaction");
+
+        AssetsManager.console.fine("Compacting assets index...");
+        thread.start();
+    }
+
+    /**
+     * Writes an index.
+     *
+     * If `Settings.splitIndex` is enabled the assets of each top level
+     * directory are written to their own file (see `SplitIndex`) and the
+     * rest to `path`, otherwise all of them are written to `path`.
+     * The parts that are no longer needed are deleted.
+     *
+     * @param index Index to write.
+     * @param path  Path to the index.
+     *
+     * @throws Exception If the index couldn't be written.
+     */
+    private void _write(Index index, Path path) throws Exception {
+        Path folder = this.assets().toPath();
+        Map<String, List<Index.Asset>> parts = new HashMap<>();
+
+        if (Settings.splitIndex) {
+            List<Index.Asset> root = new ArrayList<>();
+            for (Index.Asset asset : index.assets()) {
+                String name = SplitIndex.part(asset.path());
+                if (name == null) {
+                    root.add(asset);
+                } else {
+                    parts.computeIfAbsent(name, n -> new ArrayList<>()).add(asset);
+                }
+            }
+
+            for (Map.Entry<String, List<Index.Asset>> part : parts.entrySet()) {
+                this._writeFile(this._part(index, part.getValue()), SplitIndex.path(folder, part.getKey()));
+            }
+            this._writeFile(this._part(index, root), path);
+        } else {
+            this._writeFile(index, path);
+        }
+
+        for (String name : SplitIndex.list(folder)) {
+            if (!parts.containsKey(name)) {
+                Files.deleteIfExists(SplitIndex.path(folder, name));
+            }
+        }
+    }
+
+    /**
+     * Builds a part of an index.
+     *
+     * @param index  Whole index.
+     * @param assets Assets of the part.
+     *
+     * @return Part of `index` with `assets`.
+     */
+    private Index _part(Index index, List<Index.Asset> assets) {
+        if (assets.size() == index.assets().size()) {
+            return index;
+        }
+
+        Index part = new Index(assets);
+        part.shardDepth(index.shardDepth());
+        part.journalOffset(index.journalOffset());
+
+        return part;
+    }
+
+    /**
+     * Writes an index to a temporary file that atomically replaces `path`.
+     *
+     * @param index Index to write.
+     * @param path  Path to the index.
+     *
+     * @throws Exception If the index couldn't be written.
+     */
+    private void _writeFile(Index index, Path path) throws Exception {
+        Path tmp = path.resolveSibling("." + path.getFileName() + ".tmp");
+
+        try (OutputStream output = EncryptionManager.instance().encrypt(
+                new BufferedOutputStream(Files.newOutputStream(tmp), EncryptionManager.BUFFER_SIZE)
+        )) {
+            if (Settings.binaryIndex) {
+                output.write(BinaryIndex.write(index));
+            } else {
+                JsonWriter writer = new JsonWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8));
+                new Gson().toJson(index, Index.class, writer);
+                writer.flush();
+            }
+        }
+
+        try {
+            Files.move(tmp, path, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING);
         }
     }
 
     /**
      * Scans all the directories and adds the entries to the index.
      */
-    public void scan() {
+    public synchronized void scan() {
         this.index().check();
         Scanner scanner = new Scanner(this.assets());
 
@@ -176,29 +842,159 @@ public class AssetsManager {
         AssetsManager.console.info("Found " + assets.size() + " assets!");
 
         this.addAll(assets);
+        this._reportChanges(assets);
+    }
+
+    /**
+     * Logs how many of the scanned assets changed since they were decrypted.
+     *
+     * Unchanged assets will reuse their kept encrypted file.
+     *
+     * @param scanned Scanned assets.
+     */
+    private void _reportChanges(List<Index.Asset> scanned) {
+        Map<String, Index.Asset> indexed = new HashMap<>();
+        this.index().decrypted().forEach(a -> indexed.put(a.path(), a));
+
+        int changed = 0;
+        int unchanged = 0;
+        for (Index.Asset a : scanned) {
+            Index.Asset b = indexed.get(a.path());
+            if (b == null || b.hash().isEmpty()) {
+                continue;
+            }
+
+            if (a.size() == b.size() && a.modified() == b.modified()) {
+                unchanged++;
+            } else {
+                changed++;
+            }
+        }
+
+        AssetsManager.console.fine(changed + " assets changed, " + unchanged + " unchanged since last decryption.");
     }
 
     /**
      * Encrypts the indexed assets.
      */
-    public void encrypt() {
+    public synchronized void encrypt() {
         this.index().check();
-        List<Index.Asset> assets = this.index().decrypted();
+        this.encrypt(this.index().decrypted());
+    }
+
+    /**
+     * Encrypts some of the indexed assets.
+     *
+     * @param decrypted Indexed assets to encrypt.
+     */
+    public synchronized void encrypt(List<Index.Asset> decrypted) {
+        // The obscurer modifies the assets, the indexed ones are shared with the snapshots.
+        List<Index.Asset> assets = decrypted.stream().map(Index.Asset::copy).collect(Collectors.toList());
         Obscurer obscurer = new Obscurer(assets);
+        obscurer.sizes(this._duplicatedSizes());
+        obscurer.pack(this._loadedPack);
 
         AssetsManager.console.info("Encrypting " + assets.size() + " assets...");
         List<Index.Asset> encrypted = obscurer.encrypt();
         AssetsManager.console.info(encrypted.size() + " assets encrypted!");
 
         this.updateAll(encrypted);
+        this.index().collect(obscurer.replaced());
+
+        if (Settings.pack) {
+            this.pack();
+        }
+    }
+
+    /**
+     * Packs the encrypted files of the encrypted assets.
+     *
+     * The pack is written to a temporary file that replaces the
+     * previous one, then the packed loose files are deleted.
+     */
+    public synchronized void pack() {
+        Set<String> hashes = new HashSet<>();
+        this.index().encrypted().forEach(a -> hashes.add(a.hash()));
+
+        Path path = this._packPath();
+        Path tmp = path.resolveSibling(".assets.pack.tmp");
+        try {
+            AssetsManager.console.info("Packing " + hashes.size() + " encrypted files...");
+            int packed = Pack.write(tmp, hashes, this._loadedPack);
+
+            this._closePack();
+            try {
+                Files.move(tmp, path, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING);
+            }
+            this._openPack();
+            this._publish();
+
+            for (String hash : hashes) {
+                Files.deleteIfExists(Index.blob(hash));
+            }
+
+            AssetsManager.console.info(packed + " encrypted files packed to " + path + "!");
+        } catch (Exception e) {
+            AssetsManager.console.exception("Couldn't pack encrypted files!", e);
+
+            try {
+                Files.deleteIfExists(tmp);
+            } catch (IOException ignored) {
+            }
+            this._openPack();
+            this._publish();
+        }
+    }
+
+    /**
+     * Writes the packed encrypted files as loose files and deletes the pack.
+     */
+    public synchronized void unpack() {
+        if (this._loadedPack == null) {
+            return;
+        }
+
+        try {
+            AssetsManager.console.info("Unpacking " + this._loadedPack.count() + " encrypted files...");
+            int written = this._loadedPack.explode();
+
+            this._closePack();
+            this._publish();
+            Files.delete(this._packPath());
+
+            AssetsManager.console.info(written + " encrypted files unpacked!");
+        } catch (IOException e) {
+            AssetsManager.console.exception("Couldn't unpack encrypted files!", e);
+        }
+    }
+
+    /**
+     * Returns the sizes shared by more than one indexed asset.
+     *
+     * @return Sizes of the assets that may be duplicated.
+     */
+    private Set<Long> _duplicatedSizes() {
+        Set<Long> sizes = new HashSet<>();
+        Set<Long> duplicated = new HashSet<>();
+
+        for (Index.Asset a : this.index().assets()) {
+            if (!sizes.add(a.size())) {
+                duplicated.add(a.size());
+            }
+        }
+
+        return duplicated;
     }
 
     /**
      * Decrypts the indexed assets.
      */
-    public void decrypt() {
+    public synchronized void decrypt() {
+        this.unpack();
         this.index().check();
-        List<Index.Asset> assets = this.index().encrypted();
+        List<Index.Asset> assets = this.index().encrypted().stream().map(Index.Asset::copy).collect(Collectors.toList());
         Obscurer obscurer = new Obscurer(assets);
 
         AssetsManager.console.info("Decrypting " + assets.size() + " assets...");
@@ -206,6 +1002,126 @@ public class AssetsManager {
         AssetsManager.console.info(decrypted.size() + " assets decrypted!");
 
         this.updateAll(decrypted);
+        this.index().collect(decrypted.stream().map(Index.Asset::hash).collect(Collectors.toList()));
+    }
+
+    /**
+     * Starts watching the assets folder in background.
+     *
+     * @param encrypt Whether to encrypt the new assets or not.
+     *
+     * @return Started watcher or null if it couldn't be started.
+     */
+    public synchronized Watcher watch(boolean encrypt) {
+        if (this._watcher != null && this._watcher.isRunning()) {
+            return this._watcher;
+        }
+
+        try {
+            this._watcher = new Watcher(this, encrypt);
+            this._watcher.start();
+
+            AssetsManager.console.info("Watching " + this.assets().getAbsolutePath() + "...");
+        } catch (IOException e) {
+            AssetsManager.console.exception("Couldn't watch the assets folder!", e);
+            this._watcher = null;
+        }
+
+        return this._watcher;
+    }
+
+    /**
+     * Stops watching the assets folder.
+     */
+    public synchronized void unwatch() {
+        if (this._watcher == null) {
+            return;
+        }
+
+        this._watcher.terminate();
+        this._watcher = null;
+
+        AssetsManager.console.info("Stopped watching the assets folder.");
+    }
+
+    /**
+     * Moves the encrypted files to a new directory layout.
+     *
+     * The files are moved in parallel, then the empty directories
+     * of the previous layout are deleted and the index is saved.
+     *
+     * @param depth Directory levels of the new layout.
+     */
+    public synchronized void reshard(int depth) {
+        int previous = this.index().shardDepth();
+        Set<String> hashes = new HashSet<>();
+        this.index().assets().forEach(a -> {
+            if (!a.hash().isEmpty()) {
+                hashes.add(a.hash());
+            }
+        });
+
+        AssetsManager.console.info("Moving " + hashes.size() + " encrypted files from depth " + previous + " to depth " + depth + "...");
+        AtomicInteger moved = new AtomicInteger();
+        ForkJoinPool pool = new ForkJoinPool(Settings.workers);
+        try {
+            pool.submit(() -> hashes.parallelStream().forEach(hash -> {
+                Path source = Index.blob(hash, previous);
+                Path target = Index.blob(hash, depth);
+                if (source.equals(target) || !Files.isRegularFile(source)) {
+                    return;
+                }
+
+                try {
+                    Files.createDirectories(target.getParent());
+                    try {
+                        Files.move(source, target, StandardCopyOption.ATOMIC_MOVE);
+                    } catch (AtomicMoveNotSupportedException e) {
+                        Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+                    }
+
+                    moved.incrementAndGet();
+                } catch (IOException e) {
+                    AssetsManager.console.exception("Couldn't move " + source + "!", e);
+                }
+            })).get();
+        } catch (InterruptedException | ExecutionException e) {
+            AssetsManager.console.exception("Couldn't move encrypted files!", e);
+
+            return;
+        } finally {
+            pool.shutdown();
+        }
+
+        if (previous > 0) {
+            hashes.forEach(hash -> this._prune(Index.blob(hash, previous).getParent()));
+        }
+
+        Settings.shardDepth = depth;
+        this.index().shardDepth(depth);
+        AssetsManager.console.info(moved.get() + " encrypted files moved!");
+
+        this.saveIndex(true);
+    }
+
+    /**
+     * Deletes a directory of the encrypted files layout and its parents
+     * as long as they're empty.
+     *
+     * @param dir Directory to delete.
+     */
+    private void _prune(Path dir) {
+        Path root = this.assets().toPath();
+        while (dir != null && !dir.equals(root) && dir.startsWith(root)) {
+            try {
+                Files.delete(dir);
+            } catch (IOException e) {
+                // Not empty (or already deleted).
+                return;
+            }
+
+            dir = dir.getParent();
+        }
     }
 
     /**
@@ -213,7 +1129,7 @@ public class AssetsManager {
      *
      * @param assets Assets to add.
      */
-    public void addAll(List<Index.Asset> assets) {
+    public synchronized void addAll(List<Index.Asset> assets) {
         int newEntries = 0;
         for (Index.Asset a : assets) {
             if (this.index().add(a)) {
@@ -222,6 +1138,7 @@ public class AssetsManager {
         }
 
         AssetsManager.console.fine("Added " + newEntries + " new entries to the index!");
+        this._publish();
     }
 
     /**
@@ -229,7 +1146,7 @@ public class AssetsManager {
      *
      * @param assets Assets to update.
      */
-    public void updateAll(List<Index.Asset> assets) {
+    public synchronized void updateAll(List<Index.Asset> assets) {
         int updated = 0;
         for (Index.Asset a : assets) {
             if (this.index().update(a)) {
@@ -238,5 +1155,6 @@ public class AssetsManager {
         }
 
         AssetsManager.console.fine("Updated " + updated + " entries of the index!");
+        this._publish();
     }
 }
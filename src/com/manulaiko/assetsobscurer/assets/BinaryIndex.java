@@ -0,0 +1,327 @@
+package com.manulaiko.assetsobscurer.assets;
+
+import lombok.Data;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Binary index class.
+ * ===================
+ *
+ * Compact binary representation of the assets index.
+ *
+ * It has the following layout:
+ *
+ *     [int magic "AOIX"][int version][int count][int shard depth][long journal offset]
+ *     count * [20 bytes hash][byte flags][3 bytes reserved][int path offset][int path length][long size][long modified]
+ *     count * [int record]
+ *     [UTF-8 paths]
+ *
+ * The records have a fixed width and are sorted by hash, the second table
+ * lists the records sorted by (normalized) path, so assets are looked up with
+ * a binary search over the buffer without building every `Index.Asset`.
+ *
+ * @author Manulaiko <manulaiko@gmail.com>
+ */
+@Data
+public class BinaryIndex {
+    ///////////////////////////////////
+    // Static methods and properties //
+    ///////////////////////////////////
+
+    /**
+     * Binary index magic number ("AOIX").
+     */
+    public static final int MAGIC = 0x414F4958;
+
+    /**
+     * Binary index format version.
+     */
+    public static final int VERSION = 1;
+
+    /**
+     * Header length.
+     */
+    public static final int HEADER_LENGTH = 24;
+
+    /**
+     * Record length.
+     */
+    public static final int RECORD_LENGTH = 48;
+
+    /**
+     * Flag set if the asset has a hash.
+     */
+    public static final int HAS_HASH = 0x01;
+
+    /**
+     * Flag set if the asset is encrypted.
+     */
+    public static final int IS_ENCRYPTED = 0x02;
+
+    /**
+     * Hash of the assets that weren't hashed yet.
+     */
+    private static final Hash NO_HASH = new Hash(0, 0, 0);
+
+    /**
+     * Checks whether a buffer contains a binary index.
+     *
+     * @param buffer Buffer to check (from its position).
+     *
+     * @return Whether `buffer` starts with the binary index magic number.
+     */
+    public static boolean isBinary(ByteBuffer buffer) {
+        return buffer.remaining() >= BinaryIndex.HEADER_LENGTH &&
+               buffer.getInt(buffer.position()) == BinaryIndex.MAGIC;
+    }
+
+    /**
+     * Reads a binary index.
+     *
+     * The buffer isn't copied, so it can be a memory mapped
+     * (or direct) buffer.
+     *
+     * @param buffer Buffer with the binary index (from its position).
+     *
+     * @return Binary index.
+     *
+     * @throws IOException If `buffer` isn't a valid binary index.
+     */
+    public static BinaryIndex read(ByteBuffer buffer) throws IOException {
+        if (!BinaryIndex.isBinary(buffer)) {
+            throw new IOException("Not a binary index!");
+        }
+
+        ByteBuffer index = buffer.slice();
+        int version = index.getInt(4);
+        if (version != BinaryIndex.VERSION) {
+            throw new IOException("Unsupported binary index version " + version + "!");
+        }
+
+        int count = index.getInt(8);
+        if (count < 0 || BinaryIndex.HEADER_LENGTH + (long) count * (BinaryIndex.RECORD_LENGTH + 4) > index.limit()) {
+            throw new IOException("Binary index is truncated!");
+        }
+
+        return new BinaryIndex(index, count, index.getInt(12), index.getLong(16));
+    }
+
+    /**
+     * Writes an index in the binary format.
+     *
+     * @param index Index to write.
+     *
+     * @return Binary index.
+     */
+    public static byte[] write(Index index) {
+        List<Index.Asset> byHash = new ArrayList<>(index.assets());
+        byHash.sort(Comparator.comparing(a -> (a.digest() == null) ? BinaryIndex.NO_HASH : a.digest()));
+
+        Integer[] byPath = new Integer[byHash.size()];
+        String[] keys = new String[byHash.size()];
+        byte[][] paths = new byte[byHash.size()][];
+        int pathsLength = 0;
+        for (int i = 0; i < byHash.size(); i++) {
+            byPath[i] = i;
+            keys[i] = Index.key(byHash.get(i).path());
+            paths[i] = byHash.get(i).path().getBytes(StandardCharsets.UTF_8);
+            pathsLength += paths[i].length;
+        }
+        Arrays.sort(byPath, Comparator.comparing(i -> keys[i]));
+
+        ByteBuffer buffer = ByteBuffer.allocate(
+                BinaryIndex.HEADER_LENGTH + byHash.size() * (BinaryIndex.RECORD_LENGTH + 4) + pathsLength
+        );
+        buffer.putInt(BinaryIndex.MAGIC)
+              .putInt(BinaryIndex.VERSION)
+              .putInt(byHash.size())
+              .putInt(index.shardDepth())
+              .putLong(index.journalOffset());
+
+        int offset = 0;
+        for (int i = 0; i < byHash.size(); i++) {
+            Index.Asset asset = byHash.get(i);
+            int flags = (asset.digest() == null ? 0 : BinaryIndex.HAS_HASH) |
+                        (asset.isEncrypted() ? BinaryIndex.IS_ENCRYPTED : 0);
+
+            Hash hash = (asset.digest() == null) ? BinaryIndex.NO_HASH : asset.digest();
+
+            buffer.putLong(hash.high())
+                  .putLong(hash.middle())
+                  .putInt(hash.low())
+                  .put((byte) flags)
+                  .put(new byte[3])
+                  .putInt(offset)
+                  .putInt(paths[i].length)
+                  .putLong(asset.size())
+                  .putLong(asset.modified());
+
+            offset += paths[i].length;
+        }
+
+        for (Integer i : byPath) {
+            buffer.putInt(i);
+        }
+
+        for (byte[] path : paths) {
+            buffer.put(path);
+        }
+
+        return buffer.array();
+    }
+
+    ///////////////////////////////////////
+    // Non static methods and properties //
+    ///////////////////////////////////////
+
+    /**
+     * Binary index.
+     */
+    private final ByteBuffer _buffer;
+
+    /**
+     * Amount of indexed assets.
+     */
+    private final int _count;
+
+    /**
+     * Directory levels of the layout of the encrypted files.
+     */
+    private final int _shardDepth;
+
+    /**
+     * Journal offset of the first change that isn't in the index.
+     */
+    private final long _journalOffset;
+
+    /**
+     * Returns an indexed asset.
+     *
+     * @param i Record index (records are sorted by hash).
+     *
+     * @return Indexed asset.
+     */
+    public Index.Asset get(int i) {
+        int record = this._record(i);
+        int flags = this.buffer().get(record + Hash.LENGTH);
+
+        Index.Asset asset = new Index.Asset(
+                "",
+                this.path(i),
+                (flags & BinaryIndex.IS_ENCRYPTED) != 0,
+                this.buffer().getLong(record + 32),
+                this.buffer().getLong(record + 40)
+        );
+        if ((flags & BinaryIndex.HAS_HASH) != 0) {
+            asset.digest(this._hash(i));
+        }
+
+        return asset;
+    }
+
+    /**
+     * Finds an asset.
+     *
+     * @param path Path to the asset.
+     *
+     * @return Asset with `path` or null if it isn't indexed.
+     */
+    public Index.Asset find(String path) {
+        String key = Index.key(path);
+        int low = 0;
+        int high = this.count() - 1;
+
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int i = this.buffer().getInt(this._byPath() + middle * 4);
+
+            int c = Index.key(this.path(i)).compareTo(key);
+            if (c < 0) {
+                low = middle + 1;
+            } else if (c > 0) {
+                high = middle - 1;
+            } else {
+                return this.get(i);
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Builds the index with all the assets.
+     *
+     * @return Index.
+     */
+    public Index toIndex() {
+        List<Index.Asset> assets = new ArrayList<>(this.count());
+        for (int i = 0; i < this.count(); i++) {
+            assets.add(this.get(i));
+        }
+
+        Index index = new Index(assets);
+        index.shardDepth(this.shardDepth());
+        index.journalOffset(this.journalOffset());
+
+        return index;
+    }
+
+    /**
+     * Returns the position of a record.
+     *
+     * @param i Record index.
+     *
+     * @return Position of the record in `_buffer`.
+     */
+    private int _record(int i) {
+        return BinaryIndex.HEADER_LENGTH + i * BinaryIndex.RECORD_LENGTH;
+    }
+
+    /**
+     * Returns the position of the table of records sorted by path.
+     *
+     * @return Position of the table in `_buffer`.
+     */
+    private int _byPath() {
+        return this._record(this.count());
+    }
+
+    /**
+     * Returns the hash of a record.
+     *
+     * @param i Record index.
+     *
+     * @return Hash.
+     */
+    private Hash _hash(int i) {
+        int record = this._record(i);
+
+        return new Hash(
+                this.buffer().getLong(record),
+                this.buffer().getLong(record + 8),
+                this.buffer().getInt(record + 16)
+        );
+    }
+
+    /**
+     * Returns the path of a record.
+     *
+     * @param i Record index.
+     *
+     * @return Asset path.
+     */
+    public String path(int i) {
+        int record = this._record(i);
+        byte[] path = new byte[this.buffer().getInt(record + 28)];
+
+        ByteBuffer buffer = this.buffer().duplicate();
+        buffer.position(this._byPath() + this.count() * 4 + this.buffer().getInt(record + 24));
+        buffer.get(path);
+
+        return new String(path, StandardCharsets.UTF_8);
+    }
+}
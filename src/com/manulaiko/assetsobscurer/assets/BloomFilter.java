@@ -0,0 +1,118 @@
+package com.manulaiko.assetsobscurer.assets;
+
+import lombok.AccessLevel;
+import lombok.Data;
+import lombok.Getter;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Bloom filter class.
+ * ===================
+ *
+ * Set of strings that answers "definitely not in the set" or
+ * "maybe in the set" without storing the strings.
+ *
+ * It uses 10 bits and 7 hash functions per string, for a false
+ * positive rate of about 1%. The hash functions are derived from
+ * `String.hashCode`, which is cached by the strings, so checking
+ * the same string again is almost free.
+ *
+ * Strings can be added while other threads check the filter: the bits
+ * are set atomically, so a reader either sees a string or doesn't,
+ * and strings added by different threads don't overwrite each other.
+ *
+ * @author Manulaiko <manulaiko@gmail.com>
+ */
+@Data
+public class BloomFilter {
+    /**
+     * Bits per string.
+     */
+    public static final int BITS = 10;
+
+    /**
+     * Hash functions.
+     */
+    public static final int HASHES = 7;
+
+    /**
+     * Filter bits.
+     */
+    @Getter(AccessLevel.NONE)
+    private final AtomicLongArray _bits;
+
+    /**
+     * Amount of bits.
+     */
+    private final int _size;
+
+    /**
+     * Constructor.
+     *
+     * @param expected Expected amount of strings.
+     */
+    public BloomFilter(int expected) {
+        long size = Math.max(64, (long) expected * BloomFilter.BITS);
+        size = Math.min(size, Integer.MAX_VALUE - 63L);
+
+        this._bits = new AtomicLongArray((int) ((size + 63) / 64));
+        this._size = this._bits.length() * 64;
+    }
+
+    /**
+     * Adds a string to the filter.
+     *
+     * @param value String to add.
+     */
+    public void add(String value) {
+        int h1 = value.hashCode();
+        int h2 = BloomFilter._mix(h1);
+
+        for (int i = 0; i < BloomFilter.HASHES; i++) {
+            int bit = Math.floorMod(h1 + i * h2, this.size());
+            long mask = 1L << bit;
+            if ((this._bits.get(bit >>> 6) & mask) == 0) {
+                this._bits.getAndAccumulate(bit >>> 6, mask, (a, b) -> a | b);
+            }
+        }
+    }
+
+    /**
+     * Checks whether a string may be in the filter.
+     *
+     * @param value String to check.
+     *
+     * @return False if `value` is definitely not in the filter, true if it may be.
+     */
+    public boolean mightContain(String value) {
+        int h1 = value.hashCode();
+        int h2 = BloomFilter._mix(h1);
+
+        for (int i = 0; i < BloomFilter.HASHES; i++) {
+            int bit = Math.floorMod(h1 + i * h2, this.size());
+            if ((this._bits.get(bit >>> 6) & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Derives a second hash from a hash.
+     *
+     * @param hash Hash.
+     *
+     * @return Mixed hash (always odd, so every bit can be reached).
+     */
+    private static int _mix(int hash) {
+        hash ^= hash >>> 16;
+        hash *= 0x85EBCA6B;
+        hash ^= hash >>> 13;
+        hash *= 0xC2B2AE35;
+        hash ^= hash >>> 16;
+
+        return hash | 1;
+    }
+}
@@ -0,0 +1,220 @@
+package com.manulaiko.assetsobscurer.assets;
+
+import lombok.Data;
+
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Filter class.
+ * =============
+ *
+ * Decides which files of the assets folder are assets.
+ *
+ * The rules are glob patterns (see `FileSystem.getPathMatcher`) compiled once.
+ * Patterns without a `/` are matched against the file name (`*.psd`, `.git`),
+ * the others against the path relative to the assets folder (`raw/**`).
+ *
+ * A file is an asset if it doesn't match any exclude rule and, if
+ * there are include rules, it matches at least one of them.
+ * Directories matching an exclude rule aren't scanned at all.
+ *
+ * @author Manulaiko <manulaiko@gmail.com>
+ */
+@Data
+public class Filter {
+    /**
+     * Splits a comma separated list of patterns.
+     *
+     * Commas inside braces (`*.{psd,xcf}`) don't split patterns.
+     *
+     * @param patterns Comma separated patterns.
+     *
+     * @return Patterns.
+     */
+    public static List<String> split(String patterns) {
+        List<String> split = new ArrayList<>();
+        StringBuilder pattern = new StringBuilder();
+        int depth = 0;
+
+        for (char c : patterns.toCharArray()) {
+            if (c == ',' && depth == 0) {
+                Filter._add(split, pattern.toString());
+                pattern.setLength(0);
+
+                continue;
+            }
+
+            if (c == '{') {
+                depth++;
+            } else if (c == '}' && depth > 0) {
+                depth--;
+            }
+
+            pattern.append(c);
+        }
+        Filter._add(split, pattern.toString());
+
+        return split;
+    }
+
+    /**
+     * Reads a filter file.
+     *
+     * Each line is a pattern, lines starting with `+` are include rules
+     * and lines starting with `-` (or without prefix) are exclude rules.
+     * Empty lines and lines starting with `#` are ignored.
+     *
+     * @param file    Filter file.
+     * @param include Include patterns.
+     * @param exclude Exclude patterns.
+     *
+     * @throws IOException If the file couldn't be read.
+     */
+    public static void read(Path file, Collection<String> include, Collection<String> exclude) throws IOException {
+        for (String line : Files.readAllLines(file)) {
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+
+            if (line.startsWith("+")) {
+                Filter._add(include, line.substring(1));
+            } else if (line.startsWith("-")) {
+                Filter._add(exclude, line.substring(1));
+            } else {
+                Filter._add(exclude, line);
+            }
+        }
+    }
+
+    /**
+     * Adds a pattern to a list, if it isn't empty.
+     *
+     * @param patterns Patterns.
+     * @param pattern  Pattern to add.
+     */
+    private static void _add(Collection<String> patterns, String pattern) {
+        pattern = pattern.trim();
+        if (!pattern.isEmpty()) {
+            patterns.add(pattern);
+        }
+    }
+
+    /**
+     * Assets folder.
+     */
+    private final Path _root;
+
+    /**
+     * Include rules.
+     */
+    private final List<Rule> _include = new ArrayList<>();
+
+    /**
+     * Exclude rules.
+     */
+    private final List<Rule> _exclude = new ArrayList<>();
+
+    /**
+     * Constructor.
+     *
+     * @param root    Assets folder.
+     * @param include Include patterns.
+     * @param exclude Exclude patterns.
+     */
+    public Filter(Path root, Collection<String> include, Collection<String> exclude) {
+        this._root = root;
+
+        include.forEach(p -> this._include.add(new Rule(p)));
+        exclude.forEach(p -> this._exclude.add(new Rule(p)));
+    }
+
+    /**
+     * Checks whether a file is an asset.
+     *
+     * @param file File to check.
+     *
+     * @return Whether `file` should be indexed or not.
+     */
+    public boolean accepts(Path file) {
+        if (this._matches(this.exclude(), file)) {
+            return false;
+        }
+
+        return this.include().isEmpty() || this._matches(this.include(), file);
+    }
+
+    /**
+     * Checks whether a directory must not be scanned.
+     *
+     * @param dir Directory to check.
+     *
+     * @return Whether `dir` is excluded or not.
+     */
+    public boolean prunes(Path dir) {
+        return !dir.equals(this.root()) && this._matches(this.exclude(), dir);
+    }
+
+    /**
+     * Checks whether a path matches any rule.
+     *
+     * @param rules Rules to check.
+     * @param path  Path to check.
+     *
+     * @return Whether `path` matches any of `rules`.
+     */
+    private boolean _matches(List<Rule> rules, Path path) {
+        if (rules.isEmpty()) {
+            return false;
+        }
+
+        Path name = path.getFileName();
+        Path relative = path.startsWith(this.root()) ? this.root().relativize(path) : path;
+
+        for (Rule rule : rules) {
+            if (rule.matcher().matches(rule.isName() ? name : relative)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Rule class.
+     * ===========
+     *
+     * A compiled pattern.
+     *
+     * @author Manulaiko <manulaiko@gmail.com>
+     */
+    @Data
+    private static class Rule {
+        /**
+         * Compiled pattern.
+         */
+        private final PathMatcher _matcher;
+
+        /**
+         * Whether the pattern matches file names or relative paths.
+         */
+        private final boolean _isName;
+
+        /**
+         * Constructor.
+         *
+         * @param pattern Glob pattern.
+         */
+        public Rule(String pattern) {
+            this._matcher = FileSystems.getDefault().getPathMatcher("glob:" + pattern);
+            this._isName = !pattern.contains("/");
+        }
+    }
+}
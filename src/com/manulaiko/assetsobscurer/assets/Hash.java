@@ -0,0 +1,146 @@
+package com.manulaiko.assetsobscurer.assets;
+
+import lombok.Data;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Hash class.
+ * ===========
+ *
+ * SHA-1 hash of an asset.
+ *
+ * The 20 bytes of the hash are packed in two longs and an int,
+ * so a hash takes a fraction of the memory of its hex encoded string
+ * and can be used as a map key.
+ *
+ * @author Manulaiko <manulaiko@gmail.com>
+ */
+@Data
+public class Hash implements Comparable<Hash> {
+    ///////////////////////////////////
+    // Static methods and properties //
+    ///////////////////////////////////
+
+    /**
+     * Hash length (in bytes).
+     */
+    public static final int LENGTH = 20;
+
+    /**
+     * Hex digits.
+     */
+    private static final char[] DIGITS = "0123456789ABCDEF".toCharArray();
+
+    /**
+     * Parses a hex encoded hash.
+     *
+     * @param hex Hex encoded hash.
+     *
+     * @return Hash or null if `hex` isn't a hash.
+     */
+    public static Hash parse(String hex) {
+        if (hex == null || hex.length() != Hash.LENGTH * 2) {
+            return null;
+        }
+
+        byte[] bytes = new byte[Hash.LENGTH];
+        for (int i = 0; i < bytes.length; i++) {
+            int high = Character.digit(hex.charAt(i * 2), 16);
+            int low = Character.digit(hex.charAt(i * 2 + 1), 16);
+            if (high == -1 || low == -1) {
+                return null;
+            }
+
+            bytes[i] = (byte) ((high << 4) | low);
+        }
+
+        return Hash.of(bytes);
+    }
+
+    /**
+     * Builds a hash from its bytes.
+     *
+     * @param bytes Hash bytes.
+     *
+     * @return Hash.
+     */
+    public static Hash of(byte[] bytes) {
+        if (bytes.length != Hash.LENGTH) {
+            throw new IllegalArgumentException("Invalid hash length " + bytes.length);
+        }
+
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+
+        return new Hash(buffer.getLong(), buffer.getLong(), buffer.getInt());
+    }
+
+    ///////////////////////////////////////
+    // Non static methods and properties //
+    ///////////////////////////////////////
+
+    /**
+     * Bytes 0 to 7.
+     */
+    private final long _high;
+
+    /**
+     * Bytes 8 to 15.
+     */
+    private final long _middle;
+
+    /**
+     * Bytes 16 to 19.
+     */
+    private final int _low;
+
+    /**
+     * Returns the hash bytes.
+     *
+     * @return Hash bytes.
+     */
+    public byte[] bytes() {
+        return ByteBuffer.allocate(Hash.LENGTH)
+                         .putLong(this.high())
+                         .putLong(this.middle())
+                         .putInt(this.low())
+                         .array();
+    }
+
+    /**
+     * Compares two hashes as unsigned bytes.
+     *
+     * @param hash Hash to compare.
+     *
+     * @return Comparison result.
+     */
+    @Override
+    public int compareTo(Hash hash) {
+        int c = Long.compareUnsigned(this.high(), hash.high());
+        if (c == 0) {
+            c = Long.compareUnsigned(this.middle(), hash.middle());
+        }
+        if (c == 0) {
+            c = Integer.compareUnsigned(this.low(), hash.low());
+        }
+
+        return c;
+    }
+
+    /**
+     * Returns the hex encoded hash.
+     *
+     * @return Upper case hex encoded hash.
+     */
+    @Override
+    public String toString() {
+        char[] hex = new char[Hash.LENGTH * 2];
+        byte[] bytes = this.bytes();
+        for (int i = 0; i < bytes.length; i++) {
+            hex[i * 2] = Hash.DIGITS[(bytes[i] >> 4) & 0x0F];
+            hex[i * 2 + 1] = Hash.DIGITS[bytes[i] & 0x0F];
+        }
+
+        return new String(hex);
+    }
+}
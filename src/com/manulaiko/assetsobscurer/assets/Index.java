@@ -3,14 +3,35 @@ package com.manulaiko.assetsobscurer.assets;
 import com.manulaiko.assetsobscurer.main.Settings;
 import com.manulaiko.tabitha.log.Console;
 import com.manulaiko.tabitha.log.ConsoleManager;
-import lombok.AllArgsConstructor;
+import com.google.gson.JsonParseException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.annotations.JsonAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import lombok.AccessLevel;
 import lombok.Data;
+import lombok.Getter;
+import lombok.Setter;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
+import java.nio.file.PathMatcher;
 import java.nio.file.Paths;
-import java.util.List;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Predicate;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * Index class.
@@ -21,17 +42,192 @@ import java.util.stream.Collectors;
  * @author Manulaiko <manulaiko@gmail.com>
  */
 @Data
-@AllArgsConstructor
+@JsonAdapter(Index.Adapter.class)
 public class Index {
     /**
      * Console logger.
      */
     public static final Console console = ConsoleManager.forClass(Index.class);
 
+    /**
+     * Returns the path to the encrypted file of an asset.
+     *
+     * @param hash Asset hash.
+     *
+     * @return Path to the encrypted file.
+     */
+    public static Path blob(String hash) {
+        return Index.blob(hash, Settings.shardDepth);
+    }
+
+    /**
+     * Returns the path to the encrypted file of an asset in a given layout.
+     *
+     * Each level of the layout is a directory named after the next
+     * two characters of the hash, so with a depth of 2 the encrypted file
+     * of `ABCDEF...` is stored in `AB/CD/ABCDEF...`.
+     *
+     * @param hash  Asset hash.
+     * @param depth Amount of directory levels.
+     *
+     * @return Path to the encrypted file.
+     */
+    public static Path blob(String hash, int depth) {
+        Path path = Settings.assets.toPath();
+        for (int i = 0; i < depth && (i + 1) * 2 < hash.length(); i++) {
+            path = path.resolve(hash.substring(i * 2, (i + 1) * 2));
+        }
+
+        return path.resolve(hash);
+    }
+
+    /**
+     * Returns the lookup key of a path.
+     *
+     * @param path Path to normalize.
+     *
+     * @return Normalized path.
+     */
+    public static String key(String path) {
+        if (Index.isNormalized(path)) {
+            return path;
+        }
+
+        return Paths.get(path).normalize().toString();
+    }
+
+    /**
+     * Checks whether a path is already normalized.
+     *
+     * It's a cheap check: some normalized paths (like `../a`)
+     * aren't recognized as such.
+     *
+     * @param path Path to check.
+     *
+     * @return Whether `path` is known to be normalized.
+     */
+    public static boolean isNormalized(String path) {
+        int segment = 0;
+        for (int i = 0; i <= path.length(); i++) {
+            if (i < path.length() && path.charAt(i) != '/' && path.charAt(i) != File.separatorChar) {
+                continue;
+            }
+
+            int length = i - segment;
+            if (length == 0 && i > 0) {
+                // Repeated or trailing separator.
+                return false;
+            }
+            if (length == 1 && path.charAt(segment) == '.') {
+                return false;
+            }
+            if (length == 2 && path.charAt(segment) == '.' && path.charAt(segment + 1) == '.') {
+                return false;
+            }
+            if (i < path.length() && path.charAt(i) != File.separatorChar) {
+                // Separator that isn't the native one.
+                return false;
+            }
+
+            segment = i + 1;
+        }
+
+        return true;
+    }
+
     /**
      * Indexed assets.
      */
-    private List<Asset> _assets;
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private AssetTable _table = new AssetTable();
+
+    /**
+     * Directory levels of the layout of the encrypted files.
+     */
+    private int _shardDepth;
+
+    /**
+     * Journal offset of the first change that isn't in the index.
+     */
+    private long _journalOffset;
+
+    /**
+     * Journal the changes are logged to (may be null).
+     */
+    private transient Journal _journal;
+
+    /**
+     * Pack with the encrypted files (may be null).
+     */
+    private transient Pack _pack;
+
+    /**
+     * Positions of the indexed assets by lower case extension (empty if they haven't one).
+     *
+     * It's only built once it's queried, so an index that
+     * isn't queried doesn't keep it in memory.
+     */
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private transient Map<String, BitSet> _extensions;
+
+    /**
+     * Assets added, updated or removed since the last call to `changes`
+     * by path, removed assets are mapped to null (null if they aren't tracked).
+     */
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private transient Map<String, Asset> _changes;
+
+    /**
+     * Time (in milliseconds) of the last check.
+     */
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private transient long _checked;
+
+    /**
+     * Constructor.
+     *
+     * @param assets Indexed assets.
+     */
+    public Index(List<Asset> assets) {
+        this.assets(assets);
+        this._shardDepth = Settings.shardDepth;
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param table Indexed assets.
+     */
+    private Index(AssetTable table) {
+        this._table = table;
+    }
+
+    /**
+     * Returns the indexed assets.
+     *
+     * The assets are stored packed, so the list is a read only view that
+     * builds an asset each time an element is read: modifying it doesn't
+     * modify the index, use `update` instead.
+     *
+     * @return Indexed assets.
+     */
+    public List<Asset> assets() {
+        return new AbstractList<Asset>() {
+            @Override
+            public Asset get(int index) {
+                return Index.this._table.get(index);
+            }
+
+            @Override
+            public int size() {
+                return Index.this._table.size();
+            }
+        };
+    }
 
     /**
      * Returns the decrypted assets.
@@ -39,7 +235,7 @@ public class Index {
      * @return Decrypted assets.
      */
     public List<Index.Asset> decrypted() {
-        return this.assets().stream().filter(a -> !a.isEncrypted()).collect(Collectors.toList());
+        return this._withEncryption(false).collect(Collectors.toList());
     }
 
     /**
@@ -48,82 +244,450 @@ public class Index {
      * @return Encrypted assets.
      */
     public List<Index.Asset> encrypted() {
-        return this.assets().stream().filter(Asset::isEncrypted).collect(Collectors.toList());
+        return this._withEncryption(true).collect(Collectors.toList());
+    }
+
+    /**
+     * Iterates over the assets whose path starts with a prefix.
+     *
+     * The directory part of the prefix is normalized, so `assets/maps/forest/`
+     * matches the assets under `assets/maps/forest` and `assets/maps/fo` the ones
+     * under `assets/maps` whose path starts with it. Only the directories that
+     * start with the prefix are visited, in directory order.
+     *
+     * The index must not be modified while iterating.
+     *
+     * @param prefix Path prefix.
+     *
+     * @return Assets whose path starts with `prefix`.
+     */
+    public Iterator<Asset> prefixed(String prefix) {
+        int cut = Index._lastSeparator(prefix) + 1;
+        String dir = cut == 0 ? "" : Index.key(prefix.substring(0, cut));
+        String name = prefix.substring(cut);
+        String start = dir.isEmpty() || dir.endsWith(File.separator) ? dir + name : dir + File.separator + name;
+
+        Stream<Asset> direct = this._table.dir(dir).filter(a -> a.name().startsWith(name));
+        Stream<Asset> nested = this._table.dirs()
+                                          .subSet(start, true, start + Character.MAX_VALUE, false)
+                                          .stream()
+                                          .filter(d -> !d.equals(dir))
+                                          .flatMap(this._table::dir);
+
+        return Stream.concat(direct, nested).iterator();
+    }
+
+    /**
+     * Iterates over the assets whose path matches a glob pattern.
+     *
+     * The pattern uses the syntax of `FileSystem.getPathMatcher`. Only the
+     * assets that start with the part of the pattern before the first
+     * wildcard are matched, so `assets/sounds/**.ogg` doesn't visit
+     * the assets outside `assets/sounds`.
+     *
+     * The index must not be modified while iterating.
+     *
+     * @param glob Glob pattern.
+     *
+     * @return Assets whose path matches `glob`.
+     */
+    public Iterator<Asset> matching(String glob) {
+        int wildcard = glob.length();
+        for (char c : "*?[{\\".toCharArray()) {
+            int i = glob.indexOf(c);
+            if (i != -1 && i < wildcard) {
+                wildcard = i;
+            }
+        }
+
+        String literal = glob.substring(0, wildcard);
+        int cut = Index._lastSeparator(literal) + 1;
+        String dir = cut == 0 ? "" : Index.key(literal.substring(0, cut));
+        if (!dir.isEmpty() && !dir.endsWith(File.separator)) {
+            dir += File.separator;
+        }
+
+        PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + dir + glob.substring(cut));
+        Iterable<Asset> candidates = () -> this.prefixed(literal);
+
+        return StreamSupport.stream(candidates.spliterator(), false)
+                            .filter(a -> matcher.matches(Paths.get(a.path())))
+                            .iterator();
+    }
+
+    /**
+     * Iterates over the assets with an extension.
+     *
+     * The index must not be modified while iterating.
+     *
+     * @param extension Extension (case insensitive, with or without the dot).
+     *
+     * @return Assets with `extension`, in no particular order.
+     */
+    public Iterator<Asset> withExtension(String extension) {
+        if (this._extensions == null) {
+            this._extensions = new HashMap<>();
+            for (int i = 0; i < this._table.size(); i++) {
+                this._extension(i);
+            }
+        }
+
+        if (extension.startsWith(".")) {
+            extension = extension.substring(1);
+        }
+        BitSet positions = this._extensions.getOrDefault(extension.toLowerCase(Locale.ROOT), new BitSet());
+
+        return positions.stream().mapToObj(this._table::get).iterator();
+    }
+
+    /**
+     * Iterates over the encrypted or decrypted assets.
+     *
+     * The index must not be modified while iterating.
+     *
+     * @param isEncrypted Whether to iterate over the encrypted assets or the decrypted ones.
+     *
+     * @return Encrypted assets if `isEncrypted` is true, decrypted assets if not, in no particular order.
+     */
+    public Iterator<Asset> withEncryption(boolean isEncrypted) {
+        return this._withEncryption(isEncrypted).iterator();
+    }
+
+    /**
+     * Streams the encrypted or decrypted assets.
+     *
+     * The flags are read from the table, so only
+     * the matching assets are built.
+     *
+     * @param isEncrypted Whether to stream the encrypted assets or the decrypted ones.
+     *
+     * @return Encrypted assets if `isEncrypted` is true, decrypted assets if not.
+     */
+    private Stream<Asset> _withEncryption(boolean isEncrypted) {
+        return IntStream.range(0, this._table.size())
+                        .filter(i -> this._table.isEncrypted(i) == isEncrypted)
+                        .mapToObj(this._table::get);
+    }
+
+    /**
+     * Returns the position of the last separator of a path.
+     *
+     * @param path Path.
+     *
+     * @return Position of the last separator of `path` or -1 if it hasn't one.
+     */
+    private static int _lastSeparator(String path) {
+        return Math.max(path.lastIndexOf(File.separatorChar), path.lastIndexOf('/'));
+    }
+
+    /**
+     * Returns a copy of the index.
+     *
+     * The copy shares the storage of the assets with this index until
+     * either of them is modified (see `AssetTable`), so it's cheap and
+     * isn't affected by later changes to this index.
+     *
+     * @return Copy of the index.
+     */
+    public Index copy() {
+        Index index = new Index(this._table.copy());
+        index.shardDepth(this.shardDepth());
+        index.journalOffset(this.journalOffset());
+
+        return index;
+    }
+
+    /**
+     * Returns a read only copy of the indexed assets.
+     *
+     * @return Copy of the table of the indexed assets, which
+     *         isn't affected by later changes to this index.
+     */
+    public AssetTable freeze() {
+        return this._table.copy();
+    }
+
+    /**
+     * Replaces the indexed assets.
+     *
+     * An asset with the same path as a previous one replaces it.
+     *
+     * @param assets Indexed assets.
+     *
+     * @return This index.
+     */
+    public Index assets(List<Asset> assets) {
+        this._table = new AssetTable();
+        this._extensions = null;
+        this._changes = null;
+        assets.forEach(this::_load);
+
+        return this;
+    }
+
+    /**
+     * Adds the assets of a part of the index.
+     *
+     * An asset with the same path as an indexed one replaces it.
+     * The assets aren't logged to the journal.
+     *
+     * @param part Part of the index.
+     *
+     * @return This index.
+     */
+    public Index merge(Index part) {
+        this._extensions = null;
+        this._changes = null;
+        for (int i = 0; i < part._table.size(); i++) {
+            this._load(part._table.get(i));
+        }
+
+        return this;
+    }
+
+    /**
+     * Returns the assets added, updated or removed since the last call
+     * and starts tracking the next changes.
+     *
+     * @return Changed assets by path (removed assets are mapped to null), or null
+     *         if the changes weren't tracked (first call or the assets were replaced).
+     */
+    public Map<String, Asset> changes() {
+        Map<String, Asset> changes = this._changes;
+        this._changes = new HashMap<>();
+
+        return changes;
+    }
+
+    /**
+     * Finds an asset.
+     *
+     * @param path Path to the asset.
+     *
+     * @return Asset with `path` or null if it isn't indexed.
+     */
+    public Asset find(String path) {
+        int position = this._table.find(path);
+
+        return position == -1 ? null : this._table.get(position);
     }
 
     /**
      * Checks if the specified asset exists inthe list.
      *
+     * Assets are identified by their path, several assets
+     * can share the same hash (and encrypted file).
+     *
      * @param a Asset to check.
      *
      * @return Whether `a` is already in the list or not.
      */
     public boolean contains(Asset a) {
-        for (Asset b : this.assets()) {
-            if (a.path().equals(b.path())) {
-                return true;
-            }
+        return this._table.find(a.path()) != -1;
+    }
 
-            if (!b.hash().isEmpty() && a.hash().equals(b.hash())) {
-                return true;
-            }
-        }
+    /**
+     * Returns how many assets reference an encrypted file.
+     *
+     * @param hash Hash of the encrypted file.
+     *
+     * @return Amount of assets with `hash`.
+     */
+    public int references(String hash) {
+        Hash digest = Hash.parse(hash);
 
-        return false;
+        return digest == null ? 0 : this._table.references(digest);
     }
 
     /**
      * Adds an asset to the list.
      *
-     * @param a Asset to add.
+     * Files named after the hash of an indexed asset
+     * (its encrypted file) aren't added.
+     *
+     * @param asset Asset to add.
      */
     public boolean add(Asset asset) {
-        if (
-                this.assets()
-                    .stream()
-                    .anyMatch(a -> {
-                        Path p = Paths.get(asset.path());
-                        return a.hash().equalsIgnoreCase(p.getFileName().toString());
-                    })
-                ) {
+        Hash named = Hash.parse(asset.name());
+        if ((named != null && this._table.references(named) > 0) || this.contains(asset)) {
             return false;
         }
 
-        if (!this.contains(asset)) {
-            this.assets().add(asset);
+        this._add(asset);
 
-            return true;
-        }
+        return true;
+    }
 
-        return false;
+    /**
+     * Adds an asset or replaces the asset with the same path.
+     *
+     * Unlike `add`, the asset is added even if it's named
+     * after the hash of an indexed asset.
+     *
+     * @param asset Asset to put.
+     */
+    public void put(Asset asset) {
+        if (!this.update(asset)) {
+            this._add(asset);
+        }
     }
 
     /**
      * Updates an asset.
      *
+     * The fields of `a` are copied to the index, so
+     * later changes to `a` don't modify the index.
+     *
      * @param a Asset to update.
      *
      * @return Whether the asset was successfully updated or no.
      */
     public boolean update(Asset a) {
-        Asset asset = null;
-        for (Asset b : this.assets()) {
-            if (a.hash().equals(b.hash()) || a.path().equals(b.path())) {
-                asset = b;
+        int position = this._table.find(a.path());
+        if (position == -1) {
+            return false;
+        }
+
+        this._table.set(position, a);
+        this._log(a);
+        this._changed(a.path(), this._table.get(position));
+
+        return true;
+    }
+
+    /**
+     * Removes the assets that match a predicate.
+     *
+     * @param filter Predicate of the assets to remove.
+     *
+     * @return Removed assets.
+     */
+    public List<Asset> remove(Predicate<Asset> filter) {
+        BitSet positions = new BitSet();
+        for (int i = 0; i < this._table.size(); i++) {
+            if (filter.test(this._table.get(i))) {
+                positions.set(i);
+            }
+        }
+
+        return this._remove(positions);
+    }
+
+    /**
+     * Removes the assets with some paths.
+     *
+     * The assets are looked up by path, so the indexed assets
+     * are moved once for all the paths.
+     *
+     * @param paths Paths of the assets to remove.
+     *
+     * @return Removed assets.
+     */
+    public List<Asset> remove(Collection<String> paths) {
+        BitSet positions = new BitSet();
+        for (String path : paths) {
+            int position = this._table.find(path);
+            if (position != -1) {
+                positions.set(position);
+            }
+        }
+
+        return this._remove(positions);
+    }
+
+    /**
+     * Removes the assets at some positions.
+     *
+     * @param positions Positions of the assets to remove.
+     *
+     * @return Removed assets.
+     */
+    private List<Asset> _remove(BitSet positions) {
+        List<Asset> removed = new ArrayList<>(positions.cardinality());
+        if (positions.isEmpty()) {
+            return removed;
+        }
+
+        positions.stream().forEach(i -> {
+            Asset asset = this._table.get(i);
 
-                break;
+            removed.add(asset);
+            if (this.journal() != null) {
+                this.journal().remove(asset.path());
             }
+            this._changed(asset.path(), null);
+        });
+
+        this._table.remove(positions);
+        this._extensions = null;
+
+        return removed;
+    }
+
+    /**
+     * Adds an asset that isn't indexed and logs it.
+     *
+     * @param asset Asset to add.
+     */
+    private void _add(Asset asset) {
+        int position = this._table.add(asset);
+        if (this._extensions != null) {
+            this._extension(position);
         }
 
+        this._log(asset);
+        this._changed(asset.path(), this._table.get(position));
+    }
+
+    /**
+     * Adds or replaces an asset without logging it.
+     *
+     * @param asset Asset to load (ignored if null).
+     */
+    private void _load(Asset asset) {
         if (asset == null) {
-            return false;
+            return;
         }
 
-        asset.isEncrypted(a.isEncrypted());
-        asset.hash(a.hash());
-        asset.path(a.path());
+        int position = this._table.find(asset.path());
+        if (position == -1) {
+            this._table.add(asset);
+        } else {
+            this._table.set(position, asset);
+        }
+    }
 
-        return true;
+    /**
+     * Adds an asset to the positions of its extension.
+     *
+     * @param position Asset position.
+     */
+    private void _extension(int position) {
+        this._extensions.computeIfAbsent(this._table.get(position).extension(), e -> new BitSet())
+                        .set(position);
+    }
+
+    /**
+     * Logs an added/updated asset to the journal, if any.
+     *
+     * @param asset Added/updated asset.
+     */
+    private void _log(Asset asset) {
+        if (this.journal() != null) {
+            this.journal().put(asset);
+        }
+    }
+
+    /**
+     * Records a change for the next call to `changes`.
+     *
+     * @param path  Path of the changed asset.
+     * @param asset Added/updated asset (null if it was removed).
+     */
+    private void _changed(String path, Asset asset) {
+        if (this._changes != null) {
+            this._changes.put(path, asset);
+        }
     }
 
     /**
@@ -131,18 +695,132 @@ public class Index {
      *
      * The assets that doesn't exit will be deleted from
      * the index.
+     *
+     * The check is skipped if the index was checked less
+     * than `Settings.checkInterval` milliseconds ago.
      */
     public void check() {
-        Index.console.fine("Checking assets...");
-        int i = this.assets().size();
-        this.assets().removeIf(asset -> !this.check(asset));
-        int j = this.assets().size();
+        this.check(false);
+    }
+
+    /**
+     * Checks that all the assets in the index exist.
+     *
+     * The assets that doesn't exit will be deleted from
+     * the index.
+     *
+     * Each directory is listed once (instead of checking each file)
+     * and the directories are listed in parallel. Packed encrypted
+     * files are checked against the pack table.
+     *
+     * @param force Whether to check the assets even if they were checked recently.
+     */
+    public void check(boolean force) {
+        long now = System.currentTimeMillis();
+        if (!force && now - this._checked < Settings.checkInterval) {
+            Index.console.finer("Assets checked recently, skipping check.");
 
-        if (i == j) {
             return;
         }
+        this._checked = now;
 
-        Index.console.fine((i - j) + " assets where deleted from index.");
+        Index.console.fine("Checking assets...");
+        BitSet missing = this._missing();
+        if (missing.isEmpty()) {
+            return;
+        }
+
+        List<String> removed = this._remove(missing)
+                                   .stream()
+                                   .map(Asset::hash)
+                                   .collect(Collectors.toList());
+
+        this.collect(removed);
+
+        Index.console.fine(removed.size() + " assets where deleted from index.");
+    }
+
+    /**
+     * Finds the assets that don't exist.
+     *
+     * @return Positions of the assets that don't exist.
+     */
+    private BitSet _missing() {
+        Map<Path, Map<String, List<Integer>>> dirs = new HashMap<>();
+        for (int i = 0; i < this._table.size(); i++) {
+            Asset asset = this._table.get(i);
+            if (asset.isEncrypted() && this.pack() != null && this.pack().contains(asset.hash())) {
+                continue;
+            }
+
+            Path file = asset.isEncrypted() ? asset.blob() : Paths.get(asset.path());
+            Path dir = file.getParent() == null ? Paths.get("") : file.getParent();
+
+            dirs.computeIfAbsent(dir, d -> new HashMap<>())
+                .computeIfAbsent(file.getFileName().toString(), n -> new ArrayList<>())
+                .add(i);
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(Settings.workers);
+        try {
+            BitSet missing = new BitSet();
+            pool.submit(() -> dirs.entrySet()
+                                  .parallelStream()
+                                  .flatMap(e -> Index._missing(e.getKey(), e.getValue()).stream())
+                                  .collect(Collectors.toList())
+            ).get().forEach(missing::set);
+
+            return missing;
+        } catch (InterruptedException | ExecutionException e) {
+            Index.console.exception("Couldn't check assets!", e);
+
+            return new BitSet();
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Finds the assets of a directory that don't exist.
+     *
+     * The directory is listed once, unless only one file has to be checked.
+     *
+     * @param dir   Directory to check.
+     * @param files Positions of the assets of the directory by file name.
+     *
+     * @return Positions of the assets whose file isn't in `dir`.
+     */
+    private static List<Integer> _missing(Path dir, Map<String, List<Integer>> files) {
+        List<Integer> missing = new ArrayList<>();
+
+        Set<String> names = new HashSet<>();
+        if (files.size() == 1) {
+            String name = files.keySet().iterator().next();
+            if (Files.isRegularFile(dir.resolve(name))) {
+                names.add(name);
+            }
+        } else {
+            try (DirectoryStream<Path> entries = Files.newDirectoryStream(dir.toString().isEmpty() ? Paths.get(".") : dir)) {
+                entries.forEach(p -> names.add(p.getFileName().toString()));
+            } catch (NoSuchFileException e) {
+                // Directory was deleted, so all its files are missing.
+            } catch (IOException e) {
+                Index.console.exception("Couldn't list " + dir + "!", e);
+                files.keySet().forEach(n -> {
+                    if (Files.isRegularFile(dir.resolve(n))) {
+                        names.add(n);
+                    }
+                });
+            }
+        }
+
+        files.forEach((name, positions) -> {
+            if (!names.contains(name)) {
+                missing.addAll(positions);
+            }
+        });
+
+        return missing;
     }
 
     /**
@@ -153,12 +831,53 @@ public class Index {
      * @return Whether `asset` exists in the file system or not.
      */
     public boolean check(Asset asset) {
-        File f = new File(asset.path());
-        if (asset.isEncrypted()) {
-            f = Settings.assets.toPath().resolve(asset.hash()).toFile();
+        if (!asset.isEncrypted()) {
+            return new File(asset.path()).isFile();
         }
 
-        return f.isFile();
+        return asset.blob().toFile().isFile() ||
+               (this.pack() != null && this.pack().contains(asset.hash()));
+    }
+
+    /**
+     * Deletes the encrypted files that are no longer needed.
+     *
+     * An encrypted file is needed while an encrypted asset references it,
+     * or while a decrypted asset references it and `Settings.keepEncrypted` is enabled.
+     *
+     * @param hashes Hashes of the encrypted files that may no longer be needed.
+     */
+    public void collect(Collection<String> hashes) {
+        if (hashes.isEmpty()) {
+            return;
+        }
+
+        Set<String> encrypted = null;
+        for (String hash : new HashSet<>(hashes)) {
+            if (hash.isEmpty()) {
+                continue;
+            }
+
+            if (this.references(hash) > 0) {
+                if (Settings.keepEncrypted) {
+                    continue;
+                }
+
+                // Only the encrypted assets need it, which isn't counted.
+                if (encrypted == null) {
+                    encrypted = this._withEncryption(true).map(Asset::hash).collect(Collectors.toSet());
+                }
+                if (encrypted.contains(hash)) {
+                    continue;
+                }
+            }
+
+            try {
+                Files.deleteIfExists(Index.blob(hash));
+            } catch (IOException e) {
+                Index.console.exception("Couldn't delete " + Index.blob(hash) + "!", e);
+            }
+        }
     }
 
     /**
@@ -167,24 +886,472 @@ public class Index {
      *
      * Represents an asset entry.
      *
+     * The index doesn't keep its assets, it stores their fields packed
+     * (see `AssetTable`) and builds an asset each time one is read, so
+     * modifying an asset doesn't modify the index. The hash is stored in
+     * binary form and the directory of the path is interned, the hex encoded
+     * hash and the full path are built when requested.
+     *
      * @author Manulaiko <manulaiko@gmail.com>
      */
     @Data
-    @AllArgsConstructor
+    @JsonAdapter(Asset.Adapter.class)
     public static class Asset {
         /**
-         * Hash code.
+         * Flag set if the asset is encrypted.
+         */
+        public static final byte ENCRYPTED = 0x01;
+
+        /**
+         * Returns the directory of a normalized path.
+         *
+         * @param path Normalized path.
+         *
+         * @return Directory of `path` (empty if it hasn't one).
+         */
+        public static String dir(Path path) {
+            Path parent = path.getParent();
+
+            return parent == null ? "" : parent.toString();
+        }
+
+        /**
+         * Returns the file name of a normalized path.
+         *
+         * @param path Normalized path.
+         *
+         * @return File name of `path`.
+         */
+        public static String name(Path path) {
+            Path name = path.getFileName();
+
+            return name == null ? path.toString() : name.toString();
+        }
+
+        /**
+         * Hash code (null if the asset wasn't hashed yet).
+         */
+        private Hash _digest;
+
+        /**
+         * Directory of the original path (interned).
+         */
+        @Setter(AccessLevel.NONE)
+        private String _dir;
+
+        /**
+         * File name of the original path.
+         */
+        @Setter(AccessLevel.NONE)
+        private String _name;
+
+        /**
+         * Flags (see `ENCRYPTED`).
+         */
+        @Getter(AccessLevel.NONE)
+        @Setter(AccessLevel.NONE)
+        private byte _flags;
+
+        /**
+         * Size of the decrypted file when it was last encrypted/decrypted.
+         */
+        private long _size;
+
+        /**
+         * Last modification time (in milliseconds) of the decrypted
+         * file when it was last encrypted/decrypted.
+         */
+        private long _modified;
+
+        /**
+         * Constructor.
+         *
+         * @param hash        Hash code.
+         * @param path        Original path.
+         * @param isEncrypted Whether the asset is encrypted or not.
+         * @param size        Size of the decrypted file.
+         * @param modified    Last modification time of the decrypted file.
+         */
+        public Asset(String hash, String path, boolean isEncrypted, long size, long modified) {
+            this.hash(hash);
+            this.path(path);
+            this.isEncrypted(isEncrypted);
+            this._size = size;
+            this._modified = modified;
+        }
+
+        /**
+         * Constructor.
+         *
+         * @param hash        Hash code.
+         * @param path        Original path.
+         * @param isEncrypted Whether the asset is encrypted or not.
+         */
+        public Asset(String hash, String path, boolean isEncrypted) {
+            this(hash, path, isEncrypted, 0, 0);
+        }
+
+        /**
+         * Constructor.
+         *
+         * @param digest      Hash code (null if the asset wasn't hashed yet).
+         * @param dir         Interned directory of the original path.
+         * @param name        File name of the original path.
+         * @param isEncrypted Whether the asset is encrypted or not.
+         * @param size        Size of the decrypted file.
+         * @param modified    Last modification time of the decrypted file.
+         */
+        Asset(Hash digest, String dir, String name, boolean isEncrypted, long size, long modified) {
+            this._digest = digest;
+            this._dir = dir;
+            this._name = name;
+            this.isEncrypted(isEncrypted);
+            this._size = size;
+            this._modified = modified;
+        }
+
+        /**
+         * Returns a copy of the asset.
+         *
+         * @return Copy of the asset.
+         */
+        public Asset copy() {
+            Asset asset = new Asset(null, "", false);
+            asset._digest = this._digest;
+            asset._dir = this._dir;
+            asset._name = this._name;
+            asset._flags = this._flags;
+            asset._size = this._size;
+            asset._modified = this._modified;
+
+            return asset;
+        }
+
+        /**
+         * Returns the hash code.
+         *
+         * @return Hex encoded hash (empty if the asset wasn't hashed yet).
+         */
+        public String hash() {
+            return this.digest() == null ? "" : this.digest().toString();
+        }
+
+        /**
+         * Sets the hash code.
+         *
+         * @param hash Hex encoded hash (empty if the asset wasn't hashed yet).
+         *
+         * @return This asset.
          */
-        private String _hash;
+        public Asset hash(String hash) {
+            if (hash == null || hash.isEmpty()) {
+                this._digest = null;
+
+                return this;
+            }
+
+            Hash digest = Hash.parse(hash);
+            if (digest == null) {
+                throw new IllegalArgumentException("Invalid hash " + hash);
+            }
+            this._digest = digest;
+
+            return this;
+        }
 
         /**
-         * Original path.
+         * Returns the original path.
+         *
+         * @return Original (normalized) path.
          */
-        private String _path;
+        public String path() {
+            if (this.dir().isEmpty()) {
+                return this.name();
+            }
+
+            return this.dir() + File.separator + this.name();
+        }
 
         /**
-         * Whether the asset is encrypted or not.
+         * Sets the original path.
+         *
+         * The path is normalized.
+         *
+         * @param path Original path.
+         *
+         * @return This asset.
          */
-        private boolean _isEncrypted;
+        public Asset path(String path) {
+            Path normalized = Paths.get(path).normalize();
+
+            this._dir = Asset.dir(normalized).intern();
+            this._name = Asset.name(normalized);
+
+            return this;
+        }
+
+        /**
+         * Returns the extension of the file name.
+         *
+         * @return Lower case extension (empty if the file name hasn't one).
+         */
+        public String extension() {
+            int dot = this.name().lastIndexOf('.');
+
+            return dot <= 0 ? "" : this.name().substring(dot + 1).toLowerCase(Locale.ROOT);
+        }
+
+        /**
+         * Returns whether the asset is encrypted or not.
+         *
+         * @return Whether the asset is encrypted or not.
+         */
+        public boolean isEncrypted() {
+            return (this._flags & Asset.ENCRYPTED) != 0;
+        }
+
+        /**
+         * Sets whether the asset is encrypted or not.
+         *
+         * @param isEncrypted Whether the asset is encrypted or not.
+         *
+         * @return This asset.
+         */
+        public Asset isEncrypted(boolean isEncrypted) {
+            if (isEncrypted) {
+                this._flags |= Asset.ENCRYPTED;
+            } else {
+                this._flags &= ~Asset.ENCRYPTED;
+            }
+
+            return this;
+        }
+
+        /**
+         * Returns the path to the encrypted file.
+         *
+         * @return Path to the encrypted file.
+         */
+        public Path blob() {
+            return Index.blob(this.hash());
+        }
+
+        /**
+         * Sets the fingerprint of the decrypted file.
+         *
+         * @param attributes Attributes of the decrypted file.
+         */
+        public void fingerprint(BasicFileAttributes attributes) {
+            this.size(attributes.size());
+            this.modified(attributes.lastModifiedTime().toMillis());
+        }
+
+        /**
+         * Checks whether the decrypted file matches the fingerprint.
+         *
+         * @param attributes Attributes of the decrypted file.
+         *
+         * @return Whether the file is unchanged since it was last encrypted/decrypted.
+         */
+        public boolean matches(BasicFileAttributes attributes) {
+            return this.size() == attributes.size() &&
+                   this.modified() == attributes.lastModifiedTime().toMillis();
+        }
+
+        /**
+         * Returns the asset as a string.
+         *
+         * @return String representation of the asset.
+         */
+        @Override
+        public String toString() {
+            return "Index.Asset(_hash=" + this.hash() + ", _path=" + this.path() + ", _isEncrypted=" + this.isEncrypted() +
+                   ", _size=" + this.size() + ", _modified=" + this.modified() + ")";
+        }
+
+        /**
+         * Adapter class.
+         * ==============
+         *
+         * Reads and writes the assets with the same JSON
+         * fields as before they were stored in compact form.
+         *
+         * @author Manulaiko <manulaiko@gmail.com>
+         */
+        public static class Adapter extends TypeAdapter<Asset> {
+            /**
+             * Writes an asset.
+             *
+             * @param out   JSON writer.
+             * @param asset Asset to write.
+             *
+             * @throws IOException If the asset couldn't be written.
+             */
+            @Override
+            public void write(JsonWriter out, Asset asset) throws IOException {
+                if (asset == null) {
+                    out.nullValue();
+
+                    return;
+                }
+
+                out.beginObject();
+                out.name("_hash").value(asset.hash());
+                out.name("_path").value(asset.path());
+                out.name("_isEncrypted").value(asset.isEncrypted());
+                out.name("_size").value(asset.size());
+                out.name("_modified").value(asset.modified());
+                out.endObject();
+            }
+
+            /**
+             * Reads an asset.
+             *
+             * @param in JSON reader.
+             *
+             * @return Read asset.
+             *
+             * @throws IOException If the asset couldn't be read.
+             */
+            @Override
+            public Asset read(JsonReader in) throws IOException {
+                if (in.peek() == JsonToken.NULL) {
+                    in.nextNull();
+
+                    return null;
+                }
+
+                String hash = "";
+                String path = "";
+                boolean isEncrypted = false;
+                long size = 0;
+                long modified = 0;
+
+                in.beginObject();
+                while (in.hasNext()) {
+                    switch (in.nextName()) {
+                        case "_hash":
+                            hash = in.nextString();
+                            break;
+                        case "_path":
+                            path = in.nextString();
+                            break;
+                        case "_isEncrypted":
+                            isEncrypted = in.nextBoolean();
+                            break;
+                        case "_size":
+                            size = in.nextLong();
+                            break;
+                        case "_modified":
+                            modified = in.nextLong();
+                            break;
+                        default:
+                            in.skipValue();
+                    }
+                }
+                in.endObject();
+
+                try {
+                    return new Asset(hash, path, isEncrypted, size, modified);
+                } catch (IllegalArgumentException e) {
+                    throw new JsonParseException(e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Adapter class.
+     * ==============
+     *
+     * Reads and writes the indexes with the same JSON fields as
+     * before their assets were stored packed, streaming the assets.
+     *
+     * @author Manulaiko <manulaiko@gmail.com>
+     */
+    public static class Adapter extends TypeAdapter<Index> {
+        /**
+         * Adapter of the assets.
+         */
+        private final Asset.Adapter _asset = new Asset.Adapter();
+
+        /**
+         * Writes an index.
+         *
+         * @param out   JSON writer.
+         * @param index Index to write.
+         *
+         * @throws IOException If the index couldn't be written.
+         */
+        @Override
+        public void write(JsonWriter out, Index index) throws IOException {
+            if (index == null) {
+                out.nullValue();
+
+                return;
+            }
+
+            out.beginObject();
+            out.name("_assets").beginArray();
+            for (int i = 0; i < index._table.size(); i++) {
+                this._asset.write(out, index._table.get(i));
+            }
+            out.endArray();
+            out.name("_shardDepth").value(index.shardDepth());
+            out.name("_journalOffset").value(index.journalOffset());
+            out.endObject();
+        }
+
+        /**
+         * Reads an index.
+         *
+         * Indexes written by the first releases haven't
+         * a shard depth, so it defaults to 0.
+         *
+         * @param in JSON reader.
+         *
+         * @return Read index.
+         *
+         * @throws IOException If the index couldn't be read.
+         */
+        @Override
+        public Index read(JsonReader in) throws IOException {
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+
+                return null;
+            }
+
+            Index index = new Index(new AssetTable());
+
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "_assets":
+                        if (in.peek() == JsonToken.NULL) {
+                            in.nextNull();
+                            break;
+                        }
+
+                        in.beginArray();
+                        while (in.hasNext()) {
+                            index._load(this._asset.read(in));
+                        }
+                        in.endArray();
+                        break;
+                    case "_shardDepth":
+                        index.shardDepth(in.nextInt());
+                        break;
+                    case "_journalOffset":
+                        index.journalOffset(in.nextLong());
+                        break;
+                    default:
+                        in.skipValue();
+                }
+            }
+            in.endObject();
+
+            return index;
+        }
     }
 }
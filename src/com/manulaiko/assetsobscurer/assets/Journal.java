@@ -0,0 +1,488 @@
+package com.manulaiko.assetsobscurer.assets;
+
+import com.manulaiko.assetsobscurer.main.EncryptionManager;
+import com.manulaiko.tabitha.log.Console;
+import com.manulaiko.tabitha.log.ConsoleManager;
+import lombok.AccessLevel;
+import lombok.Data;
+import lombok.Getter;
+import lombok.Setter;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.*;
+
+/**
+ * Journal class.
+ * ==============
+ *
+ * Append-only log of the changes made to the index since it was last saved.
+ *
+ * The journal has the following layout:
+ *
+ *     [int magic "AOJL"][long base]
+ *     [int length][encrypted batch]
+ *     ...
+ *
+ * Each batch is encrypted on its own and contains a list of changes:
+ *
+ *     [int count]
+ *     count * ([byte PUT][UTF path][UTF hash][boolean isEncrypted][long size][long modified] | [byte REMOVE][UTF path])
+ *
+ * Changes are kept in memory until `flush` appends them as a single batch
+ * and syncs the file. Offsets are logical: the offset of the first batch is
+ * `base`, so the journal can be truncated without invalidating the offsets
+ * stored in the saved index (see `Index.journalOffset`).
+ *
+ * @author Manulaiko <manulaiko@gmail.com>
+ */
+@Data
+public class Journal implements Closeable {
+    ///////////////////////////////////
+    // Static methods and properties //
+    ///////////////////////////////////
+
+    /**
+     * Console logger.
+     */
+    public static final Console console = ConsoleManager.forClass(Journal.class);
+
+    /**
+     * Journal magic number ("AOJL").
+     */
+    public static final int MAGIC = 0x414F4A4C;
+
+    /**
+     * Header length.
+     */
+    public static final int HEADER_LENGTH = 12;
+
+    /**
+     * Put (add/update) change.
+     */
+    public static final byte PUT = 1;
+
+    /**
+     * Remove change.
+     */
+    public static final byte REMOVE = 2;
+
+    /**
+     * Changes kept in memory before they're written even if `flush` isn't called.
+     */
+    public static final int BATCH_SIZE = 4096;
+
+    /**
+     * Opens (or creates) a journal.
+     *
+     * @param path Path to the journal.
+     *
+     * @return Opened journal.
+     *
+     * @throws IOException If the journal couldn't be opened or isn't a valid journal.
+     */
+    public static Journal open(Path path) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+        try {
+            return new Journal(path, channel, Journal._header(channel));
+        } catch (IOException e) {
+            channel.close();
+
+            throw e;
+        }
+    }
+
+    /**
+     * Reads (or writes, if the journal is empty) the header of a journal.
+     *
+     * @param channel Journal channel.
+     *
+     * @return Journal base.
+     *
+     * @throws IOException If the journal isn't a valid journal.
+     */
+    private static long _header(FileChannel channel) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(Journal.HEADER_LENGTH);
+        if (channel.size() == 0) {
+            header.putInt(Journal.MAGIC).putLong(0).flip();
+            Journal._write(channel, header, 0);
+            channel.force(true);
+
+            return 0;
+        }
+
+        while (header.hasRemaining()) {
+            if (channel.read(header, header.position()) == -1) {
+                throw new IOException("Journal is truncated!");
+            }
+        }
+
+        if (header.getInt(0) != Journal.MAGIC) {
+            throw new IOException("Not a journal!");
+        }
+
+        return header.getLong(4);
+    }
+
+    /**
+     * Writes a buffer at a given position.
+     *
+     * @param channel  Channel to write.
+     * @param buffer   Buffer to write.
+     * @param position Position in `channel`.
+     *
+     * @throws IOException If the buffer couldn't be written.
+     */
+    private static void _write(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    ///////////////////////////////////////
+    // Non static methods and properties //
+    ///////////////////////////////////////
+
+    /**
+     * Path to the journal.
+     */
+    private final Path _path;
+
+    /**
+     * Journal channel.
+     */
+    private FileChannel _channel;
+
+    /**
+     * Logical offset of the first batch.
+     */
+    private long _base;
+
+    /**
+     * Changes not written yet.
+     */
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private final ByteArrayOutputStream _pending = new ByteArrayOutputStream();
+
+    /**
+     * Stream to `_pending`.
+     */
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private final DataOutputStream _changes = new DataOutputStream(this._pending);
+
+    /**
+     * Amount of changes not written yet.
+     */
+    private int _count = 0;
+
+    /**
+     * Constructor.
+     *
+     * @param path    Path to the journal.
+     * @param channel Journal channel.
+     * @param base    Logical offset of the first batch.
+     */
+    private Journal(Path path, FileChannel channel, long base) {
+        this._path = path;
+        this._channel = channel;
+        this._base = base;
+    }
+
+    /**
+     * Logs that an asset was added or updated.
+     *
+     * @param asset Added/updated asset.
+     */
+    public synchronized void put(Index.Asset asset) {
+        try {
+            this._changes.writeByte(Journal.PUT);
+            this._changes.writeUTF(asset.path());
+            this._changes.writeUTF(asset.hash());
+            this._changes.writeBoolean(asset.isEncrypted());
+            this._changes.writeLong(asset.size());
+            this._changes.writeLong(asset.modified());
+
+            this._changed();
+        } catch (IOException e) {
+            Journal.console.exception("Couldn't log change!", e);
+        }
+    }
+
+    /**
+     * Logs that an asset was removed.
+     *
+     * @param path Path of the removed asset.
+     */
+    public synchronized void remove(String path) {
+        try {
+            this._changes.writeByte(Journal.REMOVE);
+            this._changes.writeUTF(path);
+
+            this._changed();
+        } catch (IOException e) {
+            Journal.console.exception("Couldn't log change!", e);
+        }
+    }
+
+    /**
+     * Writes the pending changes once there are enough of them.
+     *
+     * @throws IOException If the changes couldn't be written.
+     */
+    private void _changed() throws IOException {
+        this._count++;
+
+        if (this._count >= Journal.BATCH_SIZE) {
+            this.flush();
+        }
+    }
+
+    /**
+     * Appends the pending changes as a batch and syncs the journal.
+     *
+     * @throws IOException If the changes couldn't be written.
+     */
+    public synchronized void flush() throws IOException {
+        if (this.count() == 0) {
+            return;
+        }
+
+        ByteArrayOutputStream batch = new ByteArrayOutputStream(this._pending.size() + 4);
+        new DataOutputStream(batch).writeInt(this.count());
+        this._pending.writeTo(batch);
+
+        byte[] encrypted = EncryptionManager.instance().encrypt(batch.toByteArray());
+        if (encrypted == null) {
+            throw new IOException("Couldn't encrypt journal batch!");
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(encrypted.length + 4);
+        buffer.putInt(encrypted.length).put(encrypted).flip();
+
+        Journal._write(this.channel(), buffer, this.channel().size());
+        this.channel().force(false);
+
+        this._pending.reset();
+        this._count = 0;
+    }
+
+    /**
+     * Returns the logical offset of the end of the journal.
+     *
+     * @return Offset the next batch will be written at.
+     *
+     * @throws IOException If the journal size couldn't be read.
+     */
+    public synchronized long end() throws IOException {
+        return this.base() + this.length();
+    }
+
+    /**
+     * Returns the length of the batches in the journal.
+     *
+     * @return Length (in bytes) of the written batches.
+     *
+     * @throws IOException If the journal size couldn't be read.
+     */
+    public synchronized long length() throws IOException {
+        return this.channel().size() - Journal.HEADER_LENGTH;
+    }
+
+    /**
+     * Applies the batches written since a given offset to an index.
+     *
+     * A batch that can't be read (because it was being written when
+     * the application stopped) is removed, as well as everything after it.
+     *
+     * The index isn't logging to its journal while the changes are
+     * applied, so they aren't written again.
+     *
+     * @param index Index to update.
+     * @param from  Logical offset of the first batch to apply.
+     *
+     * @return Amount of applied changes.
+     *
+     * @throws IOException If the journal couldn't be read.
+     */
+    public synchronized int replay(Index index, long from) throws IOException {
+        long position = Journal.HEADER_LENGTH + Math.max(0, from - this.base());
+        long size = this.channel().size();
+        int changes = 0;
+
+        Journal journal = index.journal();
+        index.journal(null);
+        try {
+            while (position < size) {
+                int length = position + 4 > size ? -1 : this._length(position);
+                byte[] batch = this._read(position, length, size);
+                if (batch == null) {
+                    Journal.console.warning("Journal is corrupted at " + (this.base() + position - Journal.HEADER_LENGTH) + ", discarding the rest of it.");
+                    this.channel().truncate(position);
+                    this.channel().force(true);
+
+                    break;
+                }
+
+                changes += this._apply(index, batch);
+                position += length + 4;
+            }
+        } finally {
+            index.journal(journal);
+        }
+
+        return changes;
+    }
+
+    /**
+     * Reads and decrypts a batch.
+     *
+     * @param position Position of the batch.
+     * @param length   Length of the encrypted batch.
+     * @param size     Journal size.
+     *
+     * @return Decrypted batch or null if it couldn't be read.
+     *
+     * @throws IOException If the journal couldn't be read.
+     */
+    private byte[] _read(long position, int length, long size) throws IOException {
+        if (length <= 0 || position + 4 + length > size) {
+            return null;
+        }
+
+        ByteBuffer encrypted = ByteBuffer.allocate(length);
+        while (encrypted.hasRemaining()) {
+            if (this.channel().read(encrypted, position + 4 + encrypted.position()) == -1) {
+                return null;
+            }
+        }
+
+        return EncryptionManager.instance().decrypt(encrypted.array());
+    }
+
+    /**
+     * Reads the length of a batch.
+     *
+     * @param position Position of the batch.
+     *
+     * @return Length of the encrypted batch.
+     *
+     * @throws IOException If the journal couldn't be read.
+     */
+    private int _length(long position) throws IOException {
+        ByteBuffer length = ByteBuffer.allocate(4);
+        while (length.hasRemaining()) {
+            if (this.channel().read(length, position + length.position()) == -1) {
+                return -1;
+            }
+        }
+
+        return length.getInt(0);
+    }
+
+    /**
+     * Applies a batch to an index.
+     *
+     * The removed assets are removed together, before the next change
+     * of one of their paths or at the end of the batch, so the index is
+     * scanned once per batch instead of once per removed asset.
+     *
+     * @param index Index to update.
+     * @param batch Decrypted batch.
+     *
+     * @return Amount of applied changes.
+     *
+     * @throws IOException If the batch isn't valid.
+     */
+    private int _apply(Index index, byte[] batch) throws IOException {
+        DataInputStream changes = new DataInputStream(new ByteArrayInputStream(batch));
+        int count = changes.readInt();
+        Set<String> removed = new LinkedHashSet<>();
+
+        for (int i = 0; i < count; i++) {
+            byte change = changes.readByte();
+            String path = changes.readUTF();
+
+            if (change == Journal.PUT) {
+                if (removed.contains(Index.key(path))) {
+                    index.remove(removed);
+                    removed.clear();
+                }
+
+                index.put(new Index.Asset(
+                        changes.readUTF(),
+                        path,
+                        changes.readBoolean(),
+                        changes.readLong(),
+                        changes.readLong()
+                ));
+            } else if (change == Journal.REMOVE) {
+                removed.add(Index.key(path));
+            } else {
+                throw new IOException("Unknown journal change " + change + "!");
+            }
+        }
+
+        index.remove(removed);
+
+        return count;
+    }
+
+    /**
+     * Removes the batches before a given offset.
+     *
+     * The remaining batches are copied to a new journal
+     * that atomically replaces this one.
+     *
+     * @param offset Logical offset of the first batch to keep.
+     *
+     * @throws IOException If the journal couldn't be truncated.
+     */
+    public synchronized void truncate(long offset) throws IOException {
+        if (offset <= this.base()) {
+            return;
+        }
+
+        long from = Journal.HEADER_LENGTH + Math.min(offset - this.base(), this.length());
+        Path tmp = this.path().resolveSibling("." + this.path().getFileName() + ".tmp");
+
+        try (FileChannel output = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer header = ByteBuffer.allocate(Journal.HEADER_LENGTH);
+            header.putInt(Journal.MAGIC).putLong(offset).flip();
+            Journal._write(output, header, 0);
+
+            long transferred = 0;
+            long length = this.channel().size() - from;
+            while (transferred < length) {
+                transferred += this.channel().transferTo(from + transferred, length - transferred, output.position(Journal.HEADER_LENGTH + transferred));
+            }
+            output.force(true);
+        }
+
+        this.channel().close();
+        try {
+            Files.move(tmp, this.path(), StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tmp, this.path(), StandardCopyOption.REPLACE_EXISTING);
+        }
+
+        this._channel = FileChannel.open(this.path(), StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this._base = offset;
+    }
+
+    /**
+     * Closes the journal.
+     *
+     * The pending changes are discarded.
+     *
+     * @throws IOException If the journal couldn't be closed.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        this.channel().close();
+    }
+}
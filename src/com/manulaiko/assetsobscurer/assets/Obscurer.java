@@ -1,21 +1,29 @@
 package com.manulaiko.assetsobscurer.assets;
 
 import com.manulaiko.assetsobscurer.main.EncryptionManager;
+import com.manulaiko.assetsobscurer.main.Header;
 import com.manulaiko.assetsobscurer.main.Settings;
 import com.manulaiko.tabitha.log.Console;
 import com.manulaiko.tabitha.log.ConsoleManager;
+import lombok.AllArgsConstructor;
 import lombok.Data;
 
-import javax.xml.bind.DatatypeConverter;
+import javax.crypto.Cipher;
 import java.io.*;
-import java.nio.file.Files;
-import java.nio.file.Path;
-import java.nio.file.Paths;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.security.DigestInputStream;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.Function;
+import java.util.function.LongUnaryOperator;
+import java.util.function.Predicate;
 
 /**
  * Obscurer class.
@@ -32,26 +40,43 @@ public class Obscurer {
      */
     public static final Console console = ConsoleManager.forClass(Obscurer.class);
 
+    /**
+     * Pool used to encrypt/decrypt the chunks of large assets.
+     */
+    private static final ForkJoinPool pool = new ForkJoinPool();
+
     /**
      * Assets to obscure.
      */
     private final List<Index.Asset> _assets;
 
+    /**
+     * Sizes shared by more than one asset.
+     *
+     * Assets with these sizes may be duplicated, so they're
+     * hashed before encrypting them.
+     */
+    private Set<Long> _sizes = new HashSet<>();
+
+    /**
+     * Hashes of the encrypted files replaced while encrypting.
+     *
+     * They may no longer be needed, see `Index.collect`.
+     */
+    private final Set<String> _replaced = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Pack with the encrypted files (may be null).
+     */
+    private Pack _pack;
+
     /**
      * Encrypts the assets.
      *
      * @return Encrypted assets.
      */
     public List<Index.Asset> encrypt() {
-        List<Index.Asset> assets = new ArrayList<>();
-
-        for (Index.Asset asset : this.assets()) {
-            if (this.encrypt(asset)) {
-                assets.add(asset);
-            }
-        }
-
-        return assets;
+        return this._run(this::encrypt, a -> Paths.get(a.path()), Obscurer::_encryptFootprint);
     }
 
     /**
@@ -67,34 +92,64 @@ public class Obscurer {
         }
 
         try {
-            Obscurer.console.fine("Encrypting " + asset.path() + "...");
-            File f = new File(asset.path());
-            Path p = f.toPath();
+            Path p = Paths.get(asset.path());
+            BasicFileAttributes attributes = Files.readAttributes(p, BasicFileAttributes.class);
 
-            DigestInputStream input = new DigestInputStream(
-                    this.asInputStream(asset),
-                    MessageDigest.getInstance("SHA1")
-            );
+            if (this._isUnchanged(asset, attributes)) {
+                Files.delete(p);
+                asset.isEncrypted(true);
+
+                Obscurer.console.fine(p + " is unchanged, reusing " + asset.blob());
+
+                return true;
+            }
+
+            // Encrypted files are named after the hash of the decrypted file, so the
+            // shard they're written to is only known beforehand if it was hashed.
+            Path dir = Settings.assets.toPath();
+            if (this.sizes().contains(attributes.size())) {
+                String hash = this.hash(p);
+
+                if (this._exists(hash)) {
+                    Files.delete(p);
+                    this._encrypted(asset, hash, attributes);
+
+                    Obscurer.console.fine(p + " is a duplicate of " + Index.blob(hash));
 
-            byte[] bytes = new byte[(int) f.length()];
-            input.read(bytes);
-            input.close();
-            String hash = DatatypeConverter.printHexBinary(input.getMessageDigest().digest());
+                    return true;
+                }
 
-            bytes = EncryptionManager.instance().encrypt(bytes);
+                dir = Index.blob(hash).getParent();
+            }
 
-            if (bytes == null) {
+            Obscurer.console.fine("Encrypting " + asset.path() + "...");
+            Path tmp = this._temporary(dir, p.getFileName().toString());
+
+            String hash = null;
+            try {
+                hash = this.encrypt(p, tmp);
+            } finally {
+                if (hash == null) {
+                    Files.deleteIfExists(tmp);
+                }
+            }
+            if (hash == null) {
                 Obscurer.console.warning("Couldn't encrypt asset!");
 
                 return false;
             }
-            Files.write(p, bytes);
-            p = Files.move(p, Settings.assets.toPath().resolve(hash));
+            Path encrypted = Index.blob(hash);
+            if (this._exists(hash)) {
+                // An identical asset was encrypted meanwhile.
+                Files.delete(tmp);
+            } else {
+                this._commit(tmp, encrypted);
+            }
+            Files.delete(p);
 
-            asset.isEncrypted(true);
-            asset.hash(hash);
+            this._encrypted(asset, hash, attributes);
 
-            Obscurer.console.fine(f.getPath() + " encrypted to " + p.toString());
+            Obscurer.console.fine(p + " encrypted to " + encrypted);
         } catch (IOException e) {
             Obscurer.console.exception("Couldn't read asset!", e);
 
@@ -106,6 +161,53 @@ public class Obscurer {
         return true;
     }
 
+    /**
+     * Marks an asset as encrypted.
+     *
+     * @param asset      Encrypted asset.
+     * @param hash       Hash of the decrypted file.
+     * @param attributes Attributes of the decrypted file.
+     */
+    private void _encrypted(Index.Asset asset, String hash, BasicFileAttributes attributes) {
+        if (!asset.hash().isEmpty() && !asset.hash().equals(hash)) {
+            this.replaced().add(asset.hash());
+        }
+
+        asset.isEncrypted(true);
+        asset.hash(hash);
+        asset.fingerprint(attributes);
+    }
+
+    /**
+     * Checks whether a decrypted asset hasn't changed since
+     * it was decrypted and its encrypted file was kept.
+     *
+     * The decrypted file isn't hashed, so it's only checked
+     * if `Settings.keepEncrypted` is enabled.
+     *
+     * @param asset      Asset to check.
+     * @param attributes Attributes of the decrypted file.
+     *
+     * @return Whether the kept encrypted file can be reused.
+     */
+    private boolean _isUnchanged(Index.Asset asset, BasicFileAttributes attributes) {
+        return Settings.keepEncrypted &&
+               !asset.hash().isEmpty() &&
+               asset.matches(attributes) &&
+               this._exists(asset.hash());
+    }
+
+    /**
+     * Checks whether an encrypted file exists, either loose or packed.
+     *
+     * @param hash Hash of the encrypted file.
+     *
+     * @return Whether the encrypted file exists or not.
+     */
+    private boolean _exists(String hash) {
+        return Files.isRegularFile(Index.blob(hash)) ||
+               (this.pack() != null && this.pack().contains(hash));
+    }
 
     /**
      * Decrypted the assets.
@@ -113,14 +215,154 @@ public class Obscurer {
      * @return Decrypted assets.
      */
     public List<Index.Asset> decrypt() {
-        List<Index.Asset> assets = new ArrayList<>();
+        return this._run(this::decrypt, Index.Asset::blob, Obscurer::_decryptFootprint);
+    }
+
+    /**
+     * Runs an action over the assets.
+     *
+     * If there's more than one worker, the assets are processed in parallel,
+     * largest first, without the buffers of the assets being processed
+     * exceeding `Settings.memoryBudget` bytes.
+     *
+     * The workers only modify the assets they're processing, the index
+     * must be updated with the returned list once all of them are done.
+     * If the thread is interrupted, the assets already submitted are
+     * still processed before returning.
+     *
+     * @param action    Action to run.
+     * @param file      Returns the file that `action` will read.
+     * @param footprint Returns the memory used by `action` for a file size.
+     *
+     * @return Assets for which `action` succeeded.
+     */
+    private List<Index.Asset> _run(Predicate<Index.Asset> action, Function<Index.Asset, Path> file, LongUnaryOperator footprint) {
+        List<Index.Asset> assets = Collections.synchronizedList(new ArrayList<>());
+
+        if (Settings.workers <= 1 || this.assets().size() <= 1) {
+            for (Index.Asset asset : this.assets()) {
+                if (Thread.currentThread().isInterrupted()) {
+                    break;
+                }
+
+                if (action.test(asset)) {
+                    assets.add(asset);
+                }
+            }
 
+            return assets;
+        }
+
+        int kib = (int) Math.max(1, Math.min(Integer.MAX_VALUE, Settings.memoryBudget / 1024));
+        Semaphore budget = new Semaphore(kib);
+        ExecutorService executor = Executors.newFixedThreadPool(Settings.workers);
+
+        for (Sized sized : this._sorted(file)) {
+            if (Thread.currentThread().isInterrupted()) {
+                break;
+            }
+
+            // Assets that need more than the budget get it all, so they run alone.
+            long kibs = (footprint.applyAsLong(sized.size()) + 1023) / 1024;
+            int permits = (int) Math.max(1, Math.min(kib, kibs));
+            budget.acquireUninterruptibly(permits);
+
+            executor.execute(() -> {
+                try {
+                    if (action.test(sized.asset())) {
+                        assets.add(sized.asset());
+                    }
+                } finally {
+                    budget.release(permits);
+                }
+            });
+        }
+
+        executor.shutdown();
+
+        // The workers write files that must be complete once this returns.
+        boolean interrupted = false;
+        while (!executor.isTerminated()) {
+            try {
+                executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+
+        return assets;
+    }
+
+    /**
+     * Returns the amount of chunks encrypted at the same time for an asset.
+     *
+     * @param size File size.
+     *
+     * @return Chunks in flight (and buffers allocated) while encrypting `size` bytes in parallel.
+     */
+    private static int _chunks(long size) {
+        long chunks = (size + Settings.chunkSize - 1) / Settings.chunkSize;
+
+        return (int) Math.max(1, Math.min(Obscurer.pool.getParallelism() + 1, chunks));
+    }
+
+    /**
+     * Returns the memory used by the buffers to encrypt an asset.
+     *
+     * @param size File size.
+     *
+     * @return Bytes used to encrypt `size` bytes.
+     */
+    private static long _encryptFootprint(long size) {
+        if (size < Settings.parallelThreshold) {
+            // Cipher input and output buffers, plus the output stream buffer.
+            return 3L * EncryptionManager.BUFFER_SIZE;
+        }
+
+        return (long) Obscurer._chunks(size) * Settings.chunkSize;
+    }
+
+    /**
+     * Returns the memory used by the buffers to decrypt an asset.
+     *
+     * @param size File size.
+     *
+     * @return Bytes used to decrypt `size` bytes.
+     */
+    private static long _decryptFootprint(long size) {
+        if (size < Settings.parallelThreshold) {
+            return 2L * EncryptionManager.BUFFER_SIZE;
+        }
+
+        // Each chunk being decrypted has its own read and write buffers.
+        return 2L * EncryptionManager.BUFFER_SIZE * Obscurer.pool.getParallelism();
+    }
+
+    /**
+     * Returns the assets sorted by size, largest first.
+     *
+     * @param file Returns the file of an asset.
+     *
+     * @return Sorted assets.
+     */
+    private List<Sized> _sorted(Function<Index.Asset, Path> file) {
+        List<Sized> assets = new ArrayList<>(this.assets().size());
         for (Index.Asset asset : this.assets()) {
-            if (this.decrypt(asset)) {
-                assets.add(asset);
+            long size = 0;
+            try {
+                size = Files.size(file.apply(asset));
+            } catch (IOException ignored) {
+                // Let the action report it.
             }
+
+            assets.add(new Sized(asset, size));
         }
 
+        assets.sort(Comparator.comparingLong(Sized::size).reversed());
+
         return assets;
     }
 
@@ -138,14 +380,27 @@ public class Obscurer {
 
         try {
             Obscurer.console.fine("Decrypting " + asset.path() + "...");
-            Path p = Settings.assets.toPath().resolve(asset.hash());
-
-            byte[] decrypted = this.decrypt(p);
+            Path p = asset.blob();
+            Path target = Paths.get(asset.path());
+            Path tmp = this._temporary(target.toAbsolutePath().getParent(), target.getFileName().toString());
+
+            boolean isDecrypted = false;
+            try {
+                isDecrypted = this.decrypt(p, tmp);
+            } finally {
+                if (!isDecrypted) {
+                    Files.deleteIfExists(tmp);
+                }
+            }
+            if (!isDecrypted) {
+                Obscurer.console.warning("Couldn't decrypt asset!");
 
-            Files.write(p, decrypted);
-            Files.move(p, Paths.get(asset.path()));
+                return false;
+            }
+            this._commit(tmp, target);
 
             asset.isEncrypted(false);
+            asset.fingerprint(Files.readAttributes(target, BasicFileAttributes.class));
 
             Obscurer.console.fine(p + " decrypted to " + asset.path());
         } catch (IOException e) {
@@ -160,6 +415,8 @@ public class Obscurer {
     /**
      * Returns an asset as an input stream.
      *
+     * Encrypted assets are decrypted lazily as the stream is read.
+     *
      * @param asset Asset to return.
      *
      * @return Input stream for `asset`.
@@ -171,9 +428,33 @@ public class Obscurer {
             return new FileInputStream(asset.path());
         }
 
-        byte[] bytes = this.decrypt(Paths.get(asset.path()));
+        return new AssetInputStream(this.asChannel(asset));
+    }
 
-        return new ByteArrayInputStream(bytes);
+    /**
+     * Returns an asset as a seekable channel.
+     *
+     * Encrypted assets are decrypted on the fly as they're read.
+     *
+     * @param asset Asset to return.
+     *
+     * @return Channel for `asset`.
+     *
+     * @throws IOException If couldn't open the channel.
+     */
+    public SeekableByteChannel asChannel(Index.Asset asset) throws IOException {
+        if (!asset.isEncrypted()) {
+            return FileChannel.open(Paths.get(asset.path()), StandardOpenOption.READ);
+        }
+
+        if (this.pack() != null && !Files.isRegularFile(asset.blob())) {
+            SeekableByteChannel channel = this.pack().channel(asset.hash());
+            if (channel != null) {
+                return channel;
+            }
+        }
+
+        return AssetChannel.open(asset.blob());
     }
 
     /**
@@ -184,8 +465,422 @@ public class Obscurer {
      * @return Decrypted asset.
      */
     public byte[] decrypt(Path path) throws IOException {
-        byte[] bytes = Files.readAllBytes(path);
+        ByteArrayOutputStream output = new ByteArrayOutputStream((int) Files.size(path));
+
+        try (InputStream input = new BufferedInputStream(Files.newInputStream(path))) {
+            if (!EncryptionManager.instance().decrypt(input, output)) {
+                return null;
+            }
+        }
+
+        return output.toByteArray();
+    }
+
+    /**
+     * Calculates the SHA-1 hash of a file.
+     *
+     * The file is streamed, so it's never fully loaded in memory.
+     *
+     * @param path Path to the file.
+     *
+     * @return Hex encoded hash of `path`.
+     *
+     * @throws IOException              If couldn't read the file.
+     * @throws NoSuchAlgorithmException If SHA-1 isn't available.
+     */
+    public String hash(Path path) throws IOException, NoSuchAlgorithmException {
+        MessageDigest digest = MessageDigest.getInstance("SHA1");
+
+        try (InputStream input = new DigestInputStream(Files.newInputStream(path), digest)) {
+            byte[] buffer = new byte[EncryptionManager.BUFFER_SIZE];
+            while (input.read(buffer) != -1) {
+                // Just feed the digest.
+            }
+        }
+
+        return Hash.of(digest.digest()).toString();
+    }
+
+    /**
+     * Encrypts a file into another.
+     *
+     * The file is read only once: the same buffers feed
+     * both the SHA-1 digest and the cipher.
+     *
+     * @param path   Path to the file.
+     * @param output Path to the encrypted file.
+     *
+     * @return Hex encoded SHA-1 hash of `path` or null if it couldn't be encrypted.
+     *
+     * @throws IOException If couldn't read or write the files.
+     */
+    public String encrypt(Path path, Path output) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA1");
+        } catch (NoSuchAlgorithmException e) {
+            Obscurer.console.exception("Couldn't hash asset!", e);
+
+            return null;
+        }
+
+        try (
+                FileChannel in = FileChannel.open(path, StandardOpenOption.READ);
+                FileChannel out = FileChannel.open(output, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)
+        ) {
+            if (!this._encrypt(in, out, digest)) {
+                return null;
+            }
+        }
+
+        return Hash.of(digest.digest()).toString();
+    }
+
+    /**
+     * Decrypts a file into another.
+     *
+     * @param path   Path to the encrypted file.
+     * @param output Path to the decrypted file.
+     *
+     * @return Whether the file was successfully decrypted or not.
+     *
+     * @throws IOException If couldn't read or write the files.
+     */
+    public boolean decrypt(Path path, Path output) throws IOException {
+        try (
+                FileChannel in = FileChannel.open(path, StandardOpenOption.READ);
+                FileChannel out = FileChannel.open(output, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)
+        ) {
+            return this._decrypt(in, out);
+        }
+    }
+
+    /**
+     * Returns a path for a temporary file.
+     *
+     * Temporary files are hidden and placed in the same directory
+     * as their final destination so they can be atomically renamed.
+     * Encrypted files whose hash isn't known yet are written to the
+     * root of the layout instead, which is on the same file system
+     * as the shards.
+     *
+     * @param dir  Directory of the temporary file.
+     * @param name Name of the final file.
+     *
+     * @return Path to a new temporary file.
+     *
+     * @throws IOException If the directory couldn't be created.
+     */
+    private Path _temporary(Path dir, String name) throws IOException {
+        Files.createDirectories(dir);
+
+        return dir.resolve("." + name + "." + Long.toHexString(ThreadLocalRandom.current().nextLong()) + ".tmp");
+    }
+
+    /**
+     * Moves a temporary file to its final destination.
+     *
+     * @param tmp    Temporary file.
+     * @param target Final destination.
+     *
+     * @return Path to the final destination.
+     *
+     * @throws IOException If the file couldn't be moved.
+     */
+    private Path _commit(Path tmp, Path target) throws IOException {
+        Files.createDirectories(target.getParent());
+
+        try {
+            return Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            return Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Encrypts a channel into another while feeding a digest.
+     *
+     * Large assets are read sequentially (feeding the digest) in chunks
+     * that are encrypted in parallel.
+     *
+     * @param input  Plain input.
+     * @param output Encrypted output.
+     * @param digest Digest to feed with the plain input.
+     *
+     * @return Whether the input was successfully encrypted or not.
+     */
+    private boolean _encrypt(FileChannel input, FileChannel output, MessageDigest digest) throws IOException {
+        if (input.size() < Settings.parallelThreshold) {
+            return EncryptionManager.instance().encrypt(
+                    new DigestInputStream(Channels.newInputStream(input), digest),
+                    new BufferedOutputStream(Channels.newOutputStream(output), EncryptionManager.BUFFER_SIZE)
+            );
+        }
 
-        return EncryptionManager.instance().decrypt(bytes);
+        List<ForkJoinTask<?>> tasks = new ArrayList<>();
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            Header header = EncryptionManager.instance().writeHeader(new DataOutputStream(bytes));
+
+            ByteBuffer buffer = ByteBuffer.wrap(bytes.toByteArray());
+            while (buffer.hasRemaining()) {
+                output.write(buffer, buffer.position());
+            }
+
+            // The buffers are recycled, which also caps the memory used by the chunks in flight.
+            int chunks = Obscurer._chunks(input.size());
+            BlockingQueue<ByteBuffer> buffers = new ArrayBlockingQueue<>(chunks);
+            for (int i = 0; i < chunks; i++) {
+                buffers.add(ByteBuffer.allocate(Settings.chunkSize));
+            }
+
+            long size = input.size();
+            for (long position = 0; position < size; position += Settings.chunkSize) {
+                ByteBuffer chunk = buffers.take();
+                chunk.clear();
+                chunk.limit((int) Math.min(chunk.capacity(), size - position));
+                while (chunk.hasRemaining()) {
+                    if (input.read(chunk, position + chunk.position()) == -1) {
+                        throw new IOException("Unexpected end of asset!");
+                    }
+                }
+                chunk.flip();
+                digest.update(chunk.array(), 0, chunk.limit());
+
+                long offset = header.length() + position;
+                long block = position / EncryptionManager.BLOCK_SIZE;
+                tasks.add(Obscurer.pool.submit(() -> {
+                    try {
+                        Cipher cipher = EncryptionManager.instance().encryptCipher(header, block);
+                        try {
+                            cipher.update(chunk.array(), 0, chunk.limit(), chunk.array(), 0);
+                        } finally {
+                            EncryptionManager.instance().release(cipher);
+                        }
+
+                        while (chunk.hasRemaining()) {
+                            output.write(chunk, offset + chunk.position());
+                        }
+                    } catch (Exception e) {
+                        throw new RuntimeException(e);
+                    } finally {
+                        buffers.add(chunk);
+                    }
+                }));
+            }
+
+            for (ForkJoinTask<?> task : tasks) {
+                task.join();
+            }
+        } catch (InterruptedException e) {
+            Obscurer._cancel(tasks);
+            Thread.currentThread().interrupt();
+
+            Obscurer.console.warning("Interrupted while encrypting asset!");
+
+            return false;
+        } catch (Exception e) {
+            Obscurer._cancel(tasks);
+
+            Obscurer.console.exception("Couldn't encrypt asset!", e);
+
+            return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Cancels the chunks of an asset and waits for the ones already running.
+     *
+     * The chunks still in flight write to the output channel,
+     * which is closed once the asset is abandoned.
+     *
+     * @param tasks Chunk tasks.
+     */
+    private static void _cancel(List<ForkJoinTask<?>> tasks) {
+        tasks.forEach(t -> t.cancel(false));
+        tasks.forEach(ForkJoinTask::quietlyJoin);
+    }
+
+    /**
+     * Decrypts a channel into another.
+     *
+     * Large assets are split in chunks that are decrypted in parallel,
+     * legacy assets are always decrypted sequentially.
+     *
+     * @param input  Encrypted input.
+     * @param output Plain output.
+     *
+     * @return Whether the input was successfully decrypted or not.
+     */
+    private boolean _decrypt(FileChannel input, FileChannel output) throws IOException {
+        if (input.size() < Settings.parallelThreshold) {
+            return EncryptionManager.instance().decrypt(input, output);
+        }
+
+        try {
+            Header header = EncryptionManager.instance().readHeader(
+                    new DataInputStream(Channels.newInputStream(input))
+            );
+
+            if (header.isLegacy()) {
+                input.position(0);
+
+                return EncryptionManager.instance().decrypt(input, output);
+            }
+
+            Obscurer.pool.invoke(new Chunk(header, input, header.length(), output, 0, 0, input.size() - header.length()));
+        } catch (Exception e) {
+            Obscurer.console.exception("Couldn't decrypt asset!", e);
+
+            return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Asset with its file size.
+     */
+    @Data
+    private static class Sized {
+        /**
+         * Asset.
+         */
+        private final Index.Asset _asset;
+
+        /**
+         * File size.
+         */
+        private final long _size;
+    }
+
+    /**
+     * Chunk task.
+     * ===========
+     *
+     * Decrypts a range of an asset, splitting it in
+     * smaller tasks until it fits in `Settings.chunkSize`.
+     *
+     * Reads and writes are positional, so all the tasks share the channels.
+     *
+     * @author Manulaiko <manulaiko@gmail.com>
+     */
+    @AllArgsConstructor
+    private static class Chunk extends RecursiveAction {
+        /**
+         * Serialization version (tasks aren't serialized, but they're `Serializable`).
+         */
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * Asset header.
+         */
+        private final Header _header;
+
+        /**
+         * Input channel.
+         */
+        private final FileChannel _input;
+
+        /**
+         * Position of the payload in the input channel.
+         */
+        private final long _inputOffset;
+
+        /**
+         * Output channel.
+         */
+        private final FileChannel _output;
+
+        /**
+         * Position of the payload in the output channel.
+         */
+        private final long _outputOffset;
+
+        /**
+         * Start of the range (relative to the payload).
+         */
+        private final long _start;
+
+        /**
+         * End of the range (relative to the payload).
+         */
+        private final long _end;
+
+        /**
+         * Processes the range.
+         */
+        @Override
+        protected void compute() {
+            long length = this._end - this._start;
+
+            if (length > Settings.chunkSize) {
+                long middle = this._start + (length / 2 / Settings.chunkSize) * Settings.chunkSize;
+                if (middle == this._start) {
+                    middle += Settings.chunkSize;
+                }
+
+                Chunk left = new Chunk(this._header, this._input, this._inputOffset, this._output, this._outputOffset, this._start, middle);
+                Chunk right = new Chunk(this._header, this._input, this._inputOffset, this._output, this._outputOffset, middle, this._end);
+
+                // Both halves must be done before failing, they write to the same channel.
+                right.fork();
+                left.quietlyInvoke();
+                if (left.isCompletedAbnormally()) {
+                    right.cancel(false);
+                }
+                right.quietlyJoin();
+
+                left.join();
+                right.join();
+
+                return;
+            }
+
+            try {
+                this._process();
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        }
+
+        /**
+         * Decrypts the range.
+         *
+         * Since CTR is symmetric, an encryption cipher is used.
+         */
+        private void _process() throws Exception {
+            Cipher cipher = EncryptionManager.instance().encryptCipher(
+                    this._header,
+                    this._start / EncryptionManager.BLOCK_SIZE
+            );
+            ByteBuffer in = ByteBuffer.allocate(EncryptionManager.BUFFER_SIZE);
+            ByteBuffer out = ByteBuffer.allocate(EncryptionManager.BUFFER_SIZE);
+
+            try {
+                for (long position = this._start; position < this._end; position += in.limit()) {
+                    in.clear();
+                    in.limit((int) Math.min(in.capacity(), this._end - position));
+                    while (in.hasRemaining()) {
+                        if (this._input.read(in, this._inputOffset + position + in.position()) == -1) {
+                            throw new IOException("Unexpected end of asset!");
+                        }
+                    }
+                    in.flip();
+
+                    out.clear();
+                    cipher.update(in, out);
+                    out.flip();
+
+                    while (out.hasRemaining()) {
+                        this._output.write(out, this._outputOffset + position + out.position());
+                    }
+                }
+            } finally {
+                EncryptionManager.instance().release(cipher);
+            }
+        }
     }
 }
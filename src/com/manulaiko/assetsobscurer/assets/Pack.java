@@ -0,0 +1,564 @@
+package com.manulaiko.assetsobscurer.assets;
+
+import com.manulaiko.tabitha.log.Console;
+import com.manulaiko.tabitha.log.ConsoleManager;
+import lombok.AccessLevel;
+import lombok.Data;
+import lombok.Getter;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Pack class.
+ * ===========
+ *
+ * Stores the encrypted files of the assets in a single file,
+ * so the file system doesn't need an entry per asset.
+ *
+ * A pack has the following layout:
+ *
+ *     [int magic "AOPK"][int version][int count]
+ *     count * [20 bytes hash][long offset][long length]
+ *     [encrypted files]
+ *
+ * The table is sorted by hash so entries are looked up with
+ * a binary search, and each encrypted file is stored as is, in
+ * the same format as a loose encrypted file.
+ *
+ * The header and the table are memory mapped, and so are the
+ * encrypted files if the pack fits in a single mapping. Otherwise
+ * they're read from the channel the pack was opened with, which
+ * is kept open until the pack and the channels returned by
+ * `channel` are closed, so they keep reading the same file even
+ * if it's replaced meanwhile.
+ *
+ * @author Manulaiko <manulaiko@gmail.com>
+ */
+@Data
+public class Pack implements Closeable {
+    ///////////////////////////////////
+    // Static methods and properties //
+    ///////////////////////////////////
+
+    /**
+     * Console logger.
+     */
+    public static final Console console = ConsoleManager.forClass(Pack.class);
+
+    /**
+     * Pack magic number ("AOPK").
+     */
+    public static final int MAGIC = 0x414F504B;
+
+    /**
+     * Pack format version.
+     */
+    public static final int VERSION = 1;
+
+    /**
+     * Header length.
+     */
+    public static final int HEADER_LENGTH = 12;
+
+    /**
+     * Table entry length.
+     */
+    public static final int ENTRY_LENGTH = Hash.LENGTH + 16;
+
+    /**
+     * Opens a pack.
+     *
+     * @param path Path to the pack.
+     *
+     * @return Opened pack.
+     *
+     * @throws IOException If the pack couldn't be read or isn't a valid pack.
+     */
+    public static Pack open(Path path) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+
+        try {
+            return new Pack(path, channel);
+        } catch (IOException e) {
+            channel.close();
+
+            throw e;
+        }
+    }
+
+    /**
+     * Writes a pack.
+     *
+     * The encrypted files are copied from their loose file if it
+     * exists, or from `previous` otherwise.
+     *
+     * @param path     Path to the pack.
+     * @param hashes   Hashes of the encrypted files to pack.
+     * @param previous Previous pack (may be null).
+     *
+     * @return Amount of packed files.
+     *
+     * @throws IOException If the pack couldn't be written.
+     */
+    public static int write(Path path, Collection<String> hashes, Pack previous) throws IOException {
+        SortedMap<Hash, String> entries = new TreeMap<>();
+        for (String hash : hashes) {
+            if (hash.isEmpty()) {
+                continue;
+            }
+
+            Hash parsed = Hash.parse(hash);
+            if (parsed == null) {
+                Pack.console.warning("Invalid hash " + hash + ", skipping it.");
+            } else if (Files.isRegularFile(Index.blob(hash)) || (previous != null && previous.contains(hash))) {
+                entries.put(parsed, hash);
+            } else {
+                Pack.console.warning("Couldn't find encrypted file " + hash + ", skipping it.");
+            }
+        }
+
+        long offset = Pack.HEADER_LENGTH + (long) entries.size() * Pack.ENTRY_LENGTH;
+        ByteBuffer table = ByteBuffer.allocate(Pack.HEADER_LENGTH + entries.size() * Pack.ENTRY_LENGTH);
+        table.putInt(Pack.MAGIC)
+             .putInt(Pack.VERSION)
+             .putInt(entries.size());
+
+        try (FileChannel output = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            for (Map.Entry<Hash, String> entry : entries.entrySet()) {
+                long length = Pack._copy(entry.getValue(), previous, output, offset);
+
+                table.put(entry.getKey().bytes())
+                     .putLong(offset)
+                     .putLong(length);
+
+                offset += length;
+            }
+
+            table.flip();
+            while (table.hasRemaining()) {
+                output.write(table, table.position());
+            }
+            output.force(true);
+        }
+
+        return entries.size();
+    }
+
+    /**
+     * Copies an encrypted file into a pack.
+     *
+     * @param hash     Hash of the encrypted file.
+     * @param previous Previous pack (may be null).
+     * @param output   Pack being written.
+     * @param offset   Offset of the encrypted file in `output`.
+     *
+     * @return Length of the encrypted file.
+     *
+     * @throws IOException If the file couldn't be copied.
+     */
+    private static long _copy(String hash, Pack previous, FileChannel output, long offset) throws IOException {
+        Path blob = Index.blob(hash);
+        if (Files.isRegularFile(blob)) {
+            try (FileChannel input = FileChannel.open(blob, StandardOpenOption.READ)) {
+                return Pack._transfer(input, 0, input.size(), output, offset);
+            }
+        }
+
+        int i = previous.find(hash);
+
+        return Pack._transfer(previous._channel, previous._offset(i), previous._length(i), output, offset);
+    }
+
+    /**
+     * Transfers a region of a channel into another.
+     *
+     * @param input  Input channel.
+     * @param start  Start of the region in `input`.
+     * @param length Length of the region.
+     * @param output Output channel.
+     * @param offset Position of the region in `output`.
+     *
+     * @return Transferred bytes.
+     *
+     * @throws IOException If the region couldn't be transferred.
+     */
+    private static long _transfer(FileChannel input, long start, long length, FileChannel output, long offset) throws IOException {
+        long transferred = 0;
+        while (transferred < length) {
+            long n = input.transferTo(start + transferred, length - transferred, output.position(offset + transferred));
+            if (n <= 0) {
+                throw new IOException("Unexpected end of encrypted file!");
+            }
+
+            transferred += n;
+        }
+
+        return transferred;
+    }
+
+    ///////////////////////////////////////
+    // Non static methods and properties //
+    ///////////////////////////////////////
+
+    /**
+     * Path to the pack.
+     */
+    private final Path _path;
+
+    /**
+     * Pack channel.
+     */
+    private final FileChannel _channel;
+
+    /**
+     * Memory mapped header and table.
+     */
+    private final MappedByteBuffer _table;
+
+    /**
+     * Memory mapped pack.
+     *
+     * Null if the pack is too big to be mapped at once.
+     */
+    private final MappedByteBuffer _data;
+
+    /**
+     * Amount of packed files.
+     */
+    private final int _count;
+
+    /**
+     * References to `_channel`: the pack itself and the opened channels.
+     */
+    @Getter(AccessLevel.NONE)
+    private final AtomicInteger _references = new AtomicInteger(1);
+
+    /**
+     * Whether the pack was closed or not.
+     */
+    @Getter(AccessLevel.NONE)
+    private final AtomicBoolean _isClosed = new AtomicBoolean(false);
+
+    /**
+     * Constructor.
+     *
+     * @param path    Path to the pack.
+     * @param channel Pack channel.
+     *
+     * @throws IOException If the pack couldn't be read or isn't a valid pack.
+     */
+    private Pack(Path path, FileChannel channel) throws IOException {
+        this._path = path;
+        this._channel = channel;
+
+        long size = channel.size();
+        if (size < Pack.HEADER_LENGTH) {
+            throw new IOException(path + " isn't a valid pack!");
+        }
+
+        MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, Pack.HEADER_LENGTH);
+        if (header.getInt(0) != Pack.MAGIC || header.getInt(4) != Pack.VERSION) {
+            throw new IOException(path + " isn't a valid pack!");
+        }
+
+        this._count = header.getInt(8);
+        long tableLength = Pack.HEADER_LENGTH + (long) this._count * Pack.ENTRY_LENGTH;
+        if (this._count < 0 || tableLength > Integer.MAX_VALUE) {
+            throw new IOException(path + " has an invalid entry count " + this._count + "!");
+        }
+        if (tableLength > size) {
+            throw new IOException(path + " is truncated!");
+        }
+
+        if (size <= Integer.MAX_VALUE) {
+            this._data = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            this._table = this._data;
+        } else {
+            this._data = null;
+            this._table = channel.map(FileChannel.MapMode.READ_ONLY, 0, tableLength);
+        }
+
+        this._validate(tableLength, size);
+    }
+
+    /**
+     * Checks that the table entries are sorted and point inside the pack.
+     *
+     * @param tableLength Length of the header and the table.
+     * @param size        Pack size.
+     *
+     * @throws IOException If an entry is invalid.
+     */
+    private void _validate(long tableLength, long size) throws IOException {
+        Hash previous = null;
+        for (int i = 0; i < this.count(); i++) {
+            Hash hash = this._digest(i);
+            if (previous != null && previous.compareTo(hash) >= 0) {
+                throw new IOException(this.path() + " isn't sorted at entry " + i + "!");
+            }
+
+            long offset = this._offset(i);
+            long length = this._length(i);
+            if (offset < tableLength || length < 0 || length > size - offset) {
+                throw new IOException(this.path() + " has an invalid entry " + hash + " (offset " + offset + ", length " + length + ")!");
+            }
+
+            previous = hash;
+        }
+    }
+
+    /**
+     * Returns the hashes of the packed files.
+     *
+     * @return Packed hashes, sorted.
+     */
+    public List<String> hashes() {
+        List<String> hashes = new ArrayList<>(this.count());
+        for (int i = 0; i < this.count(); i++) {
+            hashes.add(this._hash(i));
+        }
+
+        return hashes;
+    }
+
+    /**
+     * Checks whether an encrypted file is packed.
+     *
+     * @param hash Hash of the encrypted file.
+     *
+     * @return Whether `hash` is packed or not.
+     */
+    public boolean contains(String hash) {
+        return this.find(hash) >= 0;
+    }
+
+    /**
+     * Finds the table entry of an encrypted file.
+     *
+     * @param hash Hash of the encrypted file.
+     *
+     * @return Index of the entry or a negative number if `hash` isn't packed.
+     */
+    public int find(String hash) {
+        Hash key = Hash.parse(hash);
+        if (key == null) {
+            return -1;
+        }
+
+        int low = 0;
+        int high = this.count() - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+
+            int c = this._digest(middle).compareTo(key);
+            if (c < 0) {
+                low = middle + 1;
+            } else if (c > 0) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+
+        return -(low + 1);
+    }
+
+    /**
+     * Returns a packed encrypted file as a seekable channel.
+     *
+     * The file is decrypted on the fly as it's read.
+     *
+     * @param hash Hash of the encrypted file.
+     *
+     * @return Channel for `hash` or null if it isn't packed.
+     *
+     * @throws ClosedChannelException If the pack was closed.
+     * @throws IOException            If the channel couldn't be opened.
+     */
+    public SeekableByteChannel channel(String hash) throws IOException {
+        int i = this.find(hash);
+        if (i < 0) {
+            return null;
+        }
+
+        long offset = this._offset(i);
+        long length = this._length(i);
+        if (this._data != null) {
+            ByteBuffer slice = this._data.duplicate();
+            slice.position((int) offset);
+            slice.limit((int) (offset + length));
+
+            return new AssetChannel(slice);
+        }
+
+        if (!this._retain()) {
+            throw new ClosedChannelException();
+        }
+
+        try {
+            return new AssetChannel(this._channel, offset, length, this::_release);
+        } catch (IOException e) {
+            this._release();
+
+            throw e;
+        }
+    }
+
+    /**
+     * Writes the packed files as loose encrypted files.
+     *
+     * Files that already exist are skipped.
+     *
+     * @return Amount of written files.
+     *
+     * @throws IOException If a file couldn't be written.
+     */
+    public int explode() throws IOException {
+        int written = 0;
+        for (int i = 0; i < this.count(); i++) {
+            String hash = this._hash(i);
+            Path blob = Index.blob(hash);
+            if (Files.isRegularFile(blob)) {
+                continue;
+            }
+
+            Files.createDirectories(blob.getParent());
+            Path tmp = blob.resolveSibling("." + hash + "." + Long.toHexString(ThreadLocalRandom.current().nextLong()) + ".tmp");
+            try (FileChannel output = FileChannel.open(tmp, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+                long length = this._length(i);
+                long transferred = 0;
+                while (transferred < length) {
+                    long n = this._channel.transferTo(this._offset(i) + transferred, length - transferred, output);
+                    if (n <= 0) {
+                        throw new IOException("Unexpected end of pack!");
+                    }
+
+                    transferred += n;
+                }
+            } catch (IOException e) {
+                Files.deleteIfExists(tmp);
+
+                throw e;
+            }
+
+            try {
+                Files.move(tmp, blob, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmp, blob, StandardCopyOption.REPLACE_EXISTING);
+            }
+
+            written++;
+        }
+
+        return written;
+    }
+
+    /**
+     * Closes the pack.
+     *
+     * @throws IOException If the pack couldn't be closed.
+     */
+    @Override
+    public void close() throws IOException {
+        if (this._isClosed.compareAndSet(false, true)) {
+            this._release();
+        }
+    }
+
+    /**
+     * Takes a reference to the channel.
+     *
+     * @return Whether the reference was taken or not (if the channel was already closed).
+     */
+    private boolean _retain() {
+        for (;;) {
+            int references = this._references.get();
+            if (references == 0) {
+                return false;
+            }
+
+            if (this._references.compareAndSet(references, references + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Gives back a reference to the channel, closing it once there are none left.
+     *
+     * @throws IOException If the channel couldn't be closed.
+     */
+    private void _release() throws IOException {
+        if (this._references.decrementAndGet() == 0) {
+            this._channel.close();
+        }
+    }
+
+    /**
+     * Returns the position of a table entry.
+     *
+     * @param i Entry index.
+     *
+     * @return Position of the entry in `_table`.
+     */
+    private int _entry(int i) {
+        return Pack.HEADER_LENGTH + i * Pack.ENTRY_LENGTH;
+    }
+
+    /**
+     * Returns the hash of a table entry.
+     *
+     * @param i Entry index.
+     *
+     * @return Hash of the encrypted file.
+     */
+    private Hash _digest(int i) {
+        int entry = this._entry(i);
+
+        return new Hash(this._table.getLong(entry), this._table.getLong(entry + 8), this._table.getInt(entry + 16));
+    }
+
+    /**
+     * Returns the hex encoded hash of a table entry.
+     *
+     * @param i Entry index.
+     *
+     * @return Hex encoded hash.
+     */
+    private String _hash(int i) {
+        return this._digest(i).toString();
+    }
+
+    /**
+     * Returns the offset of a table entry.
+     *
+     * @param i Entry index.
+     *
+     * @return Offset of the encrypted file in the pack.
+     */
+    private long _offset(int i) {
+        return this._table.getLong(this._entry(i) + Hash.LENGTH);
+    }
+
+    /**
+     * Returns the length of a table entry.
+     *
+     * @param i Entry index.
+     *
+     * @return Length of the encrypted file.
+     */
+    private long _length(int i) {
+        return this._table.getLong(this._entry(i) + Hash.LENGTH + 8);
+    }
+}
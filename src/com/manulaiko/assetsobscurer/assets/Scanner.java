@@ -1,13 +1,22 @@
 package com.manulaiko.assetsobscurer.assets;
 
+import com.manulaiko.assetsobscurer.main.Settings;
 import com.manulaiko.tabitha.log.Console;
 import com.manulaiko.tabitha.log.ConsoleManager;
+import lombok.AllArgsConstructor;
 import lombok.Data;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
 
 /**
  * Scanner class.
@@ -15,6 +24,12 @@ import java.util.List;
  *
  * Scans the specified directory for assets.
  *
+ * Each directory is listed once and each entry is stat'ed once,
+ * the sub directories are scanned in parallel.
+ *
+ * Files and directories rejected by the filter (see `Settings.include`
+ * and `Settings.exclude`) are skipped while walking the directory.
+ *
  * @author Manulaiko <manulaiko@gmail.com>
  */
 @Data
@@ -29,20 +44,41 @@ public class Scanner {
      */
     private final File _dir;
 
+    /**
+     * Scanned files filter.
+     */
+    private final Filter _filter;
+
     /**
      * Scanned assets.
      */
     private List<Index.Asset> _assets = new ArrayList<>();
 
+    /**
+     * Constructor.
+     *
+     * @param dir Directory to scan.
+     */
+    public Scanner(File dir) {
+        this(dir, new Filter(dir.toPath(), Settings.include, Settings.exclude));
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param dir    Directory to scan.
+     * @param filter Scanned files filter.
+     */
+    public Scanner(File dir, Filter filter) {
+        this._dir = dir;
+        this._filter = filter;
+    }
+
     /**
      * Scans the directory and returns the assets.
      */
     public void scan() {
-        File[] files = this.dir().listFiles();
-
-        if (files != null) {
-            Arrays.stream(files).forEach(this::scan);
-        }
+        this.scan(this.dir());
     }
 
     /**
@@ -51,18 +87,12 @@ public class Scanner {
      * @param dir Directory to scan.
      */
     public void scan(File dir) {
-        File[] dirs = dir.listFiles(File::isDirectory);
-        if (dirs != null) {
-            Arrays.stream(dirs).forEach(this::scan);
-        }
-
-        File[] files = dir.listFiles(File::isFile);
-        if (files != null) {
-            Arrays.stream(files).forEach(this::add);
-        }
+        ForkJoinPool pool = new ForkJoinPool(Settings.workers);
 
-        if (dir.isFile()) {
-            this.add(dir);
+        try {
+            this.assets().addAll(pool.invoke(new Directory(dir.toPath())));
+        } finally {
+            pool.shutdown();
         }
     }
 
@@ -78,11 +108,121 @@ public class Scanner {
             return;
         }
 
-        if (asset.getName().equals("assets.index")) {
-            return;
+        try {
+            Path path = asset.toPath();
+            Index.Asset a = this.asset(path, Files.readAttributes(path, BasicFileAttributes.class));
+            if (a != null) {
+                this.assets().add(a);
+            }
+        } catch (IOException e) {
+            Scanner.console.exception("Couldn't read " + asset + "!", e);
+        }
+    }
+
+    /**
+     * Builds the index entry of a scanned file.
+     *
+     * @param path       Path to the file.
+     * @param attributes Attributes of the file.
+     *
+     * @return Index entry or null if the file isn't an asset.
+     */
+    public Index.Asset asset(Path path, BasicFileAttributes attributes) {
+        String name = path.getFileName().toString();
+        if (!attributes.isRegularFile() || name.startsWith("assets.index") || name.equals("assets.pack") || name.equals("assets.journal")) {
+            return null;
+        }
+
+        if (name.startsWith(".") && name.endsWith(".tmp")) {
+            // Temporary file of an encryption/decryption (left behind if it was interrupted).
+            Scanner.console.finer("Skipped " + path);
+
+            return null;
+        }
+
+        if (!this.filter().accepts(path)) {
+            Scanner.console.finer("Skipped " + path);
+
+            return null;
         }
 
-        this.assets().add(new Index.Asset("", asset.getPath(), false));
-        Scanner.console.finer("Found " + asset.getPath());
+        Scanner.console.finer("Found " + path);
+
+        return new Index.Asset("", path.toString(), false, attributes.size(), attributes.lastModifiedTime().toMillis());
+    }
+
+    /**
+     * Directory class.
+     * ================
+     *
+     * Scans a directory, forking a task for each sub directory.
+     *
+     * @author Manulaiko <manulaiko@gmail.com>
+     */
+    @AllArgsConstructor
+    private class Directory extends RecursiveTask<List<Index.Asset>> {
+        /**
+         * Serialization version (tasks aren't serialized, but they're `Serializable`).
+         */
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * Directory to scan.
+         */
+        private final Path _dir;
+
+        /**
+         * Scans the directory.
+         *
+         * @return Assets in the directory and its sub directories.
+         */
+        @Override
+        protected List<Index.Asset> compute() {
+            List<Index.Asset> assets = new ArrayList<>();
+            List<Directory> dirs = new ArrayList<>();
+
+            try (DirectoryStream<Path> entries = Files.newDirectoryStream(this._dir)) {
+                for (Path entry : entries) {
+                    BasicFileAttributes attributes;
+                    try {
+                        attributes = Files.readAttributes(entry, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+                        if (attributes.isSymbolicLink()) {
+                            attributes = Files.readAttributes(entry, BasicFileAttributes.class);
+                        }
+                    } catch (IOException e) {
+                        Scanner.console.exception("Couldn't read " + entry + "!", e);
+
+                        continue;
+                    }
+
+                    if (attributes.isDirectory()) {
+                        if (Scanner.this.filter().prunes(entry)) {
+                            Scanner.console.finer("Skipped " + entry);
+
+                            continue;
+                        }
+
+                        Directory dir = new Directory(entry);
+                        dir.fork();
+                        dirs.add(dir);
+
+                        continue;
+                    }
+
+                    Index.Asset asset = Scanner.this.asset(entry, attributes);
+                    if (asset != null) {
+                        assets.add(asset);
+                    }
+                }
+            } catch (IOException e) {
+                Scanner.console.exception("Couldn't list " + this._dir + "!", e);
+            }
+
+            for (Directory dir : dirs) {
+                assets.addAll(dir.join());
+            }
+
+            return assets;
+        }
     }
 }
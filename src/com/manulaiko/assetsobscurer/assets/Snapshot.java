@@ -0,0 +1,221 @@
+package com.manulaiko.assetsobscurer.assets;
+
+import lombok.AccessLevel;
+import lombok.Data;
+import lombok.Getter;
+import lombok.Setter;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Snapshot class.
+ * ===============
+ *
+ * Immutable view of the assets index.
+ *
+ * The assets manager publishes a new snapshot after each change
+ * to the index, so assets can be looked up (and read) from any thread
+ * without locking while the index is being scanned, encrypted or decrypted.
+ *
+ * The assets are a copy of the table of the index, which shares its storage
+ * with the index until the index modifies it (see `AssetTable`). A snapshot is
+ * built from the previous one and the changes of the index: the table of the
+ * previous snapshot is shared and only the changes since it was copied are
+ * copied, until there are too many of them and the table is copied again.
+ *
+ * A bloom filter of the paths answers most lookups of assets
+ * that aren't indexed without looking them up. The filter of a binary
+ * index is built by the first lookup of an asset that isn't indexed,
+ * as it has to decode every path.
+ *
+ * @author Manulaiko <manulaiko@gmail.com>
+ */
+@Data
+public class Snapshot {
+    /**
+     * Maximum amount of changes kept apart from the table of a snapshot
+     * of `count` assets before it's copied again.
+     *
+     * Each snapshot copies the changes, and the first changes to the index after
+     * the table is copied copy the parts of the table they modify, so with
+     * `sqrt(count)` changes each snapshot costs `O(sqrt(count))`.
+     *
+     * @param count Amount of assets.
+     *
+     * @return Maximum amount of changes.
+     */
+    public static int changesLimit(int count) {
+        return Math.max(1024, 8 * (int) Math.sqrt(count));
+    }
+
+    /**
+     * Assets (null if `_binaryIndex` is set).
+     */
+    private final AssetTable _assets;
+
+    /**
+     * Assets changed since `_assets` was copied by normalized path
+     * (removed assets are mapped to null).
+     */
+    @Getter(AccessLevel.NONE)
+    private final Map<String, Index.Asset> _changes;
+
+    /**
+     * Amount of assets.
+     */
+    private final int _count;
+
+    /**
+     * Normalized paths of the assets (null until it's built for a binary index).
+     */
+    @Setter(AccessLevel.NONE)
+    private volatile BloomFilter _filter;
+
+    /**
+     * Binary assets index (may be null).
+     */
+    private final BinaryIndex _binaryIndex;
+
+    /**
+     * Pack with the encrypted files (may be null).
+     */
+    private final Pack _pack;
+
+    /**
+     * Constructor.
+     *
+     * @param index Assets index.
+     * @param pack  Pack with the encrypted files (may be null).
+     */
+    public Snapshot(Index index, Pack pack) {
+        this._assets = index.freeze();
+        this._changes = Collections.emptyMap();
+        this._count = this._assets.size();
+        this._filter = new BloomFilter(this.count());
+        for (int i = 0; i < this.count(); i++) {
+            this._filter.add(this._assets.path(i));
+        }
+        this._binaryIndex = null;
+        this._pack = pack;
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param previous Snapshot whose table is shared.
+     * @param changes  Assets changed since the table was copied.
+     * @param count    Amount of assets.
+     * @param pack     Pack with the encrypted files (may be null).
+     */
+    private Snapshot(Snapshot previous, Map<String, Index.Asset> changes, int count, Pack pack) {
+        this._assets = previous.assets();
+        this._changes = Collections.unmodifiableMap(changes);
+        this._count = count;
+        this._filter = previous.filter();
+        this._binaryIndex = null;
+        this._pack = pack;
+    }
+
+    /**
+     * Returns a snapshot of the index after some changes.
+     *
+     * The table (and bloom filter) of this snapshot are shared if it's a
+     * snapshot of the same index, otherwise (or if there are too many
+     * changes) a new one is built from the index.
+     *
+     * @param index   Assets index.
+     * @param changes Assets changed since this snapshot (see `Index.changes`),
+     *                null if they aren't known.
+     * @param pack    Pack with the encrypted files (may be null).
+     *
+     * @return Snapshot of `index`.
+     */
+    public Snapshot update(Index index, Map<String, Index.Asset> changes, Pack pack) {
+        int count = index.assets().size();
+        if (changes == null || this.assets() == null || this.getClass() != Snapshot.class ||
+            this._changes.size() + changes.size() > Snapshot.changesLimit(count) ||
+            count > this.filter().size() / BloomFilter.BITS) {
+            return new Snapshot(index, pack);
+        }
+
+        Map<String, Index.Asset> merged = new HashMap<>(this._changes);
+        changes.forEach((path, asset) -> {
+            merged.put(path, asset);
+            if (asset != null) {
+                // Readers of older snapshots may get a false positive at most,
+                // the filter sets its bits atomically.
+                this.filter().add(path);
+            }
+        });
+
+        return new Snapshot(this, merged, count, pack);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param binaryIndex Binary assets index.
+     * @param pack        Pack with the encrypted files (may be null).
+     */
+    public Snapshot(BinaryIndex binaryIndex, Pack pack) {
+        this._assets = null;
+        this._changes = Collections.emptyMap();
+        this._count = binaryIndex.count();
+        this._filter = null;
+        this._binaryIndex = binaryIndex;
+        this._pack = pack;
+    }
+
+    /**
+     * Finds an asset.
+     *
+     * @param path Path to the asset.
+     *
+     * @return Asset with `path` or null if it isn't indexed.
+     */
+    public Index.Asset find(String path) {
+        BloomFilter filter = this.filter();
+        if (filter != null && !filter.mightContain(Index.key(path))) {
+            return null;
+        }
+
+        if (this.assets() == null) {
+            Index.Asset asset = this.binaryIndex().find(path);
+            if (asset == null && filter == null) {
+                this._buildFilter();
+            }
+
+            return asset;
+        }
+
+        Path normalized = Paths.get(path).normalize();
+        String key = normalized.toString();
+        if (this._changes.containsKey(key)) {
+            return this._changes.get(key);
+        }
+
+        int position = this.assets().find(normalized);
+
+        return position == -1 ? null : this.assets().get(position);
+    }
+
+    /**
+     * Builds the bloom filter of the binary index, if it isn't built yet.
+     */
+    private synchronized void _buildFilter() {
+        if (this._filter != null) {
+            return;
+        }
+
+        BloomFilter filter = new BloomFilter(this.count());
+        for (int i = 0; i < this.count(); i++) {
+            filter.add(Index.key(this.binaryIndex().path(i)));
+        }
+
+        this._filter = filter;
+    }
+}
@@ -0,0 +1,92 @@
+package com.manulaiko.assetsobscurer.assets;
+
+import com.manulaiko.assetsobscurer.main.Settings;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.stream.Stream;
+
+/**
+ * Split index class.
+ * ==================
+ *
+ * Names and paths of the parts of a split index.
+ *
+ * A split index stores the assets of each top level directory of the
+ * assets folder in its own encrypted file, `assets.index.<directory>`,
+ * and the rest of them in `assets.index`. This way a lookup only needs
+ * to load the part of the path being looked up.
+ *
+ * @author Manulaiko <manulaiko@gmail.com>
+ */
+public class SplitIndex {
+    /**
+     * Prefix of the part files.
+     */
+    public static final String PREFIX = "assets.index.";
+
+    /**
+     * Returns the part an asset belongs to.
+     *
+     * @param path Path to the asset.
+     *
+     * @return Name of the top level directory of `path` or null if it's in the root of the assets folder.
+     */
+    public static String part(String path) {
+        Path root = Settings.assets.toPath().normalize();
+        Path relative = Paths.get(path).normalize();
+        if (!root.toString().isEmpty()) {
+            if (!relative.startsWith(root)) {
+                return null;
+            }
+
+            relative = root.relativize(relative);
+        } else if (relative.isAbsolute() || relative.startsWith("..")) {
+            return null;
+        }
+
+        if (relative.getNameCount() < 2) {
+            return null;
+        }
+
+        return relative.getName(0).toString();
+    }
+
+    /**
+     * Returns the path to a part.
+     *
+     * @param folder Assets folder.
+     * @param name   Part name.
+     *
+     * @return Path to the part file.
+     */
+    public static Path path(Path folder, String name) {
+        return folder.resolve(SplitIndex.PREFIX + name);
+    }
+
+    /**
+     * Lists the parts stored in a folder.
+     *
+     * @param folder Assets folder.
+     *
+     * @return Names of the parts.
+     */
+    public static Set<String> list(Path folder) {
+        Set<String> names = new HashSet<>();
+
+        try (Stream<Path> files = Files.list(folder)) {
+            files.map(f -> f.getFileName().toString())
+                 .filter(f -> f.startsWith(SplitIndex.PREFIX) && Files.isRegularFile(folder.resolve(f)))
+                 .forEach(f -> names.add(f.substring(SplitIndex.PREFIX.length())));
+        } catch (IOException e) {
+            return Collections.emptySet();
+        }
+
+        return names;
+    }
+}
@@ -0,0 +1,97 @@
+package com.manulaiko.assetsobscurer.assets;
+
+import lombok.AccessLevel;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * Split snapshot class.
+ * =====================
+ *
+ * Snapshot of a split index (see `SplitIndex`) whose parts are loaded
+ * the first time an asset under them is looked up.
+ *
+ * The snapshot itself only holds the assets in the root of the index.
+ *
+ * @author Manulaiko <manulaiko@gmail.com>
+ */
+@Data
+@EqualsAndHashCode(callSuper = false)
+public class SplitSnapshot extends Snapshot {
+    /**
+     * Names of the parts that aren't in the root of the index.
+     */
+    private final Set<String> _parts;
+
+    /**
+     * Loads a part (returns null if it couldn't be loaded).
+     */
+    @Getter(AccessLevel.NONE)
+    private final Function<String, Index> _loader;
+
+    /**
+     * Snapshots of the loaded parts.
+     */
+    @Getter(AccessLevel.NONE)
+    private final Map<String, Snapshot> _loaded = new ConcurrentHashMap<>();
+
+    /**
+     * Constructor.
+     *
+     * @param index  Root of the index.
+     * @param pack   Pack with the encrypted files (may be null).
+     * @param parts  Names of the parts.
+     * @param loader Loads a part.
+     */
+    public SplitSnapshot(Index index, Pack pack, Set<String> parts, Function<String, Index> loader) {
+        super(index, pack);
+
+        this._parts = Collections.unmodifiableSet(parts);
+        this._loader = loader;
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param binaryIndex Root of the index.
+     * @param pack        Pack with the encrypted files (may be null).
+     * @param parts       Names of the parts.
+     * @param loader      Loads a part.
+     */
+    public SplitSnapshot(BinaryIndex binaryIndex, Pack pack, Set<String> parts, Function<String, Index> loader) {
+        super(binaryIndex, pack);
+
+        this._parts = Collections.unmodifiableSet(parts);
+        this._loader = loader;
+    }
+
+    /**
+     * Finds an asset.
+     *
+     * @param path Path to the asset.
+     *
+     * @return Asset with `path` or null if it isn't indexed.
+     */
+    @Override
+    public Index.Asset find(String path) {
+        String name = SplitIndex.part(path);
+        if (name == null || !this.parts().contains(name)) {
+            return super.find(path);
+        }
+
+        Snapshot part = this._loaded.computeIfAbsent(name, n -> {
+            Index index = this._loader.apply(n);
+
+            return index == null ? null : new Snapshot(index, this.pack());
+        });
+
+        return part == null ? null : part.find(path);
+    }
+}
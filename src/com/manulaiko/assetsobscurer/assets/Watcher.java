@@ -0,0 +1,340 @@
+package com.manulaiko.assetsobscurer.assets;
+
+import com.manulaiko.assetsobscurer.main.Settings;
+import com.manulaiko.tabitha.log.Console;
+import com.manulaiko.tabitha.log.ConsoleManager;
+import com.manulaiko.tabitha.utils.SuperThread;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static java.nio.file.StandardWatchEventKinds.*;
+
+/**
+ * Watcher class.
+ * ==============
+ *
+ * Watches the assets folder and keeps the index up to date
+ * without rescanning the whole folder.
+ *
+ * The events are coalesced until no new event arrives for
+ * `Settings.watchDelay` milliseconds, then the changed paths
+ * are added to (or removed from) the index, the new and changed
+ * assets are encrypted (if enabled) and the index is saved.
+ *
+ * Only the changed paths are looked up in the index and encrypted,
+ * the whole index is only checked again if some events were lost.
+ *
+ * @author Manulaiko <manulaiko@gmail.com>
+ */
+public class Watcher extends SuperThread {
+    /**
+     * Console logger.
+     */
+    public static final Console console = ConsoleManager.forClass(Watcher.class);
+
+    /**
+     * Assets manager.
+     */
+    private final AssetsManager _manager;
+
+    /**
+     * Whether to encrypt the new assets or not.
+     */
+    private final boolean _encrypt;
+
+    /**
+     * Watch service.
+     */
+    private final WatchService _service;
+
+    /**
+     * Watched directories.
+     */
+    private final Map<WatchKey, Path> _keys = new HashMap<>();
+
+    /**
+     * Scanner for the changed files.
+     */
+    private final Scanner _scanner;
+
+    /**
+     * Constructor.
+     *
+     * @param manager Assets manager.
+     * @param encrypt Whether to encrypt the new assets or not.
+     *
+     * @throws IOException If the assets folder couldn't be watched.
+     */
+    public Watcher(AssetsManager manager, boolean encrypt) throws IOException {
+        super("Watcher");
+
+        this._manager = manager;
+        this._encrypt = encrypt;
+        this._service = FileSystems.getDefault().newWatchService();
+        this._scanner = new Scanner(manager.assets());
+
+        this._register(manager.assets().toPath());
+        this.setDaemon(true);
+    }
+
+    /**
+     * Waits for the next batch of events and applies them.
+     *
+     * @throws Exception If the watch service was closed.
+     */
+    @Override
+    protected void _run() throws Exception {
+        Set<Path> changed = new LinkedHashSet<>();
+        boolean overflow = this._poll(this._service.take(), changed);
+
+        WatchKey key;
+        while ((key = this._service.poll(Settings.watchDelay, TimeUnit.MILLISECONDS)) != null) {
+            overflow |= this._poll(key, changed);
+        }
+
+        try {
+            this._apply(changed, overflow);
+        } catch (Exception e) {
+            Watcher.console.exception("Couldn't update the index!", e);
+        }
+    }
+
+    /**
+     * Stops watching the assets folder.
+     */
+    @Override
+    public void terminate() {
+        super.terminate();
+
+        try {
+            this._service.close();
+        } catch (IOException e) {
+            Watcher.console.exception("Couldn't close watch service!", e);
+        }
+    }
+
+    /**
+     * Collects the paths changed by the events of a key.
+     *
+     * @param key     Signalled key.
+     * @param changed Changed paths.
+     *
+     * @return Whether some events were lost or not.
+     */
+    private boolean _poll(WatchKey key, Set<Path> changed) {
+        Path dir = this._keys.get(key);
+        boolean overflow = false;
+
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == OVERFLOW) {
+                overflow = true;
+
+                continue;
+            }
+
+            if (dir == null) {
+                continue;
+            }
+
+            Path path = dir.resolve((Path) event.context());
+            String name = path.getFileName().toString();
+            if (name.startsWith(".") && name.endsWith(".tmp")) {
+                // Temporary file of an encryption/decryption.
+                continue;
+            }
+
+            changed.add(path);
+        }
+
+        if (!key.reset()) {
+            this._keys.remove(key);
+        }
+
+        return overflow;
+    }
+
+    /**
+     * Applies the changes to the index.
+     *
+     * @param changed  Changed paths.
+     * @param overflow Whether some events were lost or not.
+     *
+     * @throws IOException If a new directory couldn't be watched.
+     */
+    private void _apply(Set<Path> changed, boolean overflow) throws IOException {
+        synchronized (this._manager) {
+            Index index = this._manager.index();
+
+            if (overflow) {
+                Watcher.console.warning("Some changes were lost, rescanning the assets folder...");
+                this._register(this._manager.assets().toPath());
+                index.check(true);
+                this._manager.scan();
+            }
+
+            List<Index.Asset> found = new ArrayList<>();
+            List<String> deleted = new ArrayList<>();
+            for (Path path : changed) {
+                BasicFileAttributes attributes;
+                try {
+                    attributes = Files.readAttributes(path, BasicFileAttributes.class);
+                } catch (IOException e) {
+                    this._remove(index, path.toString(), deleted);
+
+                    continue;
+                }
+
+                if (attributes.isDirectory()) {
+                    if (this._scanner.filter().prunes(path) || this._isShard(path)) {
+                        continue;
+                    }
+                    this._register(path);
+
+                    Scanner scanner = new Scanner(this._manager.assets(), this._scanner.filter());
+                    scanner.scan(path.toFile());
+                    found.addAll(scanner.assets());
+
+                    continue;
+                }
+
+                Index.Asset asset = this._scanner.asset(path, attributes);
+                if (asset != null) {
+                    found.add(asset);
+                }
+            }
+
+            List<String> removed = index.remove(deleted)
+                                        .stream()
+                                        .map(Index.Asset::hash)
+                                        .collect(Collectors.toList());
+
+            List<Index.Asset> pending = new ArrayList<>();
+            int added = 0;
+            int updated = 0;
+            for (Index.Asset asset : found) {
+                Index.Asset indexed = index.find(asset.path());
+                if (indexed == null) {
+                    if (!index.add(asset)) {
+                        // Encrypted file.
+                        continue;
+                    }
+
+                    indexed = asset;
+                    added++;
+                } else if (indexed.isEncrypted()) {
+                    // The decrypted file was written again, the encrypted file
+                    // is only reused if it's unchanged (see `Obscurer.encrypt`).
+                    indexed = indexed.copy().isEncrypted(false);
+                    index.update(indexed);
+                    updated++;
+                }
+
+                pending.add(indexed);
+            }
+
+            if (overflow) {
+                pending = index.decrypted();
+            }
+
+            if (added == 0 && updated == 0 && removed.isEmpty() && (!this._encrypt || pending.isEmpty())) {
+                return;
+            }
+
+            index.collect(removed);
+            Watcher.console.info(added + " assets added, " + updated + " updated, " + removed.size() + " removed.");
+
+            if (this._encrypt && !pending.isEmpty()) {
+                this._manager.encrypt(pending);
+            }
+
+            this._manager.saveIndex();
+        }
+    }
+
+    /**
+     * Collects the paths of the decrypted assets of a deleted file or directory.
+     *
+     * Encrypted assets are kept, as their decrypted file is deleted
+     * when they're encrypted.
+     *
+     * @param index   Assets index.
+     * @param path    Deleted path.
+     * @param deleted Paths of the deleted assets.
+     */
+    private void _remove(Index index, String path, List<String> deleted) {
+        String key = Index.key(path);
+
+        Index.Asset asset = index.find(key);
+        if (asset != null && !asset.isEncrypted()) {
+            deleted.add(asset.path());
+        }
+
+        index.prefixed(key + File.separator).forEachRemaining(a -> {
+            if (!a.isEncrypted()) {
+                deleted.add(a.path());
+            }
+        });
+    }
+
+    /**
+     * Checks whether a directory belongs to the layout of the encrypted files.
+     *
+     * The layout directories are the first `Settings.shardDepth` levels
+     * of the assets folder named after two hexadecimal characters.
+     *
+     * @param dir Directory to check.
+     *
+     * @return Whether `dir` is a directory of the encrypted files.
+     */
+    private boolean _isShard(Path dir) {
+        Path relative;
+        try {
+            relative = this._manager.assets().toPath().toAbsolutePath().normalize()
+                                    .relativize(dir.toAbsolutePath().normalize());
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+
+        if (relative.toString().isEmpty() || relative.getNameCount() > Settings.shardDepth) {
+            return false;
+        }
+
+        for (Path name : relative) {
+            if (!name.toString().matches("[0-9A-F]{2}")) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Watches a directory and its sub directories.
+     *
+     * @param root Directory to watch.
+     *
+     * @throws IOException If the directory couldn't be watched.
+     */
+    private void _register(Path root) throws IOException {
+        Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attributes) throws IOException {
+                if (Watcher.this._scanner.filter().prunes(dir) || Watcher.this._isShard(dir)) {
+                    // Pruned or encrypted files directory.
+                    return FileVisitResult.SKIP_SUBTREE;
+                }
+
+                WatchKey key = dir.register(Watcher.this._service, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE);
+                Watcher.this._keys.put(key, dir);
+
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+}
@@ -2,13 +2,26 @@ package com.manulaiko.assetsobscurer.main;
 
 import com.manulaiko.tabitha.log.Console;
 import com.manulaiko.tabitha.log.ConsoleManager;
+import lombok.AccessLevel;
 import lombok.Data;
+import lombok.Getter;
+import lombok.Setter;
 
 import javax.crypto.*;
 import javax.crypto.spec.IvParameterSpec;
 import javax.crypto.spec.SecretKeySpec;
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
 import java.security.*;
+import java.security.interfaces.RSAKey;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Encryption manager.
@@ -29,15 +42,73 @@ public class EncryptionManager {
      */
     public static final Console console = ConsoleManager.forClass(EncryptionManager.class);
 
+    /**
+     * Size of the buffers used for streaming.
+     */
+    public static final int BUFFER_SIZE = 0x10000;
+
+    /**
+     * Maximum amount of unwrapped session keys to keep in memory.
+     */
+    public static final int SESSION_KEYS_CACHE_SIZE = 64;
+
+    /**
+     * Maximum length of the RSA encrypted session keys
+     * if the modulus of the private key isn't known.
+     */
+    public static final int MAX_MODULUS_LENGTH = 2048;
+
+    /**
+     * Transformation used to wrap the session keys.
+     */
+    public static final String ASYMMETRIC_TRANSFORMATION = "RSA/ECB/PKCS1Padding";
+
+    /**
+     * Transformation used to encrypt the assets.
+     */
+    public static final String SYMMETRIC_TRANSFORMATION = "AES/CTR/NoPadding";
+
+    /**
+     * Transformation used by legacy (version 1) assets.
+     */
+    public static final String LEGACY_TRANSFORMATION = "AES/CBC/PKCS5Padding";
+
+    /**
+     * Transformation used to decrypt arbitrary blocks of legacy assets.
+     */
+    public static final String LEGACY_BLOCK_TRANSFORMATION = "AES/CBC/NoPadding";
+
+    /**
+     * Magic number of the encrypted assets ("AOBS").
+     */
+    public static final int MAGIC = 0x414F4253;
+
+    /**
+     * Current container version.
+     */
+    public static final int VERSION = 2;
+
+    /**
+     * Cipher block size.
+     */
+    public static final int BLOCK_SIZE = 16;
+
+    /**
+     * Random generator for the IVs.
+     *
+     * `SecureRandom` is thread safe, so it's shared by all threads.
+     */
+    private static final SecureRandom random = new SecureRandom();
+
     /**
      * Singleton instance.
      */
-    private static EncryptionManager _instance;
+    private static volatile EncryptionManager _instance;
 
     /**
      * Returns singleton instance.
      */
-    public static EncryptionManager instance() {
+    public static synchronized EncryptionManager instance() {
         if (EncryptionManager._instance == null) {
             EncryptionManager._instance = new EncryptionManager(
                     Settings.keyLength
@@ -63,17 +134,93 @@ public class EncryptionManager {
     /**
      * AES Key.
      */
-    private SecretKey _secretKey;
+    private volatile SecretKey _secretKey;
 
     /**
      * Public key.
      */
-    private PublicKey _publicKey;
+    private volatile PublicKey _publicKey;
 
     /**
      * Private key.
      */
-    private PrivateKey _privateKey;
+    private volatile PrivateKey _privateKey;
+
+    /**
+     * RSA encrypted session key.
+     *
+     * Memoized so `_secretKey` is wrapped only once per public key.
+     */
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private byte[] _wrappedKey;
+
+    /**
+     * Unwrapped session keys, indexed by their RSA encrypted form.
+     */
+    @Getter(AccessLevel.NONE)
+    private final Map<ByteBuffer, SecretKey> _sessionKeys = new LinkedHashMap<ByteBuffer, SecretKey>(16, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<ByteBuffer, SecretKey> eldest) {
+            return this.size() > EncryptionManager.SESSION_KEYS_CACHE_SIZE;
+        }
+    };
+
+    /**
+     * Pooled ciphers, indexed by transformation.
+     *
+     * Provider lookups are expensive, so ciphers are reused
+     * instead of calling `Cipher.getInstance` for each asset.
+     */
+    @Getter(AccessLevel.NONE)
+    private final Map<String, Queue<Cipher>> _ciphers = new ConcurrentHashMap<>();
+
+    /**
+     * Per thread I/O buffers.
+     */
+    @Getter(AccessLevel.NONE)
+    private final ThreadLocal<byte[]> _buffers = ThreadLocal.withInitial(
+            () -> new byte[EncryptionManager.BUFFER_SIZE]
+    );
+
+    /**
+     * Per thread I/O buffers for the cipher output.
+     *
+     * They're slightly bigger than `_buffers` to leave room for
+     * the blocks the cipher may be holding back and the padding.
+     */
+    @Getter(AccessLevel.NONE)
+    private final ThreadLocal<byte[]> _outputBuffers = ThreadLocal.withInitial(
+            () -> new byte[EncryptionManager.BUFFER_SIZE + 2 * EncryptionManager.BLOCK_SIZE]
+    );
+
+    /**
+     * Per thread direct buffers for channel I/O.
+     */
+    @Getter(AccessLevel.NONE)
+    private final ThreadLocal<ByteBuffer> _directBuffers = ThreadLocal.withInitial(
+            () -> ByteBuffer.allocateDirect(EncryptionManager.BUFFER_SIZE)
+    );
+
+    /**
+     * Per thread direct buffers for the cipher output of channel I/O.
+     */
+    @Getter(AccessLevel.NONE)
+    private final ThreadLocal<ByteBuffer> _directOutputBuffers = ThreadLocal.withInitial(
+            () -> ByteBuffer.allocateDirect(EncryptionManager.BUFFER_SIZE + 2 * EncryptionManager.BLOCK_SIZE)
+    );
+
+    /**
+     * Amount of RSA operations avoided thanks to the session key caches.
+     */
+    private final AtomicLong _keyCacheHits = new AtomicLong();
+
+    /**
+     * Amount of RSA operations performed.
+     */
+    private final AtomicLong _keyCacheMisses = new AtomicLong();
 
     /**
      * Initializes the encryption manager.
@@ -106,6 +253,50 @@ public class EncryptionManager {
         }
     }
 
+    /**
+     * Sets the session key.
+     *
+     * @param secretKey New session key.
+     *
+     * @return This instance.
+     */
+    public synchronized EncryptionManager secretKey(SecretKey secretKey) {
+        this._secretKey = secretKey;
+        this._wrappedKey = null;
+
+        return this;
+    }
+
+    /**
+     * Sets the public key.
+     *
+     * @param publicKey New public key.
+     *
+     * @return This instance.
+     */
+    public synchronized EncryptionManager publicKey(PublicKey publicKey) {
+        this._publicKey = publicKey;
+        this._wrappedKey = null;
+
+        return this;
+    }
+
+    /**
+     * Sets the private key.
+     *
+     * @param privateKey New private key.
+     *
+     * @return This instance.
+     */
+    public EncryptionManager privateKey(PrivateKey privateKey) {
+        synchronized (this._sessionKeys) {
+            this._privateKey = privateKey;
+            this._sessionKeys.clear();
+        }
+
+        return this;
+    }
+
     /**
      * Generates a new key
      *
@@ -114,7 +305,7 @@ public class EncryptionManager {
     public SecretKey generateKey() {
         try {
             EncryptionManager.console.info("Generating session key...");
-            KeyGenerator keyGen = KeyGenerator.getInstance("Rijndael");
+            KeyGenerator keyGen = KeyGenerator.getInstance("AES");
             keyGen.init(this.keyLength());
 
             return keyGen.generateKey();
@@ -133,100 +324,588 @@ public class EncryptionManager {
      * @return Encrypted bytes.
      */
     public byte[] encrypt(byte[] bytes) {
+        ByteArrayOutputStream output = new ByteArrayOutputStream(bytes.length + 0xFF);
+
+        if (!this.encrypt(new ByteArrayInputStream(bytes), output)) {
+            return null;
+        }
+
+        return output.toByteArray();
+    }
+
+    /**
+     * Decrypts a byte array.
+     *
+     * @param bytes Bytes to decrypt.
+     *
+     * @return Decrypted bytes.
+     */
+    public byte[] decrypt(byte[] bytes) {
+        ByteArrayOutputStream output = new ByteArrayOutputStream(bytes.length);
+
+        if (!this.decrypt(new ByteArrayInputStream(bytes), output)) {
+            return null;
+        }
+
+        return output.toByteArray();
+    }
+
+    /**
+     * Encrypts an input stream into an output stream.
+     *
+     * The streams are read/written with a fixed size buffer
+     * and aren't closed.
+     *
+     * @param input  Plain input.
+     * @param output Encrypted output.
+     *
+     * @return Whether the input was successfully encrypted or not.
+     */
+    public boolean encrypt(InputStream input, OutputStream output) {
+        Cipher cipher = null;
+
         try {
-            if (this.publicKey() == null) {
-                throw new Exception("Public key is null!");
-            }
+            DataOutputStream out = new DataOutputStream(output);
+            cipher = this._writeHeader(out);
 
-            ByteArrayOutputStream baos = new ByteArrayOutputStream();
-            DataOutputStream output = new DataOutputStream(baos);
-            Cipher cipher = Cipher.getInstance("RSA/ECB/PKCS1Padding");
-            cipher.init(Cipher.ENCRYPT_MODE, this.publicKey());
+            this._transfer(cipher, input, out);
+
+            return true;
+        } catch (Exception e) {
+            EncryptionManager.console.exception("Couldn't encrypt stream!", e);
 
-            if (this.secretKey() == null) {
-                this.secretKey(this.generateKey());
+            return false;
+        } finally {
+            this.release(cipher);
+        }
+    }
+
+    /**
+     * Returns a stream that encrypts everything written to it.
+     *
+     * The header is written right away, the rest of the output is written
+     * as the stream is written. Closing the stream closes `output`.
+     *
+     * @param output Encrypted output.
+     *
+     * @return Plain output.
+     *
+     * @throws Exception If the header couldn't be written.
+     */
+    public OutputStream encrypt(OutputStream output) throws Exception {
+        DataOutputStream out = new DataOutputStream(output);
+        Cipher cipher = this._writeHeader(out);
+
+        return new CipherOutputStream(out, cipher) {
+            @Override
+            public void close() throws IOException {
+                try {
+                    super.close();
+                } finally {
+                    EncryptionManager.this.release(cipher);
+                }
             }
+        };
+    }
 
-            byte[] encriptedKey = cipher.doFinal(this.secretKey().getEncoded());
-            output.writeInt(encriptedKey.length);
-            output.write(encriptedKey);
+    /**
+     * Decrypts an input stream into an output stream.
+     *
+     * The streams are read/written with a fixed size buffer
+     * and aren't closed.
+     *
+     * @param input  Encrypted input.
+     * @param output Plain output.
+     *
+     * @return Whether the input was successfully decrypted or not.
+     */
+    public boolean decrypt(InputStream input, OutputStream output) {
+        Cipher cipher = null;
 
-            SecureRandom r = new SecureRandom();
-            byte[] iv = new byte[16];
-            r.nextBytes(iv);
+        try {
+            cipher = this._readHeader(new DataInputStream(input));
 
-            output.write(iv);
+            this._transfer(cipher, input, output);
 
-            IvParameterSpec spec = new IvParameterSpec(iv);
-            Cipher symmetricCipher = Cipher.getInstance("Rijndael/CBC/PKCS5Padding");
-            symmetricCipher.init(Cipher.ENCRYPT_MODE, this.secretKey(), spec);
+            return true;
+        } catch (Exception e) {
+            EncryptionManager.console.exception("Couldn't decrypt stream!", e);
 
-            CipherOutputStream cos = new CipherOutputStream(output, symmetricCipher);
-            cos.write(bytes);
-            cos.close();
+            return false;
+        } finally {
+            this.release(cipher);
+        }
+    }
 
-            return baos.toByteArray();
+    /**
+     * Encrypts a file channel into another file channel.
+     *
+     * Both channels are read/written from their current position
+     * with a fixed size buffer and aren't closed.
+     *
+     * @param input  Plain input.
+     * @param output Encrypted output.
+     *
+     * @return Whether the input was successfully encrypted or not.
+     */
+    public boolean encrypt(FileChannel input, FileChannel output) {
+        Cipher cipher = null;
+
+        try {
+            ByteArrayOutputStream header = new ByteArrayOutputStream();
+            cipher = this._writeHeader(new DataOutputStream(header));
+
+            this._write(output, ByteBuffer.wrap(header.toByteArray()));
+            this._transfer(cipher, input, output);
+
+            return true;
         } catch (Exception e) {
-            EncryptionManager.console.exception("Couldn't encrypt bytes!", e);
+            EncryptionManager.console.exception("Couldn't encrypt channel!", e);
 
-            return null;
+            return false;
+        } finally {
+            this.release(cipher);
         }
     }
 
     /**
-     * Decrypts a byte array.
+     * Decrypts a file channel into another file channel.
      *
-     * @param bytes Bytes to decrypt.
+     * Both channels are read/written from their current position
+     * with a fixed size buffer and aren't closed.
      *
-     * @return Decrypted bytes.
+     * @param input  Encrypted input.
+     * @param output Plain output.
+     *
+     * @return Whether the input was successfully decrypted or not.
      */
-    public byte[] decrypt(byte[] bytes) {
+    public boolean decrypt(FileChannel input, FileChannel output) {
+        Cipher cipher = null;
+
         try {
-            DataInputStream input = new DataInputStream(new ByteArrayInputStream(bytes));
+            // The header is read unbuffered so the channel
+            // position is left right after it.
+            cipher = this._readHeader(new DataInputStream(Channels.newInputStream(input)));
+
+            this._transfer(cipher, input, output);
+
+            return true;
+        } catch (Exception e) {
+            EncryptionManager.console.exception("Couldn't decrypt channel!", e);
+
+            return false;
+        } finally {
+            this.release(cipher);
+        }
+    }
+
+    /**
+     * Writes the encryption header and returns the initialized cipher.
+     *
+     * @param output Output to write the header to.
+     *
+     * @return Cipher ready to encrypt the payload.
+     */
+    private Cipher _writeHeader(DataOutputStream output) throws Exception {
+        return this.encryptCipher(this.writeHeader(output), 0);
+    }
+
+    /**
+     * Writes a new encryption header.
+     *
+     * The header consists of the magic number and the container version,
+     * the RSA encrypted session key (prefixed by its length) and the
+     * initial counter.
+     *
+     * @param output Output to write the header to.
+     *
+     * @return Written header.
+     *
+     * @throws Exception If the session key couldn't be encrypted.
+     */
+    public Header writeHeader(DataOutputStream output) throws Exception {
+        SecretKey key;
+        byte[] encriptedKey;
+        synchronized (this) {
+            encriptedKey = this._wrapKey();
+            key = this.secretKey();
+        }
+
+        output.writeInt(EncryptionManager.MAGIC);
+        output.writeInt(EncryptionManager.VERSION);
+        output.writeInt(encriptedKey.length);
+        output.write(encriptedKey);
+
+        byte[] iv = new byte[EncryptionManager.BLOCK_SIZE];
+        EncryptionManager.random.nextBytes(iv);
+
+        output.write(iv);
+
+        return new Header(EncryptionManager.VERSION, key, iv, 12 + encriptedKey.length + iv.length);
+    }
+
+    /**
+     * Returns a cipher that encrypts the payload starting at the given block.
+     *
+     * @param header Asset header.
+     * @param block  Index of the first block to encrypt.
+     *
+     * @return Cipher ready to encrypt the payload from `block`.
+     *
+     * @throws Exception If the cipher couldn't be initialized.
+     */
+    public Cipher encryptCipher(Header header, long block) throws Exception {
+        return this._borrow(
+                EncryptionManager.SYMMETRIC_TRANSFORMATION,
+                Cipher.ENCRYPT_MODE,
+                header.key(),
+                this._counter(header.iv(), block)
+        );
+    }
 
-            SecretKey key = this._readKey(input);
-            IvParameterSpec iv = this._readIv(input);
+    /**
+     * Reads the encryption header and returns the initialized cipher.
+     *
+     * @param input Input with the header.
+     *
+     * @return Cipher ready to decrypt the payload.
+     */
+    private Cipher _readHeader(DataInputStream input) throws Exception {
+        Header header = this.readHeader(input);
 
-            Cipher cipher = Cipher.getInstance("Rijndael/CBC/PKCS5Padding");
-            cipher.init(Cipher.DECRYPT_MODE, key, iv);
-            CipherInputStream cis = new CipherInputStream(input, cipher);
+        if (header.isLegacy()) {
+            return this._borrow(EncryptionManager.LEGACY_TRANSFORMATION, Cipher.DECRYPT_MODE, header.key(), header.iv());
+        }
 
-            ByteArrayOutputStream out = new ByteArrayOutputStream();
+        return this.cipher(header, 0, null);
+    }
 
-            byte[] buffer = new byte[0xFFFF];
-            for (int len = cis.read(buffer); len != -1; len = cis.read(buffer)) {
-                out.write(buffer, 0, len);
+    /**
+     * Reads the header of an encrypted asset.
+     *
+     * Both legacy and current headers are supported.
+     *
+     * @param input Input with the header.
+     *
+     * @return Read header.
+     *
+     * @throws Exception If the header couldn't be read or the session key couldn't be decrypted.
+     */
+    public Header readHeader(DataInputStream input) throws Exception {
+        int version = 1;
+        int keyLength = input.readInt();
+        long length = 4;
+
+        if (keyLength == EncryptionManager.MAGIC) {
+            version = input.readInt();
+            keyLength = input.readInt();
+            length += 8;
+
+            if (version > EncryptionManager.VERSION) {
+                throw new Exception("Unsupported container version " + version + "!");
             }
+        }
+
+        SecretKey key = this._readKey(input, keyLength);
+        IvParameterSpec iv = this._readIv(input);
+        length += keyLength + EncryptionManager.BLOCK_SIZE;
+
+        return new Header(version, key, iv.getIV(), length);
+    }
+
+    /**
+     * Returns a cipher that decrypts the payload starting at the given block.
+     *
+     * Current assets only need the header to calculate the counter of
+     * the block, legacy assets need the ciphertext of the previous block
+     * (or null for the first one) and the returned cipher doesn't
+     * remove the padding.
+     *
+     * @param header   Asset header.
+     * @param block    Index of the first block to decrypt.
+     * @param previous Ciphertext of the previous block (legacy assets only).
+     *
+     * @return Cipher ready to decrypt the payload from `block`.
+     *
+     * @throws Exception If the cipher couldn't be initialized.
+     */
+    public Cipher cipher(Header header, long block, byte[] previous) throws Exception {
+        if (header.isLegacy()) {
+            byte[] iv = (block == 0 || previous == null) ? header.iv() : previous;
+
+            return this._borrow(EncryptionManager.LEGACY_BLOCK_TRANSFORMATION, Cipher.DECRYPT_MODE, header.key(), iv);
+        }
+
+        return this._borrow(
+                EncryptionManager.SYMMETRIC_TRANSFORMATION,
+                Cipher.DECRYPT_MODE,
+                header.key(),
+                this._counter(header.iv(), block)
+        );
+    }
 
-            return out.toByteArray();
+    /**
+     * Returns the counter of a block.
+     *
+     * @param iv    Initial counter.
+     * @param block Block index.
+     *
+     * @return Counter for `block`.
+     */
+    private byte[] _counter(byte[] iv, long block) {
+        byte[] counter = iv.clone();
+
+        long carry = block;
+        for (int i = counter.length - 1; i >= 0 && carry != 0; i--) {
+            long sum = (counter[i] & 0xFF) + (carry & 0xFF);
+            counter[i] = (byte) sum;
+            carry = (carry >>> 8) + (sum >>> 8);
+        }
+
+        return counter;
+    }
+
+    /**
+     * Runs the remaining bytes of a stream through a cipher.
+     *
+     * @param cipher Initialized cipher.
+     * @param input  Input stream.
+     * @param output Output stream.
+     */
+    private void _transfer(Cipher cipher, InputStream input, OutputStream output) throws Exception {
+        byte[] in = this._buffers.get();
+        byte[] out = this._outputBuffers.get();
+
+        for (int len = input.read(in); len != -1; len = input.read(in)) {
+            output.write(out, 0, cipher.update(in, 0, len, out));
+        }
+
+        output.write(out, 0, cipher.doFinal(out, 0));
+        output.flush();
+    }
+
+    /**
+     * Runs the remaining bytes of a channel through a cipher.
+     *
+     * @param cipher Initialized cipher.
+     * @param input  Input channel.
+     * @param output Output channel.
+     */
+    private void _transfer(Cipher cipher, FileChannel input, FileChannel output) throws Exception {
+        ByteBuffer in = this._directBuffers.get();
+        ByteBuffer out = this._directOutputBuffers.get();
+        in.clear();
+        out.clear();
+
+        while (input.read(in) != -1) {
+            in.flip();
+            cipher.update(in, out);
+            in.clear();
+
+            out.flip();
+            this._write(output, out);
+            out.clear();
+        }
+
+        in.flip();
+        cipher.doFinal(in, out);
+        out.flip();
+        this._write(output, out);
+    }
+
+    /**
+     * Borrows a cipher from the pool.
+     *
+     * The cipher must be initialized before using it and it can be
+     * given back with `release` once it's no longer used.
+     *
+     * @param transformation Cipher transformation.
+     *
+     * @return Uninitialized cipher.
+     */
+    private Cipher _borrow(String transformation) throws Exception {
+        Queue<Cipher> pool = this._ciphers.get(transformation);
+        Cipher cipher = (pool == null) ? null : pool.poll();
+
+        if (cipher == null) {
+            cipher = Cipher.getInstance(transformation);
+        }
+
+        return cipher;
+    }
+
+    /**
+     * Borrows a cipher from the pool and initializes it.
+     *
+     * The cipher is given back to the pool if it can't be initialized.
+     *
+     * @param transformation Cipher transformation.
+     * @param mode           Cipher mode.
+     * @param key            Session key.
+     * @param iv             IV (or counter).
+     *
+     * @return Initialized cipher.
+     */
+    private Cipher _borrow(String transformation, int mode, Key key, byte[] iv) throws Exception {
+        Cipher cipher = this._borrow(transformation);
+        try {
+            cipher.init(mode, key, new IvParameterSpec(iv));
         } catch (Exception e) {
-            EncryptionManager.console.exception("Couldn't decrypt bytes!", e);
+            this.release(cipher);
 
-            return null;
+            throw e;
+        }
+
+        return cipher;
+    }
+
+    /**
+     * Gives back a cipher to the pool.
+     *
+     * Null ciphers are ignored, so it can be called
+     * even if the cipher was never borrowed.
+     *
+     * @param cipher Cipher to release.
+     */
+    public void release(Cipher cipher) {
+        if (cipher == null) {
+            return;
+        }
+
+        this._ciphers.computeIfAbsent(cipher.getAlgorithm(), t -> new ConcurrentLinkedQueue<>())
+                     .offer(cipher);
+    }
+
+    /**
+     * Returns the amount of pooled ciphers.
+     *
+     * @param transformation Cipher transformation.
+     *
+     * @return Amount of ciphers of `transformation` waiting in the pool.
+     */
+    int pooled(String transformation) {
+        Queue<Cipher> pool = this._ciphers.get(transformation);
+
+        return (pool == null) ? 0 : pool.size();
+    }
+
+    /**
+     * Writes the whole buffer to a channel.
+     *
+     * @param output Output channel.
+     * @param buffer Buffer to write.
+     */
+    private void _write(FileChannel output, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            output.write(buffer);
         }
     }
 
+    /**
+     * Returns the RSA encrypted session key.
+     *
+     * The session key is wrapped once and reused until
+     * either the session key or the public key changes.
+     *
+     * @return Encrypted session key.
+     */
+    private synchronized byte[] _wrapKey() throws Exception {
+        if (this.publicKey() == null) {
+            throw new Exception("Public key is null!");
+        }
+
+        if (this.secretKey() == null) {
+            this.secretKey(this.generateKey());
+        }
+
+        if (this._wrappedKey != null) {
+            this._keyCacheHits.incrementAndGet();
+
+            return this._wrappedKey;
+        }
+
+        Cipher cipher = this._borrow(EncryptionManager.ASYMMETRIC_TRANSFORMATION);
+        try {
+            cipher.init(Cipher.ENCRYPT_MODE, this.publicKey());
+
+            this._wrappedKey = cipher.doFinal(this.secretKey().getEncoded());
+        } finally {
+            this.release(cipher);
+        }
+        this._keyCacheMisses.incrementAndGet();
+
+        return this._wrappedKey;
+    }
+
     /**
      * Returns the session key from a input stream.
      *
-     * @param input Input stream with session key.
+     * Unwrapped keys are cached, so assets sharing the same
+     * session key only cost one RSA operation.
+     *
+     * @param input  Input stream with session key.
+     * @param length Length of the encrypted session key.
      *
      * @return Session key.
      */
-    private SecretKey _readKey(DataInputStream input) throws Exception {
-        if (this.privateKey() == null) {
+    private SecretKey _readKey(DataInputStream input, int length) throws Exception {
+        PrivateKey privateKey = this.privateKey();
+        if (privateKey == null) {
             throw new Exception("Private key is null!");
         }
 
-        Cipher rsaCipher = Cipher.getInstance("RSA/ECB/PKCS1Padding");
-        rsaCipher.init(Cipher.DECRYPT_MODE, this.privateKey());
+        // The length comes from the asset, an RSA encrypted key can't be longer than the modulus.
+        if (length <= 0 || length > this._modulusLength(privateKey)) {
+            throw new Exception("Invalid session key length " + length + "!");
+        }
 
-        byte[] sessionKey = new byte[input.readInt()];
+        byte[] sessionKey = new byte[length];
         input.readFully(sessionKey);
 
-        byte[] key = rsaCipher.doFinal(sessionKey);
+        ByteBuffer wrapped = ByteBuffer.wrap(sessionKey);
+        synchronized (this._sessionKeys) {
+            SecretKey key = this._sessionKeys.get(wrapped);
+            if (key != null) {
+                this._keyCacheHits.incrementAndGet();
+
+                return key;
+            }
+        }
+
+        SecretKey key;
+        Cipher rsaCipher = this._borrow(EncryptionManager.ASYMMETRIC_TRANSFORMATION);
+        try {
+            rsaCipher.init(Cipher.DECRYPT_MODE, privateKey);
+
+            key = new SecretKeySpec(rsaCipher.doFinal(sessionKey), "AES");
+        } finally {
+            this.release(rsaCipher);
+        }
+        this._keyCacheMisses.incrementAndGet();
+
+        synchronized (this._sessionKeys) {
+            // Don't cache keys unwrapped with a private key that's no longer in use.
+            if (privateKey == this.privateKey()) {
+                this._sessionKeys.put(wrapped, key);
+            }
+        }
+
+        return key;
+    }
+
+    /**
+     * Returns the length of the RSA modulus of a key.
+     *
+     * @param key RSA key.
+     *
+     * @return Length in bytes of the modulus of `key`.
+     */
+    private int _modulusLength(Key key) {
+        if (key instanceof RSAKey) {
+            return (((RSAKey) key).getModulus().bitLength() + 7) / 8;
+        }
 
-        return new SecretKeySpec(key, "Rijndael");
+        return EncryptionManager.MAX_MODULUS_LENGTH;
     }
 
     /**
@@ -237,8 +916,8 @@ public class EncryptionManager {
      * @return IV from input.
      */
     private IvParameterSpec _readIv(DataInputStream input) throws Exception {
-        byte[] iv = new byte[16];
-        input.read(iv);
+        byte[] iv = new byte[EncryptionManager.BLOCK_SIZE];
+        input.readFully(iv);
 
         return new IvParameterSpec(iv);
     }
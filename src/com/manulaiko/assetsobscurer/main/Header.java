@@ -0,0 +1,58 @@
+package com.manulaiko.assetsobscurer.main;
+
+import lombok.Data;
+
+import javax.crypto.SecretKey;
+
+/**
+ * Header class.
+ * =============
+ *
+ * Represents the header of an encrypted asset.
+ *
+ * Legacy assets (version 1) are encrypted with AES-CBC and are laid out as:
+ *
+ *     [int keyLength][RSA encrypted session key][IV][AES-CBC payload]
+ *
+ * Current assets (version 2) are encrypted with AES-CTR so any block of the
+ * payload can be decrypted without decrypting the ones before it:
+ *
+ *     [int magic][int version][int keyLength][RSA encrypted session key][initial counter][AES-CTR payload]
+ *
+ * The magic number can't be mistaken with the key length of a legacy asset.
+ *
+ * @author Manulaiko <manulaiko@gmail.com>
+ */
+@Data
+public class Header {
+    /**
+     * Container version.
+     */
+    private final int _version;
+
+    /**
+     * Session key.
+     */
+    private final SecretKey _key;
+
+    /**
+     * IV (or initial counter).
+     */
+    private final byte[] _iv;
+
+    /**
+     * Header length in bytes.
+     *
+     * The payload starts right after it.
+     */
+    private final long _length;
+
+    /**
+     * Returns whether the asset was encrypted with the legacy (CBC) format.
+     *
+     * @return Whether this is a legacy header or not.
+     */
+    public boolean isLegacy() {
+        return this.version() < EncryptionManager.VERSION;
+    }
+}
@@ -1,6 +1,7 @@
 package com.manulaiko.assetsobscurer.main;
 
 import com.manulaiko.assetsobscurer.assets.AssetsManager;
+import com.manulaiko.assetsobscurer.assets.Watcher;
 import com.manulaiko.assetsobscurer.main.arguments.*;
 import com.manulaiko.assetsobscurer.main.commands.*;
 import com.manulaiko.tabitha.Application;
@@ -77,6 +78,28 @@ public class Launcher extends Application {
 
         a.saveIndex();
         new DumpIndex().handle(new String[]{});
+
+        if (Settings.watch) {
+            this._watch(a);
+        }
+    }
+
+    /**
+     * Watches the assets folder until the application is stopped.
+     *
+     * @param assets Assets manager.
+     */
+    private void _watch(AssetsManager assets) {
+        Watcher watcher = assets.watch(Settings.encryptMode);
+        if (watcher == null) {
+            return;
+        }
+
+        try {
+            watcher.join();
+        } catch (InterruptedException e) {
+            assets.unwatch();
+        }
     }
 
     /**
@@ -90,6 +113,10 @@ public class Launcher extends Application {
         cp.add(new Decrypt());
         cp.add(new DumpIndex());
         cp.add(new SaveIndex());
+        cp.add(new Pack());
+        cp.add(new Unpack());
+        cp.add(new Reshard());
+        cp.add(new Watch());
         cp.add(new GenerateKeyPair());
         cp.add(new LoadKeyPair());
 
@@ -107,7 +134,18 @@ public class Launcher extends Application {
                 new Assets(),
                 new KeyLength(),
                 new CommandMode(),
-                new EncryptMode()
+                new EncryptMode(),
+                new Workers(),
+                new PackMode(),
+                new ShardDepth(),
+                new KeepEncryptedMode(),
+                new WatchMode(),
+                new Include(),
+                new Exclude(),
+                new FilterFile(),
+                new BinaryIndexMode(),
+                new JournalMode(),
+                new SplitIndexMode()
         );
     }
 }
@@ -3,6 +3,8 @@ package com.manulaiko.assetsobscurer.main;
 import java.io.File;
 import java.security.PrivateKey;
 import java.security.PublicKey;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * Settings class.
@@ -42,4 +44,108 @@ public class Settings {
      * Automatic encryption mode.
      */
     public static boolean encryptMode = true;
+
+    /**
+     * Assets bigger than this (in bytes) are encrypted/decrypted
+     * in parallel chunks.
+     */
+    public static long parallelThreshold = 64L * 1024 * 1024;
+
+    /**
+     * Size (in bytes) of the chunks of the assets encrypted/decrypted in parallel.
+     *
+     * Must be a multiple of the cipher block size (16 bytes).
+     */
+    public static int chunkSize = 4 * 1024 * 1024;
+
+    /**
+     * Amount of assets encrypted/decrypted at the same time.
+     */
+    public static int workers = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * Maximum amount of memory (in bytes) used by the buffers
+     * of the assets being encrypted/decrypted at the same time.
+     */
+    public static long memoryBudget = 256L * 1024 * 1024;
+
+    /**
+     * Whether to keep the encrypted files of the decrypted assets.
+     *
+     * Decrypted assets that haven't changed since then are
+     * re-encrypted by just deleting the decrypted file, at the
+     * cost of storing both files while they're decrypted.
+     */
+    public static boolean keepEncrypted = false;
+
+    /**
+     * Milliseconds after checking the assets in the index before
+     * they're checked again (0 to always check them).
+     */
+    public static long checkInterval = 5000;
+
+    /**
+     * Whether to store the encrypted files in a single pack
+     * after encrypting the assets.
+     */
+    public static boolean pack = false;
+
+    /**
+     * Directory levels of the layout of the encrypted files.
+     *
+     * Each level is named after the next two characters of the hash
+     * (`AB/CD/ABCD...`), so no directory ends up with too many entries.
+     */
+    public static int shardDepth = 0;
+
+    /**
+     * Whether the shard depth was set in the command line.
+     *
+     * Otherwise the layout saved in the index is used.
+     */
+    public static boolean shardDepthSet = false;
+
+    /**
+     * Whether to keep watching the assets folder after the automatic mode.
+     */
+    public static boolean watch = false;
+
+    /**
+     * Milliseconds without changes in the assets folder before
+     * the watched changes are applied to the index.
+     */
+    public static long watchDelay = 500;
+
+    /**
+     * Whether to save the index in the binary format instead of JSON.
+     */
+    public static boolean binaryIndex = false;
+
+    /**
+     * Whether to log the index changes to a journal instead
+     * of saving the whole index every time.
+     */
+    public static boolean journal = false;
+
+    /**
+     * Journal length (in bytes) after which the index is saved
+     * in background and the journal is emptied.
+     */
+    public static long journalThreshold = 4L * 1024 * 1024;
+
+    /**
+     * Whether to save the assets of each top level directory
+     * in their own index file.
+     */
+    public static boolean splitIndex = false;
+
+    /**
+     * Glob patterns of the files to index (all files if empty).
+     */
+    public static List<String> include = new ArrayList<>();
+
+    /**
+     * Glob patterns of the files and directories not to index.
+     */
+    public static List<String> exclude = new ArrayList<>();
 }
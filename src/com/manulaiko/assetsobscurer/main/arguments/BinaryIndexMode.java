@@ -0,0 +1,62 @@
+package com.manulaiko.assetsobscurer.main.arguments;
+
+import com.manulaiko.assetsobscurer.main.Settings;
+import com.manulaiko.tabitha.arguments.Argument;
+import com.manulaiko.tabitha.log.Console;
+import com.manulaiko.tabitha.log.ConsoleManager;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+
+/**
+ * Binary index mode argument.
+ * ===========================
+ *
+ * Enables/disable saving the index in the binary format.
+ *
+ * By default it's `false`.
+ *
+ * @author Manulaiko <manulaiko@gmail.com>
+ */
+@Data
+@EqualsAndHashCode(callSuper = false)
+public class BinaryIndexMode extends Argument {
+    /**
+     * Console logger.
+     */
+    public static Console console = ConsoleManager.forClass(BinaryIndexMode.class);
+
+    /**
+     * Argument name.
+     */
+    private String _argument = "b";
+
+    /**
+     * Argument usage.
+     */
+    private String _usage = "-b=true|false";
+
+    /**
+     * Argument description.
+     */
+    private String _description = "Enables/disable saving the index in the binary format.";
+
+    /**
+     * Default value.
+     */
+    private String _defaultValue = "false";
+
+    /**
+     * Handles the argument.
+     */
+    @Override
+    public void handle() {
+        if (super.value().isEmpty()) {
+            super.print(BinaryIndexMode.console);
+
+            return;
+        }
+
+        Settings.binaryIndex = Boolean.parseBoolean(super.value());
+        BinaryIndexMode.console.info("Binary index: " + Settings.binaryIndex);
+    }
+}
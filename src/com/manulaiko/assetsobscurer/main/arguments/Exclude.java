@@ -0,0 +1,63 @@
+package com.manulaiko.assetsobscurer.main.arguments;
+
+import com.manulaiko.assetsobscurer.assets.Filter;
+import com.manulaiko.assetsobscurer.main.Settings;
+import com.manulaiko.tabitha.arguments.Argument;
+import com.manulaiko.tabitha.log.Console;
+import com.manulaiko.tabitha.log.ConsoleManager;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+
+/**
+ * Exclude argument.
+ * =================
+ *
+ * Sets the glob patterns of the files and directories not to index, separated by commas.
+ *
+ * Excluded directories aren't scanned at all.
+ *
+ * @author Manulaiko <manulaiko@gmail.com>
+ */
+@Data
+@EqualsAndHashCode(callSuper = false)
+public class Exclude extends Argument {
+    /**
+     * Console logger.
+     */
+    public static Console console = ConsoleManager.forClass(Exclude.class);
+
+    /**
+     * Argument name.
+     */
+    private String _argument = "x";
+
+    /**
+     * Argument usage.
+     */
+    private String _usage = "-x=GLOB[,GLOB...]";
+
+    /**
+     * Argument description.
+     */
+    private String _description = "Sets the glob patterns of the files and directories not to index.";
+
+    /**
+     * Default value.
+     */
+    private String _defaultValue = "";
+
+    /**
+     * Handles the argument.
+     */
+    @Override
+    public void handle() {
+        if (super.value().isEmpty()) {
+            super.print(Exclude.console);
+
+            return;
+        }
+
+        Settings.exclude.addAll(Filter.split(super.value()));
+        Exclude.console.info("Exclude: " + Settings.exclude);
+    }
+}
@@ -0,0 +1,72 @@
+package com.manulaiko.assetsobscurer.main.arguments;
+
+import com.manulaiko.assetsobscurer.assets.Filter;
+import com.manulaiko.assetsobscurer.main.Settings;
+import com.manulaiko.tabitha.arguments.Argument;
+import com.manulaiko.tabitha.log.Console;
+import com.manulaiko.tabitha.log.ConsoleManager;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+
+import java.nio.file.Paths;
+
+/**
+ * Filter file argument.
+ * =====================
+ *
+ * Reads the include/exclude glob patterns from a file.
+ *
+ * Each line is a pattern, lines starting with `+` are include patterns
+ * and lines starting with `-` (or without prefix) are exclude patterns.
+ *
+ * @author Manulaiko <manulaiko@gmail.com>
+ */
+@Data
+@EqualsAndHashCode(callSuper = false)
+public class FilterFile extends Argument {
+    /**
+     * Console logger.
+     */
+    public static Console console = ConsoleManager.forClass(FilterFile.class);
+
+    /**
+     * Argument name.
+     */
+    private String _argument = "f";
+
+    /**
+     * Argument usage.
+     */
+    private String _usage = "-f=PATH";
+
+    /**
+     * Argument description.
+     */
+    private String _description = "Reads the include/exclude glob patterns from a file.";
+
+    /**
+     * Default value.
+     */
+    private String _defaultValue = "";
+
+    /**
+     * Handles the argument.
+     */
+    @Override
+    public void handle() {
+        if (super.value().isEmpty()) {
+            super.print(FilterFile.console);
+
+            return;
+        }
+
+        try {
+            Filter.read(Paths.get(super.value()), Settings.include, Settings.exclude);
+
+            FilterFile.console.info("Include: " + Settings.include);
+            FilterFile.console.info("Exclude: " + Settings.exclude);
+        } catch (Exception e) {
+            FilterFile.console.exception("Couldn't read " + super.value() + "!", e);
+        }
+    }
+}
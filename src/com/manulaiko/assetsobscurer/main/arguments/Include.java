@@ -0,0 +1,63 @@
+package com.manulaiko.assetsobscurer.main.arguments;
+
+import com.manulaiko.assetsobscurer.assets.Filter;
+import com.manulaiko.assetsobscurer.main.Settings;
+import com.manulaiko.tabitha.arguments.Argument;
+import com.manulaiko.tabitha.log.Console;
+import com.manulaiko.tabitha.log.ConsoleManager;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+
+/**
+ * Include argument.
+ * =================
+ *
+ * Sets the glob patterns of the files to index, separated by commas.
+ *
+ * By default all files are indexed.
+ *
+ * @author Manulaiko <manulaiko@gmail.com>
+ */
+@Data
+@EqualsAndHashCode(callSuper = false)
+public class Include extends Argument {
+    /**
+     * Console logger.
+     */
+    public static Console console = ConsoleManager.forClass(Include.class);
+
+    /**
+     * Argument name.
+     */
+    private String _argument = "i";
+
+    /**
+     * Argument usage.
+     */
+    private String _usage = "-i=GLOB[,GLOB...]";
+
+    /**
+     * Argument description.
+     */
+    private String _description = "Sets the glob patterns of the files to index.";
+
+    /**
+     * Default value.
+     */
+    private String _defaultValue = "";
+
+    /**
+     * Handles the argument.
+     */
+    @Override
+    public void handle() {
+        if (super.value().isEmpty()) {
+            super.print(Include.console);
+
+            return;
+        }
+
+        Settings.include.addAll(Filter.split(super.value()));
+        Include.console.info("Include: " + Settings.include);
+    }
+}
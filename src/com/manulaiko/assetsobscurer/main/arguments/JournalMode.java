@@ -0,0 +1,62 @@
+package com.manulaiko.assetsobscurer.main.arguments;
+
+import com.manulaiko.assetsobscurer.main.Settings;
+import com.manulaiko.tabitha.arguments.Argument;
+import com.manulaiko.tabitha.log.Console;
+import com.manulaiko.tabitha.log.ConsoleManager;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+
+/**
+ * Journal mode argument.
+ * ======================
+ *
+ * Enables/disable logging the index changes to a journal instead of saving the whole index.
+ *
+ * By default it's `false`.
+ *
+ * @author Manulaiko <manulaiko@gmail.com>
+ */
+@Data
+@EqualsAndHashCode(callSuper = false)
+public class JournalMode extends Argument {
+    /**
+     * Console logger.
+     */
+    public static Console console = ConsoleManager.forClass(JournalMode.class);
+
+    /**
+     * Argument name.
+     */
+    private String _argument = "j";
+
+    /**
+     * Argument usage.
+     */
+    private String _usage = "-j=true|false";
+
+    /**
+     * Argument description.
+     */
+    private String _description = "Enables/disable logging the index changes to a journal instead of saving the whole index.";
+
+    /**
+     * Default value.
+     */
+    private String _defaultValue = "false";
+
+    /**
+     * Handles the argument.
+     */
+    @Override
+    public void handle() {
+        if (super.value().isEmpty()) {
+            super.print(JournalMode.console);
+
+            return;
+        }
+
+        Settings.journal = Boolean.parseBoolean(super.value());
+        JournalMode.console.info("Journal: " + Settings.journal);
+    }
+}
@@ -0,0 +1,63 @@
+package com.manulaiko.assetsobscurer.main.arguments;
+
+import com.manulaiko.assetsobscurer.main.Settings;
+import com.manulaiko.tabitha.arguments.Argument;
+import com.manulaiko.tabitha.log.Console;
+import com.manulaiko.tabitha.log.ConsoleManager;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+
+/**
+ * Keep encrypted mode argument.
+ * =============================
+ *
+ * Enables/disable keeping the encrypted files of the decrypted assets,
+ * so the unchanged ones are encrypted again by reusing them.
+ *
+ * By default it's `false`.
+ *
+ * @author Manulaiko <manulaiko@gmail.com>
+ */
+@Data
+@EqualsAndHashCode(callSuper = false)
+public class KeepEncryptedMode extends Argument {
+    /**
+     * Console logger.
+     */
+    public static Console console = ConsoleManager.forClass(KeepEncryptedMode.class);
+
+    /**
+     * Argument name.
+     */
+    private String _argument = "k";
+
+    /**
+     * Argument usage.
+     */
+    private String _usage = "-k=true|false";
+
+    /**
+     * Argument description.
+     */
+    private String _description = "Enables/disable keeping the encrypted files of the decrypted assets.";
+
+    /**
+     * Default value.
+     */
+    private String _defaultValue = "false";
+
+    /**
+     * Handles the argument.
+     */
+    @Override
+    public void handle() {
+        if (super.value().isEmpty()) {
+            super.print(KeepEncryptedMode.console);
+
+            return;
+        }
+
+        Settings.keepEncrypted = Boolean.parseBoolean(super.value());
+        KeepEncryptedMode.console.info("Keep encrypted files: " + Settings.keepEncrypted);
+    }
+}
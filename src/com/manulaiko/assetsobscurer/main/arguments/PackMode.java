@@ -0,0 +1,62 @@
+package com.manulaiko.assetsobscurer.main.arguments;
+
+import com.manulaiko.assetsobscurer.main.Settings;
+import com.manulaiko.tabitha.arguments.Argument;
+import com.manulaiko.tabitha.log.Console;
+import com.manulaiko.tabitha.log.ConsoleManager;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+
+/**
+ * Pack mode argument.
+ * ===================
+ *
+ * Enables/disable packing the encrypted files after encrypting the assets.
+ *
+ * By default it's `false`.
+ *
+ * @author Manulaiko <manulaiko@gmail.com>
+ */
+@Data
+@EqualsAndHashCode(callSuper = false)
+public class PackMode extends Argument {
+    /**
+     * Console logger.
+     */
+    public static Console console = ConsoleManager.forClass(PackMode.class);
+
+    /**
+     * Argument name.
+     */
+    private String _argument = "p";
+
+    /**
+     * Argument usage.
+     */
+    private String _usage = "-p=true|false";
+
+    /**
+     * Argument description.
+     */
+    private String _description = "Enables/disable packing the encrypted files after encrypting the assets.";
+
+    /**
+     * Default value.
+     */
+    private String _defaultValue = "false";
+
+    /**
+     * Handles the argument.
+     */
+    @Override
+    public void handle() {
+        if (super.value().isEmpty()) {
+            super.print(PackMode.console);
+
+            return;
+        }
+
+        Settings.pack = Boolean.parseBoolean(super.value());
+        PackMode.console.info("Pack mode: " + Settings.pack);
+    }
+}
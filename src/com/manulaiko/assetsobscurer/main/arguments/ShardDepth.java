@@ -0,0 +1,78 @@
+package com.manulaiko.assetsobscurer.main.arguments;
+
+import com.manulaiko.assetsobscurer.main.Settings;
+import com.manulaiko.tabitha.arguments.Argument;
+import com.manulaiko.tabitha.log.Console;
+import com.manulaiko.tabitha.log.ConsoleManager;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+
+/**
+ * Shard depth argument.
+ * =====================
+ *
+ * Sets the directory levels of the layout of the encrypted files.
+ *
+ * Each level is named after the next two characters of the hash,
+ * so with `-s=2` the encrypted files are stored in `AB/CD/ABCD...`.
+ *
+ * By default it's `0` (all encrypted files in the assets folder).
+ *
+ * An existing index keeps its layout, the encrypted files are
+ * only moved to a new one with the `reshard` command.
+ *
+ * @author Manulaiko <manulaiko@gmail.com>
+ */
+@Data
+@EqualsAndHashCode(callSuper = false)
+public class ShardDepth extends Argument {
+    /**
+     * Console logger.
+     */
+    public static Console console = ConsoleManager.forClass(ShardDepth.class);
+
+    /**
+     * Argument name.
+     */
+    private String _argument = "s";
+
+    /**
+     * Argument usage.
+     */
+    private String _usage = "-s=DEPTH";
+
+    /**
+     * Argument description.
+     */
+    private String _description = "Sets the directory levels of the layout of the encrypted files.";
+
+    /**
+     * Default value.
+     */
+    private String _defaultValue = "0";
+
+    /**
+     * Handles the argument.
+     */
+    @Override
+    public void handle() {
+        if (super.value().isEmpty()) {
+            super.print(ShardDepth.console);
+
+            return;
+        }
+
+        try {
+            int depth = Integer.parseInt(super.value());
+            if (depth < 0 || depth > 8) {
+                throw new IllegalArgumentException();
+            }
+
+            Settings.shardDepth = depth;
+            Settings.shardDepthSet = true;
+            ShardDepth.console.info("Shard depth: " + depth);
+        } catch (Exception e) {
+            super.print(ShardDepth.console);
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package com.manulaiko.assetsobscurer.main.arguments;
+
+import com.manulaiko.assetsobscurer.main.Settings;
+import com.manulaiko.tabitha.arguments.Argument;
+import com.manulaiko.tabitha.log.Console;
+import com.manulaiko.tabitha.log.ConsoleManager;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+
+/**
+ * Split index mode argument.
+ * ==========================
+ *
+ * Enables/disable saving the assets of each top level directory in their own index file.
+ *
+ * By default it's `false`.
+ *
+ * @author Manulaiko <manulaiko@gmail.com>
+ */
+@Data
+@EqualsAndHashCode(callSuper = false)
+public class SplitIndexMode extends Argument {
+    /**
+     * Console logger.
+     */
+    public static Console console = ConsoleManager.forClass(SplitIndexMode.class);
+
+    /**
+     * Argument name.
+     */
+    private String _argument = "t";
+
+    /**
+     * Argument usage.
+     */
+    private String _usage = "-t=true|false";
+
+    /**
+     * Argument description.
+     */
+    private String _description = "Enables/disable saving the assets of each top level directory in their own index file.";
+
+    /**
+     * Default value.
+     */
+    private String _defaultValue = "false";
+
+    /**
+     * Handles the argument.
+     */
+    @Override
+    public void handle() {
+        if (super.value().isEmpty()) {
+            super.print(SplitIndexMode.console);
+
+            return;
+        }
+
+        Settings.splitIndex = Boolean.parseBoolean(super.value());
+        SplitIndexMode.console.info("Split index: " + Settings.splitIndex);
+    }
+}
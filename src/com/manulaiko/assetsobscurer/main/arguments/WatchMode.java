@@ -0,0 +1,62 @@
+package com.manulaiko.assetsobscurer.main.arguments;
+
+import com.manulaiko.assetsobscurer.main.Settings;
+import com.manulaiko.tabitha.arguments.Argument;
+import com.manulaiko.tabitha.log.Console;
+import com.manulaiko.tabitha.log.ConsoleManager;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+
+/**
+ * Watch mode argument.
+ * ===================
+ *
+ * Enables/disable watching the assets folder after the automatic mode.
+ *
+ * By default it's `false`.
+ *
+ * @author Manulaiko <manulaiko@gmail.com>
+ */
+@Data
+@EqualsAndHashCode(callSuper = false)
+public class WatchMode extends Argument {
+    /**
+     * Console logger.
+     */
+    public static Console console = ConsoleManager.forClass(WatchMode.class);
+
+    /**
+     * Argument name.
+     */
+    private String _argument = "d";
+
+    /**
+     * Argument usage.
+     */
+    private String _usage = "-d=true|false";
+
+    /**
+     * Argument description.
+     */
+    private String _description = "Enables/disable watching the assets folder after the automatic mode.";
+
+    /**
+     * Default value.
+     */
+    private String _defaultValue = "false";
+
+    /**
+     * Handles the argument.
+     */
+    @Override
+    public void handle() {
+        if (super.value().isEmpty()) {
+            super.print(WatchMode.console);
+
+            return;
+        }
+
+        Settings.watch = Boolean.parseBoolean(super.value());
+        WatchMode.console.info("Watch mode: " + Settings.watch);
+    }
+}
@@ -0,0 +1,71 @@
+package com.manulaiko.assetsobscurer.main.arguments;
+
+import com.manulaiko.assetsobscurer.main.Settings;
+import com.manulaiko.tabitha.arguments.Argument;
+import com.manulaiko.tabitha.log.Console;
+import com.manulaiko.tabitha.log.ConsoleManager;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+
+/**
+ * Workers argument.
+ * =================
+ *
+ * Sets the amount of assets encrypted/decrypted at the same time.
+ *
+ * By default it's the amount of available processors.
+ *
+ * @author Manulaiko <manulaiko@gmail.com>
+ */
+@Data
+@EqualsAndHashCode(callSuper = false)
+public class Workers extends Argument {
+    /**
+     * Console logger.
+     */
+    public static Console console = ConsoleManager.forClass(Workers.class);
+
+    /**
+     * Argument name.
+     */
+    private String _argument = "w";
+
+    /**
+     * Argument usage.
+     */
+    private String _usage = "-w=WORKERS";
+
+    /**
+     * Argument description.
+     */
+    private String _description = "Sets the amount of assets encrypted/decrypted at the same time.";
+
+    /**
+     * Default value.
+     */
+    private String _defaultValue = String.valueOf(Runtime.getRuntime().availableProcessors());
+
+    /**
+     * Handles the argument.
+     */
+    @Override
+    public void handle() {
+        if (super.value().isEmpty()) {
+            super.print(Workers.console);
+
+            return;
+        }
+
+        try {
+            int workers = Integer.parseInt(super.value());
+            if (workers < 1) {
+                throw new IllegalArgumentException();
+            }
+
+            Settings.workers = workers;
+            Workers.console.info("Workers: " + workers);
+        } catch (Exception e) {
+            super.print(Workers.console);
+        }
+    }
+}
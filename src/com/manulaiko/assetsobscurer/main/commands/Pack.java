@@ -0,0 +1,56 @@
+package com.manulaiko.assetsobscurer.main.commands;
+
+import com.manulaiko.assetsobscurer.assets.AssetsManager;
+import com.manulaiko.tabitha.utils.ICommand;
+
+/**
+ * Pack command.
+ * =============
+ *
+ * Packs the encrypted files in a single file.
+ *
+ * @author Manulaiko <manulaiko@gmail.com>
+ */
+public class Pack implements ICommand {
+    /**
+     * Executes the command.
+     *
+     * @param command Command arguments.
+     */
+    @Override
+    public void handle(String[] command) {
+        AssetsManager.instance().pack();
+    }
+
+    /**
+     * Checks whether this command can execute `name` command.
+     *
+     * @param name Command name to check.
+     *
+     * @return Whether this command can execute `name`.
+     */
+    @Override
+    public boolean canHandle(String name) {
+        return name.equalsIgnoreCase("pack");
+    }
+
+    /**
+     * Returns command name.
+     *
+     * @return Command name.
+     */
+    @Override
+    public String name() {
+        return "pack";
+    }
+
+    /**
+     * Returns command description.
+     *
+     * @return Command description.
+     */
+    @Override
+    public String description() {
+        return "Packs the encrypted files in a single file.";
+    }
+}
@@ -0,0 +1,74 @@
+package com.manulaiko.assetsobscurer.main.commands;
+
+import com.manulaiko.assetsobscurer.assets.AssetsManager;
+import com.manulaiko.tabitha.log.Console;
+import com.manulaiko.tabitha.log.ConsoleManager;
+import com.manulaiko.tabitha.utils.ICommand;
+
+/**
+ * Reshard command.
+ * ================
+ *
+ * Moves the encrypted files to a new directory layout.
+ *
+ * @author Manulaiko <manulaiko@gmail.com>
+ */
+public class Reshard implements ICommand {
+    /**
+     * Console logger.
+     */
+    public static final Console console = ConsoleManager.forClass(Reshard.class);
+
+    /**
+     * Executes the command.
+     *
+     * @param command Command arguments.
+     */
+    @Override
+    public void handle(String[] command) {
+        Reshard.console.fine("Enter shard depth:");
+
+        try {
+            int depth = Integer.parseInt(Reshard.console.readLine().trim());
+            if (depth < 0 || depth > 8) {
+                throw new IllegalArgumentException();
+            }
+
+            AssetsManager.instance().reshard(depth);
+        } catch (Exception e) {
+            Reshard.console.warning("Shard depth must be a number between 0 and 8!");
+        }
+    }
+
+    /**
+     * Checks whether this command can execute `name` command.
+     *
+     * @param name Command name to check.
+     *
+     * @return Whether this command can execute `name`.
+     */
+    @Override
+    public boolean canHandle(String name) {
+        return name.equalsIgnoreCase("reshard");
+    }
+
+    /**
+     * Returns command name.
+     *
+     * @return Command name.
+     */
+    @Override
+    public String name() {
+        return "reshard";
+    }
+
+    /**
+     * Returns command description.
+     *
+     * @return Command description.
+     */
+    @Override
+    public String description() {
+        return "Moves the encrypted files to a new directory layout.";
+    }
+}
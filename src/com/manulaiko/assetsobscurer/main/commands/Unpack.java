@@ -0,0 +1,56 @@
+package com.manulaiko.assetsobscurer.main.commands;
+
+import com.manulaiko.assetsobscurer.assets.AssetsManager;
+import com.manulaiko.tabitha.utils.ICommand;
+
+/**
+ * Unpack command.
+ * ===============
+ *
+ * Writes the packed encrypted files as loose files.
+ *
+ * @author Manulaiko <manulaiko@gmail.com>
+ */
+public class Unpack implements ICommand {
+    /**
+     * Executes the command.
+     *
+     * @param command Command arguments.
+     */
+    @Override
+    public void handle(String[] command) {
+        AssetsManager.instance().unpack();
+    }
+
+    /**
+     * Checks whether this command can execute `name` command.
+     *
+     * @param name Command name to check.
+     *
+     * @return Whether this command can execute `name`.
+     */
+    @Override
+    public boolean canHandle(String name) {
+        return name.equalsIgnoreCase("unpack");
+    }
+
+    /**
+     * Returns command name.
+     *
+     * @return Command name.
+     */
+    @Override
+    public String name() {
+        return "unpack";
+    }
+
+    /**
+     * Returns command description.
+     *
+     * @return Command description.
+     */
+    @Override
+    public String description() {
+        return "Writes the packed encrypted files as loose files.";
+    }
+}
@@ -0,0 +1,68 @@
+package com.manulaiko.assetsobscurer.main.commands;
+
+import com.manulaiko.assetsobscurer.assets.AssetsManager;
+import com.manulaiko.tabitha.utils.ICommand;
+
+/**
+ * Watch command.
+ * ==============
+ *
+ * Starts/stops watching the assets folder in background.
+ *
+ * @author Manulaiko <manulaiko@gmail.com>
+ */
+public class Watch implements ICommand {
+    /**
+     * Whether the assets folder is being watched or not.
+     */
+    private boolean _isWatching = false;
+
+    /**
+     * Executes the command.
+     *
+     * @param command Command arguments.
+     */
+    @Override
+    public void handle(String[] command) {
+        if (this._isWatching) {
+            AssetsManager.instance().unwatch();
+            this._isWatching = false;
+
+            return;
+        }
+
+        this._isWatching = AssetsManager.instance().watch(false) != null;
+    }
+
+    /**
+     * Checks whether this command can execute `name` command.
+     *
+     * @param name Command name to check.
+     *
+     * @return Whether this command can execute `name`.
+     */
+    @Override
+    public boolean canHandle(String name) {
+        return name.equalsIgnoreCase("watch");
+    }
+
+    /**
+     * Returns command name.
+     *
+     * @return Command name.
+     */
+    @Override
+    public String name() {
+        return "watch";
+    }
+
+    /**
+     * Returns command description.
+     *
+     * @return Command description.
+     */
+    @Override
+    public String description() {
+        return "Starts/stops watching the assets folder in background.";
+    }
+}
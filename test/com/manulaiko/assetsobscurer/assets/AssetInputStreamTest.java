@@ -0,0 +1,205 @@
+package com.manulaiko.assetsobscurer.assets;
+
+import com.manulaiko.assetsobscurer.main.EncryptionManager;
+import com.manulaiko.assetsobscurer.main.EncryptionManagerTest;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.Assert.*;
+
+/**
+ * AssetInputStream tests.
+ * =======================
+ *
+ * Reads encrypted assets through a stream that decrypts them lazily.
+ *
+ * @author Manulaiko <manulaiko@gmail.com>
+ */
+public class AssetInputStreamTest {
+    /**
+     * Temporary folder.
+     */
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Assets are decrypted as they're read, whatever the size of the reads.
+     *
+     * @throws Exception If the asset couldn't be written or read.
+     */
+    @Test
+    public void read() throws Exception {
+        for (int length : new int[]{0, 1, EncryptionManager.BUFFER_SIZE, 3 * EncryptionManager.BUFFER_SIZE + 17}) {
+            byte[] plain = EncryptionManagerTest.random(length);
+            Path path = this.folder.newFile().toPath();
+            Files.write(path, EncryptionManager.instance().encrypt(plain));
+
+            for (int size : new int[]{1, 1000, 2 * EncryptionManager.BUFFER_SIZE}) {
+                try (InputStream input = new AssetInputStream(AssetChannel.open(path))) {
+                    ByteArrayOutputStream output = new ByteArrayOutputStream();
+                    byte[] buffer = new byte[size];
+                    int read;
+                    while ((read = (size == 1) ? input.read() : input.read(buffer)) != -1) {
+                        if (size == 1) {
+                            output.write(read);
+                        } else {
+                            output.write(buffer, 0, read);
+                        }
+                    }
+
+                    assertArrayEquals("Length " + length + " in reads of " + size, plain, output.toByteArray());
+                    assertEquals(-1, input.read());
+                    assertEquals(0, input.read(buffer, 0, 0));
+                }
+            }
+        }
+    }
+
+    /**
+     * Closing the stream closes the channel.
+     *
+     * @throws Exception If the asset couldn't be written or read.
+     */
+    @Test
+    public void close() throws Exception {
+        Path path = this.folder.newFile().toPath();
+        Files.write(path, EncryptionManager.instance().encrypt(EncryptionManagerTest.random(100)));
+        SeekableByteChannel channel = AssetChannel.open(path);
+
+        InputStream input = new AssetInputStream(channel);
+        assertEquals(EncryptionManagerTest.random(100)[0] & 0xFF, input.read());
+        input.close();
+
+        assertFalse(channel.isOpen());
+        assertEquals(-1, input.read());
+    }
+
+    /**
+     * Errors reading the channel are thrown by the stream.
+     *
+     * @throws Exception If the stream couldn't be closed.
+     */
+    @Test
+    public void failure() throws Exception {
+        SeekableByteChannel channel = new EmptyChannel() {
+            @Override
+            public int read(ByteBuffer dst) throws IOException {
+                throw new IOException("Corrupted asset");
+            }
+        };
+
+        try (InputStream input = new AssetInputStream(channel)) {
+            input.read();
+            fail("Corrupted asset was read");
+        } catch (IOException e) {
+            assertEquals("Corrupted asset", e.getCause().getMessage());
+        }
+    }
+
+    /**
+     * Empty channel to override in the tests.
+     */
+    private static class EmptyChannel implements SeekableByteChannel {
+        /**
+         * Whether the channel is open or not.
+         */
+        private boolean _isOpen = true;
+
+        /**
+         * Reads nothing.
+         *
+         * @param dst Destination buffer.
+         *
+         * @return -1.
+         *
+         * @throws IOException Never.
+         */
+        @Override
+        public int read(ByteBuffer dst) throws IOException {
+            return -1;
+        }
+
+        /**
+         * Writes nothing.
+         *
+         * @param src Source buffer.
+         *
+         * @return Nothing, the channel is read only.
+         */
+        @Override
+        public int write(ByteBuffer src) {
+            throw new UnsupportedOperationException();
+        }
+
+        /**
+         * Returns the position.
+         *
+         * @return 0.
+         */
+        @Override
+        public long position() {
+            return 0;
+        }
+
+        /**
+         * Sets the position.
+         *
+         * @param newPosition New position.
+         *
+         * @return This channel.
+         */
+        @Override
+        public SeekableByteChannel position(long newPosition) {
+            return this;
+        }
+
+        /**
+         * Returns the size.
+         *
+         * @return 0.
+         */
+        @Override
+        public long size() {
+            return 0;
+        }
+
+        /**
+         * Truncates the channel.
+         *
+         * @param size New size.
+         *
+         * @return Nothing, the channel is read only.
+         */
+        @Override
+        public SeekableByteChannel truncate(long size) {
+            throw new UnsupportedOperationException();
+        }
+
+        /**
+         * Returns whether the channel is open or not.
+         *
+         * @return Whether `close` wasn't called yet.
+         */
+        @Override
+        public boolean isOpen() {
+            return this._isOpen;
+        }
+
+        /**
+         * Closes the channel.
+         */
+        @Override
+        public void close() {
+            this._isOpen = false;
+        }
+    }
+}
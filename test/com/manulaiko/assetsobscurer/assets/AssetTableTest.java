@@ -0,0 +1,184 @@
+package com.manulaiko.assetsobscurer.assets;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.util.*;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.*;
+
+/**
+ * AssetTable tests.
+ * =================
+ *
+ * Stores, looks up and removes packed entries.
+ *
+ * @author Manulaiko <manulaiko@gmail.com>
+ */
+public class AssetTableTest {
+    /**
+     * Entries are read back with the same fields, across
+     * several chunks and directory table sizes.
+     */
+    @Test
+    public void add() {
+        AssetTable table = new AssetTable();
+        List<Index.Asset> assets = new ArrayList<>();
+        for (int i = 0; i < 3 * AssetTable.CHUNK_SIZE + 7; i++) {
+            Index.Asset asset = AssetTableTest.asset(i, i % 3 == 0);
+            assets.add(asset);
+
+            assertEquals(i, table.add(asset));
+        }
+        table.add(new Index.Asset("", "top.png", false));
+
+        assertEquals(assets.size() + 1, table.size());
+        for (int i = 0; i < assets.size(); i++) {
+            assertEquals(assets.get(i), table.get(i));
+            assertEquals(assets.get(i).path(), table.path(i));
+            assertEquals(assets.get(i).isEncrypted(), table.isEncrypted(i));
+            assertEquals(i, table.find(assets.get(i).path()));
+        }
+        assertEquals(assets.size(), table.find("./top.png"));
+        assertSame(table.get(0).dir(), table.get(7).dir());
+        assertEquals(-1, table.find("d0/missing.png"));
+        assertEquals(-1, table.find("missing/0.png"));
+        assertEquals(8, table.dirs().size());
+        assertEquals(
+                assets.stream().filter(a -> a.dir().equals("d1")).map(Index.Asset::path).collect(Collectors.toSet()),
+                table.dir("d1").map(Index.Asset::path).collect(Collectors.toSet())
+        );
+    }
+
+    /**
+     * Copies aren't affected by later changes to either table.
+     */
+    @Test
+    public void copy() {
+        AssetTable table = new AssetTable();
+        for (int i = 0; i < 2 * AssetTable.CHUNK_SIZE; i++) {
+            table.add(AssetTableTest.asset(i, false));
+        }
+
+        AssetTable copy = table.copy();
+        table.set(1, AssetTableTest.asset(1, true));
+        table.add(new Index.Asset("", "d0/added.png", false));
+        table.add(new Index.Asset("", "new/added.png", false));
+        copy.set(2, AssetTableTest.asset(2, true));
+
+        assertTrue(table.isEncrypted(1));
+        assertFalse(table.isEncrypted(2));
+        assertNotEquals(-1, table.find("d0/added.png"));
+        assertNotEquals(-1, table.find("new/added.png"));
+
+        assertFalse(copy.isEncrypted(1));
+        assertTrue(copy.isEncrypted(2));
+        assertEquals(2 * AssetTable.CHUNK_SIZE, copy.size());
+        assertEquals(-1, copy.find("d0/added.png"));
+        assertEquals(-1, copy.find("new/added.png"));
+        assertFalse(copy.dirs().contains("new"));
+
+        copy.add(new Index.Asset("", "other/added.png", false));
+        assertEquals("new" + File.separator + "added.png", table.path(table.size() - 1));
+        assertEquals(-1, table.find("other/added.png"));
+    }
+
+    /**
+     * Removed entries are gone and the rest keep their order.
+     */
+    @Test
+    public void remove() {
+        AssetTable table = new AssetTable();
+        int count = 3 * AssetTable.CHUNK_SIZE;
+        for (int i = 0; i < count; i++) {
+            table.add(AssetTableTest.asset(i, i % 2 == 0));
+        }
+        AssetTable copy = table.copy();
+
+        BitSet removed = new BitSet();
+        for (int i = 0; i < count; i += 3) {
+            removed.set(i);
+        }
+        table.remove(removed);
+
+        assertEquals(count - removed.cardinality(), table.size());
+        List<Integer> expected = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            if (!removed.get(i)) {
+                expected.add(i);
+            }
+        }
+        for (int i = 0; i < table.size(); i++) {
+            assertEquals(AssetTableTest.asset(expected.get(i), expected.get(i) % 2 == 0), table.get(i));
+            assertEquals(i, table.find(table.path(i)));
+        }
+        assertEquals(-1, table.find(AssetTableTest.asset(0, false).path()));
+
+        assertEquals(count, copy.size());
+        assertEquals(0, copy.find(AssetTableTest.asset(0, false).path()));
+    }
+
+    /**
+     * References are counted while entries are added, updated and removed.
+     */
+    @Test
+    public void references() {
+        AssetTable table = new AssetTable();
+        Hash shared = Hash.parse("F00DBABE00000000000000000000000000000001");
+        for (int i = 0; i < 1000; i++) {
+            table.add(new Index.Asset(i % 10 == 0 ? shared.toString() : AssetTableTest.hash(i), "d/" + i + ".png", true));
+        }
+        table.add(new Index.Asset("", "d/unhashed.png", false));
+
+        assertEquals(100, table.references(shared));
+        assertEquals(1, table.references(Hash.parse(AssetTableTest.hash(1))));
+
+        // Added after the table of the hashes is built, so it grows.
+        for (int i = 1000; i < 5000; i++) {
+            table.add(new Index.Asset(i % 10 == 0 ? shared.toString() : AssetTableTest.hash(i), "d/" + i + ".png", true));
+        }
+        assertEquals(500, table.references(shared));
+
+        for (int i = 0; i < 5000; i += 20) {
+            table.set(table.find("d/" + i + ".png"), new Index.Asset(AssetTableTest.hash(i), "d/" + i + ".png", true));
+        }
+        assertEquals(250, table.references(shared));
+        for (int i = 1; i < 5000; i += 2) {
+            assertEquals(1, table.references(Hash.parse(AssetTableTest.hash(i))));
+        }
+
+        BitSet removed = new BitSet();
+        for (int i = 0; i < table.size(); i++) {
+            if (shared.equals(table.get(i).digest())) {
+                removed.set(i);
+            }
+        }
+        table.remove(removed);
+        assertEquals(0, table.references(shared));
+        assertEquals(1, table.references(Hash.parse(AssetTableTest.hash(20))));
+    }
+
+    /**
+     * Builds an asset.
+     *
+     * @param i           Asset number.
+     * @param isEncrypted Whether the asset is encrypted or not.
+     *
+     * @return Asset `i` of directory `d(i % 7)`.
+     */
+    private static Index.Asset asset(int i, boolean isEncrypted) {
+        return new Index.Asset(AssetTableTest.hash(i), "d" + (i % 7) + "/" + i + ".png", isEncrypted, i, 1000L * i);
+    }
+
+    /**
+     * Builds the hash of an asset.
+     *
+     * @param i Asset number.
+     *
+     * @return Hex encoded hash.
+     */
+    private static String hash(int i) {
+        return Collections.nCopies(5, String.format("%08X", i * 31 + 7)).stream().collect(Collectors.joining());
+    }
+}
@@ -0,0 +1,662 @@
+package com.manulaiko.assetsobscurer.assets;
+
+import com.manulaiko.assetsobscurer.main.EncryptionManager;
+import com.manulaiko.assetsobscurer.main.EncryptionManagerTest;
+import com.manulaiko.assetsobscurer.main.Settings;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.*;
+
+/**
+ * AssetsManager tests.
+ * ====================
+ *
+ * Runs the assets manager over a temporary assets folder.
+ *
+ * @author Manulaiko <manulaiko@gmail.com>
+ */
+public class AssetsManagerTest {
+    /**
+     * Temporary folder.
+     */
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Assets folder.
+     */
+    private Path _root;
+
+    /**
+     * Decrypted assets, by path.
+     */
+    private final Map<String, byte[]> _files = new HashMap<>();
+
+    /**
+     * Sets the temporary folder as the assets folder.
+     */
+    @Before
+    public void setUp() {
+        this._root = this.folder.getRoot().toPath();
+        Settings.assets = this._root.toFile();
+    }
+
+    /**
+     * Restores the settings.
+     */
+    @After
+    public void tearDown() {
+        Settings.assets = new File("assets");
+        Settings.shardDepth = 0;
+        Settings.shardDepthSet = false;
+        Settings.journal = false;
+        Settings.journalThreshold = 4L * 1024 * 1024;
+        Settings.binaryIndex = false;
+        Settings.pack = false;
+        Settings.splitIndex = false;
+        Settings.keepEncrypted = false;
+    }
+
+    /**
+     * Changes saved to the journal are applied when the index is loaded,
+     * without being logged again.
+     *
+     * @throws Exception If the assets couldn't be written.
+     */
+    @Test
+    public void journal() throws Exception {
+        Settings.journal = true;
+        Path journal = this._root.resolve("assets.journal");
+
+        AssetsManager manager = this._manager();
+        this._write("a/1.png", 100);
+        manager.scan();
+        manager.saveIndex();
+        assertEquals(Journal.HEADER_LENGTH, Files.size(journal));
+
+        this._write("a/2.png", 200);
+        this._write("b/3.png", 300);
+        manager.scan();
+        manager.encrypt();
+        manager.saveIndex();
+        long length = Files.size(journal);
+        assertTrue(length > Journal.HEADER_LENGTH);
+
+        AssetsManager loaded = this._manager();
+        this._assertIndexed(loaded, true);
+        loaded.saveIndex();
+        assertEquals(length, Files.size(journal));
+    }
+
+    /**
+     * Once the journal grows past the threshold the index is saved
+     * in background and the journal is emptied.
+     *
+     * @throws Exception If the assets couldn't be written.
+     */
+    @Test
+    public void compaction() throws Exception {
+        Settings.journal = true;
+        Settings.journalThreshold = 1;
+        Path journal = this._root.resolve("assets.journal");
+
+        AssetsManager manager = this._manager();
+        this._write("a/1.png", 100);
+        manager.scan();
+        manager.saveIndex();
+
+        this._write("a/2.png", 200);
+        manager.scan();
+        manager.encrypt();
+        manager.saveIndex();
+
+        long timeout = System.currentTimeMillis() + 10000;
+        while (Files.size(journal) > Journal.HEADER_LENGTH && System.currentTimeMillis() < timeout) {
+            Thread.sleep(10);
+        }
+        assertEquals(Journal.HEADER_LENGTH, Files.size(journal));
+
+        this._assertIndexed(this._manager(), true);
+
+        Settings.journal = false;
+        Files.delete(journal);
+        this._assertIndexed(this._manager(), true);
+    }
+
+    /**
+     * Resharding moves the encrypted files to the new layout
+     * and deletes the directories of the previous one.
+     *
+     * @throws Exception If the assets couldn't be written or read.
+     */
+    @Test
+    public void reshard() throws Exception {
+        AssetsManager manager = this._manager();
+        this._write("a/1.png", 100);
+        this._write("a/2.png", 200);
+        this._write("b/3.png", 300);
+        manager.scan();
+        manager.encrypt();
+        manager.saveIndex();
+
+        manager.reshard(2);
+        assertEquals(2, Settings.shardDepth);
+        this._assertBlobs(manager, 2);
+
+        AssetsManager loaded = this._manager();
+        assertEquals(2, loaded.index().shardDepth());
+        this._assertIndexed(loaded, true);
+
+        loaded.reshard(0);
+        this._assertBlobs(loaded, 0);
+        try (Stream<Path> files = Files.list(this._root)) {
+            assertFalse(files.anyMatch(f -> f.getFileName().toString().matches("[0-9A-F]{2}")));
+        }
+
+        loaded.decrypt();
+        this._assertDecrypted();
+    }
+
+    /**
+     * An existing index keeps its layout even if another depth was set.
+     *
+     * @throws Exception If the assets couldn't be written or read.
+     */
+    @Test
+    public void layout() throws Exception {
+        Settings.shardDepth = 1;
+        AssetsManager manager = this._manager();
+        this._write("a/1.png", 100);
+        this._write("b/2.png", 200);
+        manager.scan();
+        manager.encrypt();
+        manager.saveIndex();
+        this._assertBlobs(manager, 1);
+
+        Settings.shardDepth = 3;
+        Settings.shardDepthSet = true;
+        AssetsManager loaded = this._manager();
+        assertEquals(1, Settings.shardDepth);
+        assertEquals(1, loaded.index().shardDepth());
+        this._assertBlobs(loaded, 1);
+
+        loaded.decrypt();
+        this._assertDecrypted();
+    }
+
+    /**
+     * Split indexes are written by top level directory, looked up
+     * without loading every part and joined back.
+     *
+     * @throws Exception If the assets couldn't be written or read.
+     */
+    @Test
+    public void splitIndex() throws Exception {
+        this._split();
+    }
+
+    /**
+     * Split binary indexes are written by top level directory, looked up
+     * without loading every part and joined back.
+     *
+     * @throws Exception If the assets couldn't be written or read.
+     */
+    @Test
+    public void splitBinaryIndex() throws Exception {
+        Settings.binaryIndex = true;
+
+        this._split();
+    }
+
+    /**
+     * Indexes and encrypted files written by the first releases are still read.
+     *
+     * @throws Exception If the assets couldn't be written or read.
+     */
+    @Test
+    public void legacyIndex() throws Exception {
+        StringBuilder json = new StringBuilder("{\"_assets\":[");
+        for (int i = 0; i < 3; i++) {
+            Path path = this._root.resolve("a/" + i + ".png");
+            byte[] bytes = EncryptionManagerTest.random(100 + i);
+            String hash = Hash.of(MessageDigest.getInstance("SHA1").digest(bytes)).toString();
+            this._files.put(path.toString(), bytes);
+
+            Files.write(this._root.resolve(hash), EncryptionManagerTest.legacy(bytes));
+            json.append(i == 0 ? "" : ",")
+                .append("{\"_hash\":\"").append(hash)
+                .append("\",\"_path\":\"").append(path)
+                .append("\",\"_isEncrypted\":true}");
+        }
+        json.append("]}");
+        Files.write(this._root.resolve("assets.index"), EncryptionManagerTest.legacy(json.toString().getBytes(StandardCharsets.UTF_8)));
+
+        AssetsManager manager = this._manager();
+        this._assertIndexed(manager, true);
+        for (Map.Entry<String, byte[]> file : this._files.entrySet()) {
+            assertArrayEquals(file.getKey(), file.getValue(), this._read(manager.asInputStream(file.getKey())));
+        }
+
+        manager.decrypt();
+        this._assertDecrypted();
+    }
+
+    /**
+     * JSON indexes are streamed encrypted to a temporary file that replaces the
+     * index, and streamed back with all the assets.
+     *
+     * @throws Exception If the assets couldn't be written or read.
+     */
+    @Test
+    public void jsonIndex() throws Exception {
+        AssetsManager manager = this._manager();
+        for (int i = 0; i < 500; i++) {
+            this._write("d" + (i % 10) + "/" + i + ".png", 1 + i % 50);
+        }
+        manager.scan();
+        manager.encrypt();
+        manager.saveIndex();
+
+        Path path = this._root.resolve("assets.index");
+        byte[] bytes = Files.readAllBytes(path);
+        assertFalse(new String(bytes, StandardCharsets.ISO_8859_1).contains("_assets"));
+        assertTrue(new String(EncryptionManager.instance().decrypt(bytes), StandardCharsets.UTF_8).startsWith("{\"_assets\":["));
+        try (Stream<Path> files = Files.list(this._root)) {
+            assertFalse(files.anyMatch(f -> f.getFileName().toString().endsWith(".tmp")));
+        }
+
+        AssetsManager loaded = this._manager();
+        this._assertIndexed(loaded, true);
+        for (Index.Asset asset : manager.index().assets()) {
+            assertEquals(asset.toString(), String.valueOf(loaded.find(asset.path())));
+        }
+
+        Files.write(path, Arrays.copyOf(bytes, bytes.length / 2));
+        assertTrue(this._manager().index().assets().isEmpty());
+    }
+
+    /**
+     * Assets can be read while they're being encrypted and decrypted.
+     *
+     * @throws Exception If the assets couldn't be written or read.
+     */
+    @Test
+    public void concurrentReads() throws Exception {
+        this._readWhileObscuring();
+    }
+
+    /**
+     * Assets can be read while they're being encrypted and decrypted
+     * keeping the encrypted files.
+     *
+     * @throws Exception If the assets couldn't be written or read.
+     */
+    @Test
+    public void concurrentReadsWithKeptEncryptedFiles() throws Exception {
+        Settings.keepEncrypted = true;
+
+        this._readWhileObscuring();
+    }
+
+    /**
+     * Encrypted files are deleted once the assets are decrypted,
+     * unless they're kept.
+     *
+     * @throws Exception If the assets couldn't be written or read.
+     */
+    @Test
+    public void keepEncrypted() throws Exception {
+        AssetsManager manager = this._manager();
+        this._write("a/1.png", 100);
+        this._write("a/2.png", 200);
+        manager.scan();
+        manager.encrypt();
+        List<Path> blobs = this._blobs(manager);
+
+        manager.decrypt();
+        this._assertDecrypted();
+        for (Path blob : blobs) {
+            assertFalse(blob + " was kept", Files.exists(blob));
+        }
+
+        Settings.keepEncrypted = true;
+        manager.encrypt();
+        blobs = this._blobs(manager);
+        manager.decrypt();
+        this._assertDecrypted();
+        for (Path blob : blobs) {
+            assertTrue(blob + " wasn't kept", Files.exists(blob));
+        }
+    }
+
+    /**
+     * Unchanged assets reuse their kept encrypted file, and
+     * changed ones are encrypted again.
+     *
+     * @throws Exception If the assets couldn't be written or read.
+     */
+    @Test
+    public void unchangedAssets() throws Exception {
+        Settings.keepEncrypted = true;
+        AssetsManager manager = this._manager();
+        Path unchanged = this._write("a/1.png", 100);
+        Path changed = this._write("a/2.png", 200);
+        manager.scan();
+        manager.encrypt();
+        Index.Asset asset = manager.find(unchanged.toString());
+        Path blob = asset.blob();
+        Path old = manager.find(changed.toString()).blob();
+        // Reused files are neither rewritten nor replaced.
+        Files.setLastModifiedTime(blob, FileTime.fromMillis(1000));
+        Object key = Files.readAttributes(blob, BasicFileAttributes.class).fileKey();
+
+        manager.decrypt();
+        byte[] bytes = EncryptionManagerTest.random(300);
+        Files.write(changed, bytes);
+        Files.setLastModifiedTime(changed, FileTime.fromMillis(System.currentTimeMillis() + 10000));
+        this._files.put(changed.toString(), bytes);
+        manager.encrypt();
+
+        this._assertIndexed(manager, true);
+        assertEquals(asset.hash(), manager.find(unchanged.toString()).hash());
+        assertEquals(1000, Files.getLastModifiedTime(blob).toMillis());
+        assertEquals(key, Files.readAttributes(blob, BasicFileAttributes.class).fileKey());
+        assertNotEquals(old, manager.find(changed.toString()).blob());
+        assertFalse(Files.exists(old));
+
+        manager.decrypt();
+        this._assertDecrypted();
+    }
+
+    /**
+     * Identical assets share a single encrypted file, which is
+     * deleted once no asset references it.
+     *
+     * @throws Exception If the assets couldn't be written or read.
+     */
+    @Test
+    public void duplicates() throws Exception {
+        AssetsManager manager = this._manager();
+        Path first = this._write("a/1.png", 100);
+        Path copy = this._write("b/copy.png", 100);
+        this._write("c/2.png", 200);
+        manager.scan();
+        manager.encrypt();
+
+        this._assertIndexed(manager, true);
+        Index.Asset asset = manager.find(first.toString());
+        assertEquals(asset.hash(), manager.find(copy.toString()).hash());
+        assertEquals(2, manager.index().references(asset.hash()));
+        try (Stream<Path> files = Files.list(this._root)) {
+            assertEquals(2, files.filter(Files::isRegularFile).filter(f -> f.getFileName().toString().matches("[0-9A-F]{40}")).count());
+        }
+        for (Map.Entry<String, byte[]> file : this._files.entrySet()) {
+            assertArrayEquals(file.getKey(), file.getValue(), this._read(manager.asInputStream(file.getKey())));
+        }
+
+        manager.decrypt();
+        this._assertDecrypted();
+        assertFalse(Files.exists(asset.blob()));
+
+        // The encrypted file is still referenced by the copy.
+        manager.index().remove(a -> a.path().equals(first.toString()));
+        this._files.remove(first.toString());
+        Files.delete(first);
+        manager.encrypt();
+        assertEquals(1, manager.index().references(asset.hash()));
+        assertTrue(Files.exists(asset.blob()));
+
+        manager.decrypt();
+        this._assertDecrypted();
+        assertFalse(Files.exists(asset.blob()));
+    }
+
+    /**
+     * Returns a new assets manager for the assets folder.
+     *
+     * @return Initialized assets manager.
+     */
+    private AssetsManager _manager() {
+        AssetsManager manager = new AssetsManager(Settings.assets);
+        manager.initialize();
+
+        return manager;
+    }
+
+    /**
+     * Writes a decrypted asset.
+     *
+     * @param name   Path relative to the assets folder.
+     * @param length Asset length.
+     *
+     * @return Path to the asset.
+     *
+     * @throws Exception If the asset couldn't be written.
+     */
+    private Path _write(String name, int length) throws Exception {
+        Path path = this._root.resolve(name);
+        byte[] bytes = EncryptionManagerTest.random(length);
+
+        Files.createDirectories(path.getParent());
+        Files.write(path, bytes);
+        this._files.put(path.toString(), bytes);
+
+        return path;
+    }
+
+    /**
+     * Splits the index, reads it back and joins it again.
+     *
+     * @throws Exception If the assets couldn't be written or read.
+     */
+    private void _split() throws Exception {
+        Settings.splitIndex = true;
+        AssetsManager manager = this._manager();
+        this._write("a/1.png", 100);
+        this._write("a/b/2.png", 200);
+        this._write("c/3.png", 300);
+        this._write("4.png", 400);
+        manager.scan();
+        manager.encrypt();
+        manager.saveIndex();
+
+        assertEquals(new HashSet<>(Arrays.asList("a", "c")), SplitIndex.list(this._root));
+
+        AssetsManager loaded = this._manager();
+        assertTrue(loaded.snapshot() instanceof SplitSnapshot);
+        for (Map.Entry<String, byte[]> file : this._files.entrySet()) {
+            assertArrayEquals(file.getKey(), file.getValue(), this._read(loaded.asInputStream(file.getKey())));
+        }
+        assertNull(loaded.find(this._root.resolve("a/missing.png").toString()));
+        this._assertIndexed(loaded, true);
+
+        Settings.splitIndex = false;
+        loaded.saveIndex();
+        assertTrue(SplitIndex.list(this._root).isEmpty());
+        this._assertIndexed(this._manager(), true);
+    }
+
+    /**
+     * Reads the assets from several threads while they're
+     * encrypted and decrypted a few times.
+     *
+     * @throws Exception If the assets couldn't be written or read.
+     */
+    private void _readWhileObscuring() throws Exception {
+        AssetsManager manager = this._manager();
+        for (int i = 0; i < 50; i++) {
+            this._write("d" + (i % 5) + "/" + i + ".png", 100 + i);
+        }
+        manager.scan();
+        manager.encrypt();
+
+        List<String> paths = new ArrayList<>(this._files.keySet());
+        List<String> failures = Collections.synchronizedList(new ArrayList<>());
+        AtomicBoolean isRunning = new AtomicBoolean(true);
+        AtomicInteger reads = new AtomicInteger();
+
+        List<Thread> readers = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            boolean channel = i % 2 == 0;
+            Thread reader = new Thread(() -> {
+                Random random = new Random();
+                while (isRunning.get()) {
+                    String path = paths.get(random.nextInt(paths.size()));
+                    try {
+                        byte[] read = channel ? this._read(manager.asChannel(path)) : this._read(manager.asInputStream(path));
+                        if (!Arrays.equals(this._files.get(path), read)) {
+                            failures.add(path + (read == null ? " wasn't found" : " was corrupted"));
+                        }
+                    } catch (Exception e) {
+                        failures.add(path + ": " + e);
+                    }
+                    reads.incrementAndGet();
+                }
+            });
+
+            reader.start();
+            readers.add(reader);
+        }
+
+        try {
+            for (int i = 0; i < 3; i++) {
+                manager.decrypt();
+                manager.scan();
+                manager.encrypt();
+            }
+        } finally {
+            isRunning.set(false);
+            for (Thread reader : readers) {
+                reader.join();
+            }
+        }
+
+        assertTrue(reads.get() > 0);
+        assertEquals(Collections.emptyList(), failures);
+        this._assertIndexed(manager, true);
+    }
+
+    /**
+     * Reads an asset stream until its end.
+     *
+     * @param input Asset stream (may be null).
+     *
+     * @return Read bytes or null if `input` is null.
+     *
+     * @throws Exception If the stream couldn't be read.
+     */
+    private byte[] _read(InputStream input) throws Exception {
+        if (input == null) {
+            return null;
+        }
+
+        try (InputStream in = input) {
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            byte[] buffer = new byte[777];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                output.write(buffer, 0, read);
+            }
+
+            return output.toByteArray();
+        }
+    }
+
+    /**
+     * Reads an asset channel until its end.
+     *
+     * @param channel Asset channel (may be null).
+     *
+     * @return Read bytes or null if `channel` is null.
+     *
+     * @throws Exception If the channel couldn't be read.
+     */
+    private byte[] _read(SeekableByteChannel channel) throws Exception {
+        if (channel == null) {
+            return null;
+        }
+
+        try (SeekableByteChannel in = channel) {
+            return PackTest.read(in);
+        }
+    }
+
+    /**
+     * Returns the encrypted files of the indexed assets.
+     *
+     * @param manager Assets manager.
+     *
+     * @return Paths to the encrypted files.
+     */
+    private List<Path> _blobs(AssetsManager manager) {
+        List<Path> blobs = new ArrayList<>();
+        for (Index.Asset asset : manager.index().assets()) {
+            assertTrue(asset.path(), Files.isRegularFile(asset.blob()));
+            blobs.add(asset.blob());
+        }
+
+        return blobs;
+    }
+
+    /**
+     * Checks that the encrypted files are stored in a given layout.
+     *
+     * @param manager Assets manager.
+     * @param depth   Directory levels of the layout.
+     */
+    private void _assertBlobs(AssetsManager manager, int depth) {
+        for (Index.Asset asset : manager.index().assets()) {
+            for (int i = 0; i <= 3; i++) {
+                assertEquals(asset.path() + " at depth " + i, i == depth, Files.isRegularFile(Index.blob(asset.hash(), i)));
+            }
+        }
+    }
+
+    /**
+     * Checks that the written assets are decrypted.
+     *
+     * @throws Exception If the assets couldn't be read.
+     */
+    private void _assertDecrypted() throws Exception {
+        for (Map.Entry<String, byte[]> file : this._files.entrySet()) {
+            assertArrayEquals(file.getKey(), file.getValue(), Files.readAllBytes(Paths.get(file.getKey())));
+        }
+    }
+
+    /**
+     * Checks that the written assets are indexed.
+     *
+     * @param manager     Assets manager.
+     * @param isEncrypted Whether the assets should be encrypted or not.
+     */
+    private void _assertIndexed(AssetsManager manager, boolean isEncrypted) {
+        assertEquals(this._files.size(), manager.index().assets().size());
+
+        for (String path : this._files.keySet()) {
+            Index.Asset asset = manager.find(path);
+
+            assertNotNull(path, asset);
+            assertEquals(path, isEncrypted, asset.isEncrypted());
+        }
+    }
+}
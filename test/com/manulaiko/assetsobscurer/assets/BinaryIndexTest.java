@@ -0,0 +1,149 @@
+package com.manulaiko.assetsobscurer.assets;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * BinaryIndex tests.
+ * ==================
+ *
+ * Writes indexes in the binary format and reads them back.
+ *
+ * @author Manulaiko <manulaiko@gmail.com>
+ */
+public class BinaryIndexTest {
+    /**
+     * Builds an index with some assets.
+     *
+     * @return Index.
+     */
+    public static Index index() {
+        List<Index.Asset> assets = new ArrayList<>(Arrays.asList(
+                new Index.Asset("F00DBABE00000000000000000000000000000001", "b/z.png", true, 10, 1000),
+                new Index.Asset("0000000000000000000000000000000000000002", "a.txt", false, 0, 0),
+                new Index.Asset("", "b/new file.ogg", false, 20, 2000),
+                new Index.Asset("F00DBABE00000000000000000000000000000001", "c/copy of z.png", true, 10, 1000),
+                new Index.Asset("ABCDEF0000000000000000000000000000000003", "b/d/e.json", true, 30, 3000)
+        ));
+
+        Index index = new Index(assets);
+        index.shardDepth(2);
+        index.journalOffset(1234);
+
+        return index;
+    }
+
+    /**
+     * Indexes are read back with all their assets and header fields.
+     *
+     * @throws Exception If the index couldn't be read.
+     */
+    @Test
+    public void roundTrip() throws Exception {
+        Index index = BinaryIndexTest.index();
+        BinaryIndex binary = BinaryIndex.read(ByteBuffer.wrap(BinaryIndex.write(index)));
+
+        assertEquals(index.assets().size(), binary.count());
+        assertEquals(2, binary.shardDepth());
+        assertEquals(1234, binary.journalOffset());
+
+        for (Index.Asset asset : index.assets()) {
+            assertEquals(asset.toString(), String.valueOf(binary.find(asset.path())));
+        }
+
+        Index read = binary.toIndex();
+        assertEquals(2, read.shardDepth());
+        assertEquals(1234, read.journalOffset());
+        for (Index.Asset asset : index.assets()) {
+            assertEquals(asset.toString(), String.valueOf(read.find(asset.path())));
+        }
+    }
+
+    /**
+     * Assets are found by any equivalent path, and missing assets aren't.
+     *
+     * @throws Exception If the index couldn't be read.
+     */
+    @Test
+    public void find() throws Exception {
+        BinaryIndex binary = BinaryIndex.read(ByteBuffer.wrap(BinaryIndex.write(BinaryIndexTest.index())));
+
+        assertNotNull(binary.find("b/./z.png"));
+        assertNotNull(binary.find("b//z.png"));
+        assertNotNull(binary.find("c/../a.txt"));
+        assertNull(binary.find("b/y.png"));
+        assertNull(binary.find("b"));
+        assertNull(binary.find(""));
+    }
+
+    /**
+     * Indexes are read from the position of the buffer.
+     *
+     * @throws Exception If the index couldn't be read.
+     */
+    @Test
+    public void position() throws Exception {
+        byte[] bytes = BinaryIndex.write(BinaryIndexTest.index());
+        ByteBuffer buffer = ByteBuffer.allocate(bytes.length + 3);
+        buffer.position(3);
+        buffer.put(bytes);
+        buffer.position(3);
+
+        assertTrue(BinaryIndex.isBinary(buffer));
+        assertNotNull(BinaryIndex.read(buffer).find("a.txt"));
+    }
+
+    /**
+     * Empty indexes are valid.
+     *
+     * @throws Exception If the index couldn't be read.
+     */
+    @Test
+    public void empty() throws Exception {
+        BinaryIndex binary = BinaryIndex.read(ByteBuffer.wrap(BinaryIndex.write(new Index(new ArrayList<>()))));
+
+        assertEquals(0, binary.count());
+        assertNull(binary.find("a.txt"));
+        assertTrue(binary.toIndex().assets().isEmpty());
+    }
+
+    /**
+     * JSON indexes, other versions and truncated indexes are rejected.
+     */
+    @Test
+    public void invalid() {
+        ByteBuffer json = ByteBuffer.wrap("{\"_assets\":[],\"_shardDepth\":0,\"_journalOffset\":0}".getBytes(StandardCharsets.UTF_8));
+        assertFalse(BinaryIndex.isBinary(json));
+        BinaryIndexTest.assertInvalid(json);
+
+        byte[] bytes = BinaryIndex.write(BinaryIndexTest.index());
+        ByteBuffer version = ByteBuffer.wrap(bytes.clone());
+        version.putInt(4, BinaryIndex.VERSION + 1);
+        BinaryIndexTest.assertInvalid(version);
+
+        BinaryIndexTest.assertInvalid(ByteBuffer.wrap(Arrays.copyOf(bytes, BinaryIndex.HEADER_LENGTH + BinaryIndex.RECORD_LENGTH)));
+    }
+
+    /**
+     * Checks that a buffer can't be read as a binary index.
+     *
+     * @param buffer Buffer to read.
+     */
+    private static void assertInvalid(ByteBuffer buffer) {
+        try {
+            BinaryIndex.read(buffer);
+
+            fail("Buffer was read as a binary index");
+        } catch (IOException e) {
+            // Expected.
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package com.manulaiko.assetsobscurer.assets;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.*;
+
+/**
+ * BloomFilter tests.
+ * ==================
+ *
+ * Checks that added strings are always found and that
+ * the false positive rate is close to the expected one.
+ *
+ * @author Manulaiko <manulaiko@gmail.com>
+ */
+public class BloomFilterTest {
+    /**
+     * Added strings are found, and most of the others aren't.
+     */
+    @Test
+    public void mightContain() {
+        int count = 100000;
+        BloomFilter filter = new BloomFilter(count);
+        for (int i = 0; i < count; i++) {
+            filter.add("assets/d" + (i % 100) + "/" + i + ".png");
+        }
+
+        for (int i = 0; i < count; i++) {
+            assertTrue(filter.mightContain("assets/d" + (i % 100) + "/" + i + ".png"));
+        }
+
+        int positives = 0;
+        for (int i = count; i < 2 * count; i++) {
+            if (filter.mightContain("assets/d" + (i % 100) + "/" + i + ".png")) {
+                positives++;
+            }
+        }
+
+        assertTrue("False positive rate " + positives * 100.0 / count + "%", positives < count * 0.03);
+    }
+
+    /**
+     * Empty filters don't contain anything.
+     */
+    @Test
+    public void empty() {
+        BloomFilter filter = new BloomFilter(0);
+
+        assertFalse(filter.mightContain(""));
+        assertFalse(filter.mightContain("assets/a.png"));
+    }
+
+    /**
+     * Strings added by several threads are all found, even by
+     * threads checking the filter while they're added.
+     *
+     * @throws Exception If a thread was interrupted.
+     */
+    @Test
+    public void concurrentAdds() throws Exception {
+        int count = 100000;
+        int threads = 4;
+        BloomFilter filter = new BloomFilter(count);
+        AtomicBoolean lost = new AtomicBoolean();
+
+        List<Thread> writers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            int first = t;
+            writers.add(new Thread(() -> {
+                for (int i = first; i < count; i += threads) {
+                    String value = "assets/d" + (i % 100) + "/" + i + ".png";
+                    filter.add(value);
+
+                    if (!filter.mightContain(value)) {
+                        lost.set(true);
+                    }
+                }
+            }));
+        }
+        writers.forEach(Thread::start);
+        for (Thread writer : writers) {
+            writer.join();
+        }
+
+        assertFalse(lost.get());
+        for (int i = 0; i < count; i++) {
+            assertTrue(filter.mightContain("assets/d" + (i % 100) + "/" + i + ".png"));
+        }
+    }
+}
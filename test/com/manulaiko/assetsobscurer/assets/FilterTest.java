@@ -0,0 +1,108 @@
+package com.manulaiko.assetsobscurer.assets;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.*;
+
+/**
+ * Filter tests.
+ * =============
+ *
+ * Parses include/exclude patterns and filters the scanned files.
+ *
+ * @author Manulaiko <manulaiko@gmail.com>
+ */
+public class FilterTest {
+    /**
+     * Temporary folder.
+     */
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Patterns are split by commas outside braces.
+     */
+    @Test
+    public void split() {
+        assertEquals(Arrays.asList("**.png", "*.{psd,xcf}", "raw/**"), Filter.split("**.png, *.{psd,xcf},,raw/** "));
+        assertTrue(Filter.split("").isEmpty());
+    }
+
+    /**
+     * Filter files have a pattern per line.
+     *
+     * @throws Exception If the file couldn't be written.
+     */
+    @Test
+    public void read() throws Exception {
+        Path file = this.folder.newFile("filters.txt").toPath();
+        Files.write(file, Arrays.asList("# Comment", "", "+**.png", "-*.psd", "  .git  ", "+ "));
+        List<String> include = new ArrayList<>();
+        List<String> exclude = new ArrayList<>();
+
+        Filter.read(file, include, exclude);
+
+        assertEquals(Collections.singletonList("**.png"), include);
+        assertEquals(Arrays.asList("*.psd", ".git"), exclude);
+    }
+
+    /**
+     * Patterns without `/` match file names, the others relative paths,
+     * and exclude rules win over include rules.
+     */
+    @Test
+    public void accepts() {
+        Path root = Paths.get("assets");
+        Filter filter = new Filter(root, Arrays.asList("**.png", "sounds/*"), Arrays.asList("*.psd", "raw/**", "**/tmp_*"));
+
+        assertTrue(filter.accepts(root.resolve("a.png")));
+        assertTrue(filter.accepts(root.resolve("maps/forest.png")));
+        assertTrue(filter.accepts(root.resolve("sounds/rain.ogg")));
+        assertFalse(filter.accepts(root.resolve("sounds/loops/rain.ogg")));
+        assertFalse(filter.accepts(root.resolve("maps/forest.jpg")));
+        assertFalse(filter.accepts(root.resolve("raw/forest.png")));
+        assertFalse(filter.accepts(root.resolve("maps/tmp_forest.png")));
+        assertFalse(filter.accepts(root.resolve("sounds/rain.psd")));
+
+        Filter all = new Filter(root, Collections.emptyList(), Collections.singletonList(".git"));
+        assertTrue(all.accepts(root.resolve("maps/forest.jpg")));
+        assertFalse(all.accepts(root.resolve("maps/.git")));
+        assertTrue(all.prunes(root.resolve("maps/.git")));
+        assertFalse(all.prunes(root.resolve("maps")));
+        assertFalse(new Filter(root, Collections.emptyList(), Collections.singletonList("*")).prunes(root));
+    }
+
+    /**
+     * Excluded directories aren't scanned, and only the included files are indexed.
+     *
+     * @throws Exception If the files couldn't be written.
+     */
+    @Test
+    public void scan() throws Exception {
+        Path root = this.folder.getRoot().toPath();
+        for (String name : new String[]{"a.png", "a.psd", "maps/b.png", "maps/b.txt", "raw/c.png", ".git/d.png", "sounds/e.ogg"}) {
+            Path path = root.resolve(name);
+            Files.createDirectories(path.getParent());
+            Files.write(path, new byte[1]);
+        }
+
+        Scanner scanner = new Scanner(root.toFile(), new Filter(root, Arrays.asList("**.png", "*.ogg"), Arrays.asList("raw", ".git", "*.psd")));
+        scanner.scan();
+
+        assertEquals(
+                Arrays.asList("a.png", "maps/b.png", "sounds/e.ogg"),
+                scanner.assets().stream()
+                       .map(a -> root.relativize(Paths.get(a.path())).toString())
+                       .sorted()
+                       .collect(Collectors.toList())
+        );
+    }
+}
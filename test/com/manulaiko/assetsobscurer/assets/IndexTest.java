@@ -0,0 +1,366 @@
+package com.manulaiko.assetsobscurer.assets;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.manulaiko.assetsobscurer.main.Settings;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * Index tests.
+ * ============
+ *
+ * Looks up, adds, updates, removes, queries and checks indexed
+ * assets, and reads and writes indexes in JSON.
+ *
+ * @author Manulaiko <manulaiko@gmail.com>
+ */
+public class IndexTest {
+    /**
+     * Index written by the first releases.
+     */
+    public static final String LEGACY_JSON = "{\"_assets\":[" +
+            "{\"_hash\":\"F00DBABE00000000000000000000000000000001\",\"_path\":\"assets/maps/forest.png\",\"_isEncrypted\":true}," +
+            "{\"_hash\":\"0000000000000000000000000000000000000002\",\"_path\":\"assets/sounds/rain.ogg\",\"_isEncrypted\":false}," +
+            "{\"_hash\":\"\",\"_path\":\"assets/new.png\",\"_isEncrypted\":false}" +
+            "]}";
+
+    /**
+     * Temporary folder.
+     */
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Restores the settings.
+     */
+    @After
+    public void tearDown() {
+        Settings.assets = new File("assets");
+        Settings.checkInterval = 5000;
+    }
+
+    /**
+     * Assets are found by any equivalent path, and missing assets aren't.
+     */
+    @Test
+    public void find() {
+        Index index = BinaryIndexTest.index();
+
+        assertEquals("b/z.png", index.find("b/z.png").path());
+        assertEquals("b/z.png", index.find("b/./z.png").path());
+        assertEquals("b/z.png", index.find("b//z.png").path());
+        assertEquals("a.txt", index.find("c/../a.txt").path());
+        assertNull(index.find("b/y.png"));
+        assertNull(index.find("b"));
+        assertTrue(index.contains(new Index.Asset("", "b/d/../new file.ogg", false)));
+    }
+
+    /**
+     * Assets sharing an encrypted file are counted.
+     */
+    @Test
+    public void references() {
+        Index index = BinaryIndexTest.index();
+
+        assertEquals(2, index.references("F00DBABE00000000000000000000000000000001"));
+        assertEquals(1, index.references("0000000000000000000000000000000000000002"));
+        assertEquals(0, index.references("0000000000000000000000000000000000000009"));
+        assertEquals(0, index.references(""));
+
+        index.remove(a -> a.path().equals("c/copy of z.png"));
+        assertEquals(1, index.references("F00DBABE00000000000000000000000000000001"));
+
+        index.update(new Index.Asset("0000000000000000000000000000000000000009", "b/z.png", true));
+        assertEquals(0, index.references("F00DBABE00000000000000000000000000000001"));
+        assertEquals(1, index.references("0000000000000000000000000000000000000009"));
+    }
+
+    /**
+     * Assets with an indexed path or named after an indexed hash aren't added.
+     */
+    @Test
+    public void add() {
+        Index index = BinaryIndexTest.index();
+        int count = index.assets().size();
+
+        assertFalse(index.add(new Index.Asset("", "b/./z.png", false)));
+        assertFalse(index.add(new Index.Asset("", "F00DBABE00000000000000000000000000000001", false)));
+        assertTrue(index.add(new Index.Asset("", "d/added.png", false)));
+        assertEquals(count + 1, index.assets().size());
+        assertNotNull(index.find("d/added.png"));
+
+        index.put(new Index.Asset("", "F00DBABE00000000000000000000000000000001", false));
+        assertNotNull(index.find("F00DBABE00000000000000000000000000000001"));
+        assertEquals(count + 2, index.assets().size());
+    }
+
+    /**
+     * Updated assets are replaced by a copy instead of being modified.
+     */
+    @Test
+    public void update() {
+        Index index = BinaryIndexTest.index();
+        Index.Asset asset = index.find("b/new file.ogg");
+        Index.Asset update = new Index.Asset("0000000000000000000000000000000000000004", "b/new file.ogg", true, 21, 2001);
+
+        assertTrue(index.update(update));
+        assertFalse(index.update(new Index.Asset("", "d/missing.png", false)));
+
+        Index.Asset updated = index.find("b/new file.ogg");
+        assertNotSame(asset, updated);
+        assertNotSame(update, updated);
+        assertEquals(update.toString(), updated.toString());
+        assertFalse(asset.isEncrypted());
+        assertTrue(index.assets().contains(updated));
+        assertFalse(index.assets().contains(asset));
+    }
+
+    /**
+     * Removed assets can't be found and the rest still can.
+     */
+    @Test
+    public void remove() {
+        Index index = BinaryIndexTest.index();
+
+        assertEquals(3, index.remove(a -> a.path().startsWith("b/")).size());
+        assertNull(index.find("b/z.png"));
+        assertNull(index.find("b/d/e.json"));
+        assertNotNull(index.find("a.txt"));
+        assertNotNull(index.find("c/copy of z.png"));
+
+        index.update(new Index.Asset("0000000000000000000000000000000000000009", "c/copy of z.png", true));
+        assertEquals("0000000000000000000000000000000000000009", index.find("c/copy of z.png").hash());
+        assertEquals(2, index.assets().size());
+
+        assertEquals(2, index.remove(a -> true).size());
+        assertTrue(new Index(new ArrayList<>()).remove(a -> true).isEmpty());
+    }
+
+    /**
+     * Indexes are written to JSON and read back.
+     */
+    @Test
+    public void json() {
+        Index index = BinaryIndexTest.index();
+        Index read = new Gson().fromJson(new Gson().toJson(index), Index.class);
+
+        assertEquals(2, read.shardDepth());
+        assertEquals(1234, read.journalOffset());
+        assertEquals(index.assets().size(), read.assets().size());
+        for (Index.Asset asset : index.assets()) {
+            assertEquals(asset.toString(), String.valueOf(read.find(asset.path())));
+        }
+    }
+
+    /**
+     * Assets are written with the same fields as before they were stored in compact form.
+     */
+    @Test
+    public void jsonFields() {
+        JsonObject json = new Gson().toJsonTree(BinaryIndexTest.index()).getAsJsonObject();
+        JsonObject asset = json.getAsJsonArray("_assets").get(0).getAsJsonObject();
+
+        assertEquals(
+                new HashSet<>(Arrays.asList("_hash", "_path", "_isEncrypted", "_size", "_modified")),
+                asset.keySet()
+        );
+        assertEquals("F00DBABE00000000000000000000000000000001", asset.get("_hash").getAsString());
+        assertEquals("b/z.png", asset.get("_path").getAsString());
+        assertTrue(asset.get("_isEncrypted").getAsBoolean());
+        assertFalse(json.has("_paths"));
+    }
+
+    /**
+     * Indexes written by the first releases are still read.
+     */
+    @Test
+    public void legacyJson() {
+        Index index = new Gson().fromJson(IndexTest.LEGACY_JSON, Index.class);
+
+        assertEquals(0, index.shardDepth());
+        assertEquals(0, index.journalOffset());
+        assertEquals(3, index.assets().size());
+
+        Index.Asset asset = index.find("assets/maps/forest.png");
+        assertEquals("F00DBABE00000000000000000000000000000001", asset.hash());
+        assertTrue(asset.isEncrypted());
+        assertEquals(0, asset.size());
+        assertEquals("", index.find("assets/new.png").hash());
+        assertFalse(index.find("assets/./sounds/../new.png").isEncrypted());
+        assertEquals(1, index.references("0000000000000000000000000000000000000002"));
+    }
+
+    /**
+     * Assets with invalid hashes are rejected.
+     */
+    @Test(expected = JsonParseException.class)
+    public void invalidHash() {
+        new Gson().fromJson("{\"_assets\":[{\"_hash\":\"nope\",\"_path\":\"a.png\",\"_isEncrypted\":true}]}", Index.class);
+    }
+
+    /**
+     * Assets are iterated by path prefix.
+     */
+    @Test
+    public void prefixed() {
+        Index index = IndexTest.queried();
+
+        assertEquals(Arrays.asList("b/d/e.json", "b/new file.ogg", "b/z.png"), IndexTest.paths(index.prefixed("b/")));
+        assertEquals(Arrays.asList("b/d/e.json", "b/new file.ogg", "b/z.png", "bb/X.PNG", "bb/noext"), IndexTest.paths(index.prefixed("b")));
+        assertEquals(Arrays.asList("b/d/e.json"), IndexTest.paths(index.prefixed("b/./d")));
+        assertEquals(Arrays.asList("b/new file.ogg"), IndexTest.paths(index.prefixed("b/n")));
+        assertEquals(Arrays.asList("bb/X.PNG", "bb/noext"), IndexTest.paths(index.prefixed("bb")));
+        assertEquals(index.assets().size(), IndexTest.paths(index.prefixed("")).size());
+        assertTrue(IndexTest.paths(index.prefixed("x/")).isEmpty());
+    }
+
+    /**
+     * Assets are iterated by glob pattern.
+     */
+    @Test
+    public void matching() {
+        Index index = IndexTest.queried();
+
+        assertEquals(Arrays.asList("b/z.png"), IndexTest.paths(index.matching("b/*.png")));
+        assertEquals(Arrays.asList("b/d/e.json", "b/z.png"), IndexTest.paths(index.matching("b/**.{png,json}")));
+        assertEquals(Arrays.asList("c/copy of z.png"), IndexTest.paths(index.matching("*/copy*")));
+        assertTrue(IndexTest.paths(index.matching("b/*.txt")).isEmpty());
+    }
+
+    /**
+     * Assets are iterated by extension, whatever its case.
+     */
+    @Test
+    public void withExtension() {
+        Index index = IndexTest.queried();
+
+        assertEquals(Arrays.asList("b/z.png", "bb/X.PNG", "c/copy of z.png"), IndexTest.paths(index.withExtension("png")));
+        assertEquals(Arrays.asList("b/z.png", "bb/X.PNG", "c/copy of z.png"), IndexTest.paths(index.withExtension(".PNG")));
+        assertEquals(Arrays.asList("bb/noext"), IndexTest.paths(index.withExtension("")));
+
+        index.remove(a -> a.path().equals("b/z.png"));
+        index.add(new Index.Asset("", "d/added.png", false));
+        assertEquals(Arrays.asList("bb/X.PNG", "c/copy of z.png", "d/added.png"), IndexTest.paths(index.withExtension("png")));
+    }
+
+    /**
+     * Assets are iterated by their current encryption state.
+     */
+    @Test
+    public void withEncryption() {
+        Index index = IndexTest.queried();
+
+        assertEquals(Arrays.asList("b/d/e.json", "b/z.png", "c/copy of z.png"), IndexTest.paths(index.withEncryption(true)));
+        assertEquals(Arrays.asList("a.txt", "b/new file.ogg", "bb/X.PNG", "bb/noext"), IndexTest.paths(index.withEncryption(false)));
+
+        index.update(new Index.Asset("0000000000000000000000000000000000000004", "b/new file.ogg", true));
+        index.update(new Index.Asset("F00DBABE00000000000000000000000000000001", "b/z.png", false));
+        assertEquals(Arrays.asList("b/d/e.json", "b/new file.ogg", "c/copy of z.png"), IndexTest.paths(index.withEncryption(true)));
+        assertEquals(Arrays.asList("a.txt", "b/z.png", "bb/X.PNG", "bb/noext"), IndexTest.paths(index.withEncryption(false)));
+    }
+
+    /**
+     * Assets whose file (or encrypted file) doesn't exist are removed,
+     * whether their directory is listed, checked file by file or deleted.
+     *
+     * @throws Exception If the files couldn't be written.
+     */
+    @Test
+    public void check() throws Exception {
+        Path root = this.folder.getRoot().toPath();
+        Settings.assets = root.toFile();
+        Index index = new Index(new ArrayList<>());
+        for (String name : new String[]{"a/1.png", "a/2.png", "a/3.png", "b/4.png", "c/5.png", "c/6.png", "d/7.png"}) {
+            Path path = root.resolve(name);
+            Files.createDirectories(path.getParent());
+            Files.write(path, new byte[1]);
+            index.add(new Index.Asset("", path.toString(), false));
+        }
+        index.add(new Index.Asset("0000000000000000000000000000000000000001", root.resolve("e/8.png").toString(), true));
+        index.add(new Index.Asset("0000000000000000000000000000000000000002", root.resolve("e/9.png").toString(), true));
+        Files.write(Index.blob("0000000000000000000000000000000000000001"), new byte[1]);
+
+        Files.delete(root.resolve("a/2.png"));
+        Files.delete(root.resolve("b/4.png"));
+        Files.delete(root.resolve("c/5.png"));
+        Files.delete(root.resolve("c/6.png"));
+        Files.delete(root.resolve("c"));
+        index.check(true);
+
+        List<String> expected = new ArrayList<>();
+        for (String name : new String[]{"a/1.png", "a/3.png", "d/7.png", "e/8.png"}) {
+            expected.add(root.resolve(name).toString());
+        }
+        assertEquals(expected, IndexTest.paths(index.assets().iterator()));
+    }
+
+    /**
+     * Checks are skipped if the index was checked recently.
+     *
+     * @throws Exception If the files couldn't be written.
+     */
+    @Test
+    public void checkInterval() throws Exception {
+        Path root = this.folder.getRoot().toPath();
+        Settings.assets = root.toFile();
+        Path path = root.resolve("a/1.png");
+        Files.createDirectories(path.getParent());
+        Files.write(path, new byte[1]);
+        Index index = new Index(new ArrayList<>());
+        index.add(new Index.Asset("", path.toString(), false));
+        index.add(new Index.Asset("", root.resolve("a/2.png").toString(), false));
+
+        index.check();
+        assertEquals(1, index.assets().size());
+
+        Files.delete(path);
+        index.check();
+        assertEquals(1, index.assets().size());
+        index.check(true);
+        assertTrue(index.assets().isEmpty());
+
+        Settings.checkInterval = 0;
+        index.add(new Index.Asset("", path.toString(), false));
+        index.check();
+        assertTrue(index.assets().isEmpty());
+    }
+
+    /**
+     * Builds an index with some assets to query.
+     *
+     * @return Index.
+     */
+    private static Index queried() {
+        Index index = BinaryIndexTest.index();
+        index.add(new Index.Asset("", "bb/X.PNG", false));
+        index.add(new Index.Asset("", "bb/noext", false));
+
+        return index;
+    }
+
+    /**
+     * Returns the paths of some assets.
+     *
+     * @param assets Assets.
+     *
+     * @return Sorted paths of `assets`.
+     */
+    private static List<String> paths(Iterator<Index.Asset> assets) {
+        List<String> paths = new ArrayList<>();
+        assets.forEachRemaining(a -> paths.add(a.path()));
+        Collections.sort(paths);
+
+        return paths;
+    }
+}
@@ -0,0 +1,258 @@
+package com.manulaiko.assetsobscurer.assets;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+/**
+ * Journal tests.
+ * ==============
+ *
+ * Logs changes to a journal and replays them on an index.
+ *
+ * @author Manulaiko <manulaiko@gmail.com>
+ */
+public class JournalTest {
+    /**
+     * Temporary folder.
+     */
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Path to the journal.
+     */
+    private Path _path;
+
+    /**
+     * Opened journal.
+     */
+    private Journal _journal;
+
+    /**
+     * Opens the journal.
+     *
+     * @throws Exception If the journal couldn't be opened.
+     */
+    @Before
+    public void setUp() throws Exception {
+        this._path = this.folder.getRoot().toPath().resolve("assets.journal");
+        this._journal = Journal.open(this._path);
+    }
+
+    /**
+     * Closes the journal.
+     *
+     * @throws Exception If the journal couldn't be closed.
+     */
+    @After
+    public void tearDown() throws Exception {
+        this._journal.close();
+    }
+
+    /**
+     * Logged changes are applied in order.
+     *
+     * @throws Exception If the journal couldn't be written or read.
+     */
+    @Test
+    public void roundTrip() throws Exception {
+        this._journal.put(new Index.Asset("0000000000000000000000000000000000000001", "a.png", true, 10, 1000));
+        this._journal.put(new Index.Asset("", "b.png", false, 20, 2000));
+        this._journal.remove("a.png");
+        this._journal.put(new Index.Asset("0000000000000000000000000000000000000002", "b.png", true, 20, 2000));
+        this._journal.flush();
+        assertEquals(0, this._journal.count());
+
+        Index index = new Index(new ArrayList<>());
+        assertEquals(4, this._journal.replay(index, 0));
+
+        assertNull(index.find("a.png"));
+        assertEquals(
+                new Index.Asset("0000000000000000000000000000000000000002", "b.png", true, 20, 2000).toString(),
+                String.valueOf(index.find("b.png"))
+        );
+        assertEquals(1, index.assets().size());
+    }
+
+    /**
+     * Removes are applied together, but still in order with the
+     * puts of the same paths, and the assets keep their order.
+     *
+     * @throws Exception If the journal couldn't be written or read.
+     */
+    @Test
+    public void removes() throws Exception {
+        int count = 20000;
+        Index index = new Index(new ArrayList<>());
+        for (int i = 0; i < count; i++) {
+            index.add(new Index.Asset("", "d" + (i % 10) + "/" + i + ".png", false));
+        }
+
+        for (int i = 0; i < count; i += 2) {
+            this._journal.remove("d" + (i % 10) + "/" + i + ".png");
+        }
+        this._journal.put(new Index.Asset("", "d0/0.png", false, 1, 1000));
+        this._journal.remove("./d2/2.png");
+        this._journal.remove("d1/1.png");
+        this._journal.put(new Index.Asset("", "d1/1.png", false, 2, 2000));
+        this._journal.flush();
+
+        assertEquals(count / 2 + 4, this._journal.replay(index, 0));
+        assertEquals(count / 2 + 1, index.assets().size());
+        assertEquals(1, index.find("d0/0.png").size());
+        assertEquals(2, index.find("d1/1.png").size());
+        assertNull(index.find("d2/2.png"));
+        assertNotNull(index.find("d3/3.png"));
+        assertEquals("d3/3.png", index.assets().get(0).path());
+        assertEquals(
+                Arrays.asList("d0/0.png", "d1/1.png"),
+                Arrays.asList(index.assets().get(count / 2 - 1).path(), index.assets().get(count / 2).path())
+        );
+
+        index.update(new Index.Asset("", "d5/5.png", false, 3, 3000));
+        assertEquals(3, index.assets().get(1).size());
+    }
+
+    /**
+     * Only the batches written after the given offset are applied,
+     * and pending changes aren't written until they're flushed.
+     *
+     * @throws Exception If the journal couldn't be written or read.
+     */
+    @Test
+    public void offset() throws Exception {
+        this._journal.put(new Index.Asset("", "a.png", false));
+        this._journal.flush();
+        long offset = this._journal.end();
+
+        this._journal.put(new Index.Asset("", "b.png", false));
+        this._journal.flush();
+        this._journal.put(new Index.Asset("", "c.png", false));
+
+        Index index = new Index(new ArrayList<>());
+        assertEquals(1, this._journal.replay(index, offset));
+        assertNull(index.find("a.png"));
+        assertNotNull(index.find("b.png"));
+        assertNull(index.find("c.png"));
+    }
+
+    /**
+     * The changes of an index are logged, but not the ones
+     * replayed from the journal.
+     *
+     * @throws Exception If the journal couldn't be written or read.
+     */
+    @Test
+    public void index() throws Exception {
+        Index index = new Index(new ArrayList<>());
+        index.journal(this._journal);
+        index.add(new Index.Asset("", "a.png", false));
+        index.update(new Index.Asset("0000000000000000000000000000000000000001", "a.png", true));
+        index.add(new Index.Asset("", "b.png", false));
+        index.remove(a -> a.path().equals("b.png"));
+        this._journal.flush();
+        long end = this._journal.end();
+
+        Index replayed = new Index(new ArrayList<>());
+        replayed.journal(this._journal);
+        assertEquals(4, this._journal.replay(replayed, 0));
+        assertSame(this._journal, replayed.journal());
+        assertEquals(0, this._journal.count());
+        assertEquals(end, this._journal.end());
+
+        assertEquals(index.find("a.png").toString(), String.valueOf(replayed.find("a.png")));
+        assertNull(replayed.find("b.png"));
+    }
+
+    /**
+     * A batch that wasn't fully written is discarded with everything after it.
+     *
+     * @throws Exception If the journal couldn't be written or read.
+     */
+    @Test
+    public void corrupted() throws Exception {
+        this._journal.put(new Index.Asset("", "a.png", false));
+        this._journal.flush();
+        long end = this._journal.end();
+        long size = Files.size(this._path);
+
+        try (FileChannel channel = FileChannel.open(this._path, StandardOpenOption.APPEND)) {
+            // Length of a batch that was being written.
+            channel.write(ByteBuffer.wrap(new byte[10]).putInt(0, 1000));
+        }
+
+        Index index = new Index(new ArrayList<>());
+        assertEquals(1, this._journal.replay(index, 0));
+        assertNotNull(index.find("a.png"));
+        assertEquals(size, Files.size(this._path));
+        assertEquals(end, this._journal.end());
+
+        this._journal.put(new Index.Asset("", "b.png", false));
+        this._journal.flush();
+        assertEquals(2, this._journal.replay(new Index(new ArrayList<>()), 0));
+    }
+
+    /**
+     * Truncated journals keep the offsets of the remaining batches.
+     *
+     * @throws Exception If the journal couldn't be written, truncated or read.
+     */
+    @Test
+    public void truncate() throws Exception {
+        this._journal.put(new Index.Asset("", "a.png", false));
+        this._journal.flush();
+        long offset = this._journal.end();
+        this._journal.put(new Index.Asset("", "b.png", false));
+        this._journal.flush();
+        long end = this._journal.end();
+
+        this._journal.truncate(offset);
+        assertEquals(offset, this._journal.base());
+        assertEquals(end, this._journal.end());
+
+        Index index = new Index(new ArrayList<>());
+        assertEquals(1, this._journal.replay(index, offset));
+        assertNull(index.find("a.png"));
+        assertNotNull(index.find("b.png"));
+
+        this._journal.close();
+        this._journal = Journal.open(this._path);
+        assertEquals(offset, this._journal.base());
+        assertEquals(end, this._journal.end());
+
+        this._journal.truncate(end);
+        assertEquals(0, this._journal.length());
+        assertEquals(0, this._journal.replay(new Index(new ArrayList<>()), offset));
+    }
+
+    /**
+     * Files that aren't journals are rejected.
+     *
+     * @throws Exception If the file couldn't be written.
+     */
+    @Test
+    public void invalid() throws Exception {
+        Path path = this.folder.newFile("invalid.journal").toPath();
+        Files.write(path, "{\"_assets\":[]}".getBytes());
+
+        try (Journal journal = Journal.open(path)) {
+            fail(path + " was opened as a journal with base " + journal.base());
+        } catch (IOException e) {
+            // Expected.
+        }
+    }
+}
@@ -0,0 +1,245 @@
+package com.manulaiko.assetsobscurer.assets;
+
+import com.manulaiko.assetsobscurer.main.EncryptionManagerTest;
+import com.manulaiko.assetsobscurer.main.Settings;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.*;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.*;
+
+/**
+ * Obscurer tests.
+ * ===============
+ *
+ * Encrypts and decrypts the files of a temporary assets folder.
+ *
+ * @author Manulaiko <manulaiko@gmail.com>
+ */
+public class ObscurerTest {
+    /**
+     * Temporary folder.
+     */
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Assets folder.
+     */
+    private Path _root;
+
+    /**
+     * Decrypted assets, by path.
+     */
+    private final Map<String, byte[]> _files = new HashMap<>();
+
+    /**
+     * Sets the temporary folder as the assets folder.
+     */
+    @Before
+    public void setUp() {
+        this._root = this.folder.getRoot().toPath();
+        Settings.assets = this._root.toFile();
+    }
+
+    /**
+     * Restores the settings.
+     */
+    @After
+    public void tearDown() {
+        Settings.assets = new File("assets");
+        Settings.shardDepth = 0;
+        Settings.parallelThreshold = 64L * 1024 * 1024;
+        Settings.chunkSize = 4 * 1024 * 1024;
+        Settings.workers = Runtime.getRuntime().availableProcessors();
+        Settings.memoryBudget = 256L * 1024 * 1024;
+    }
+
+    /**
+     * Encrypted files are named after the hash of the decrypted file
+     * and moved to their shard without leaving temporary files behind.
+     *
+     * @throws Exception If the assets couldn't be written or read.
+     */
+    @Test
+    public void encrypt() throws Exception {
+        Settings.shardDepth = 1;
+        List<Index.Asset> assets = Arrays.asList(
+                this._write("a/1.png", 100),
+                this._write("a/2.png", 100),
+                this._write("b/3.png", 200)
+        );
+        Obscurer obscurer = new Obscurer(assets);
+        obscurer.sizes(new HashSet<>(Collections.singletonList(100L)));
+
+        List<Index.Asset> encrypted = obscurer.encrypt();
+        assertEquals(new HashSet<>(assets), new HashSet<>(encrypted));
+        for (Index.Asset asset : assets) {
+            byte[] bytes = this._files.get(asset.path());
+
+            assertTrue(asset.isEncrypted());
+            assertEquals(Hash.of(MessageDigest.getInstance("SHA1").digest(bytes)).toString(), asset.hash());
+            assertEquals(bytes.length, asset.size());
+            assertFalse(Files.exists(this._root.resolve(asset.path())));
+            assertEquals(this._root.resolve(asset.hash().substring(0, 2)), asset.blob().getParent());
+            assertArrayEquals(bytes, obscurer.decrypt(asset.blob()));
+        }
+        assertEquals(Collections.emptyList(), this._temporaryFiles());
+
+        List<Index.Asset> decrypted = obscurer.decrypt();
+        assertEquals(new HashSet<>(assets), new HashSet<>(decrypted));
+        for (Index.Asset asset : assets) {
+            assertFalse(asset.isEncrypted());
+            assertArrayEquals(this._files.get(asset.path()), Files.readAllBytes(this._root.resolve(asset.path())));
+        }
+        assertEquals(Collections.emptyList(), this._temporaryFiles());
+    }
+
+    /**
+     * Batches are encrypted and decrypted by several workers, even
+     * if the memory budget only fits one asset at a time.
+     *
+     * @throws Exception If the assets couldn't be written or read.
+     */
+    @Test
+    public void batch() throws Exception {
+        Settings.workers = 4;
+        Settings.parallelThreshold = 1024;
+        Settings.chunkSize = 4096;
+
+        for (long budget : new long[]{1, 256L * 1024 * 1024}) {
+            Settings.memoryBudget = budget;
+            this._files.clear();
+            List<Index.Asset> assets = new ArrayList<>();
+            for (int i = 0; i < 20; i++) {
+                assets.add(this._write(budget + "/" + i + ".png", 100 + i * 1000));
+            }
+            Obscurer obscurer = new Obscurer(assets);
+
+            assertEquals(assets.size(), obscurer.encrypt().size());
+            for (Index.Asset asset : assets) {
+                assertTrue(asset.isEncrypted());
+                assertArrayEquals(this._files.get(asset.path()), obscurer.decrypt(asset.blob()));
+            }
+
+            assertEquals(assets.size(), obscurer.decrypt().size());
+            for (Index.Asset asset : assets) {
+                assertFalse(asset.isEncrypted());
+                assertArrayEquals(this._files.get(asset.path()), Files.readAllBytes(this._root.resolve(asset.path())));
+            }
+        }
+    }
+
+    /**
+     * Large assets are encrypted and decrypted in parallel chunks,
+     * and can be read from any position.
+     *
+     * @throws Exception If the assets couldn't be written or read.
+     */
+    @Test
+    public void parallelChunks() throws Exception {
+        Settings.parallelThreshold = 1024;
+        Settings.chunkSize = 4096;
+        List<Index.Asset> assets = Arrays.asList(
+                this._write("a/1.png", 100000),
+                this._write("a/2.png", 4096),
+                this._write("a/3.png", 1000)
+        );
+        Obscurer obscurer = new Obscurer(assets);
+
+        assertEquals(3, obscurer.encrypt().size());
+        for (Index.Asset asset : assets) {
+            byte[] bytes = this._files.get(asset.path());
+
+            assertEquals(Hash.of(MessageDigest.getInstance("SHA1").digest(bytes)).toString(), asset.hash());
+            try (SeekableByteChannel channel = AssetChannel.open(asset.blob())) {
+                assertArrayEquals(bytes, PackTest.read(channel));
+            }
+        }
+
+        assertEquals(3, obscurer.decrypt().size());
+        for (Index.Asset asset : assets) {
+            assertArrayEquals(this._files.get(asset.path()), Files.readAllBytes(this._root.resolve(asset.path())));
+        }
+    }
+
+    /**
+     * Interrupted encryptions leave the asset decrypted and
+     * keep the thread interrupted.
+     *
+     * @throws Exception If the assets couldn't be written or read.
+     */
+    @Test
+    public void interrupted() throws Exception {
+        Settings.parallelThreshold = 1024;
+        Settings.chunkSize = 4096;
+        Settings.workers = 1;
+        List<Index.Asset> assets = Arrays.asList(
+                this._write("a/1.png", 100000),
+                this._write("a/2.png", 1000)
+        );
+        Obscurer obscurer = new Obscurer(assets);
+
+        Thread.currentThread().interrupt();
+        assertFalse(obscurer.encrypt(assets.get(0)));
+        assertTrue(Thread.currentThread().isInterrupted());
+        assertTrue(obscurer.encrypt().isEmpty());
+        assertTrue(Thread.interrupted());
+
+        for (Index.Asset asset : assets) {
+            assertFalse(asset.isEncrypted());
+            assertArrayEquals(this._files.get(asset.path()), Files.readAllBytes(this._root.resolve(asset.path())));
+        }
+        assertEquals(Collections.emptyList(), this._temporaryFiles());
+
+        assertEquals(2, obscurer.encrypt().size());
+    }
+
+    /**
+     * Writes a decrypted asset.
+     *
+     * @param name   Path relative to the assets folder.
+     * @param length Asset length.
+     *
+     * @return Decrypted asset.
+     *
+     * @throws Exception If the asset couldn't be written.
+     */
+    private Index.Asset _write(String name, int length) throws Exception {
+        Path path = this._root.resolve(name);
+        byte[] bytes = EncryptionManagerTest.random(length);
+        // Assets of the same length would be equal.
+        bytes[0] = (byte) this._files.size();
+
+        Files.createDirectories(path.getParent());
+        Files.write(path, bytes);
+        this._files.put(path.toString(), bytes);
+
+        return new Index.Asset("", path.toString(), false);
+    }
+
+    /**
+     * Returns the temporary files left in the assets folder.
+     *
+     * @return Paths to the temporary files.
+     *
+     * @throws Exception If the assets folder couldn't be listed.
+     */
+    private List<Path> _temporaryFiles() throws Exception {
+        try (Stream<Path> files = Files.walk(this._root)) {
+            return files.filter(f -> f.getFileName().toString().endsWith(".tmp"))
+                        .collect(Collectors.toList());
+        }
+    }
+}
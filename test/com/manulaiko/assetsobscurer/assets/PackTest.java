@@ -0,0 +1,263 @@
+package com.manulaiko.assetsobscurer.assets;
+
+import com.manulaiko.assetsobscurer.main.EncryptionManager;
+import com.manulaiko.assetsobscurer.main.EncryptionManagerTest;
+import com.manulaiko.assetsobscurer.main.Settings;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * Pack tests.
+ * ===========
+ *
+ * Writes packs from loose encrypted files and from previous
+ * packs, and reads them back.
+ *
+ * @author Manulaiko <manulaiko@gmail.com>
+ */
+public class PackTest {
+    /**
+     * Reads a channel until its end.
+     *
+     * @param channel Channel to read.
+     *
+     * @return Read bytes.
+     *
+     * @throws IOException If the channel couldn't be read.
+     */
+    public static byte[] read(SeekableByteChannel channel) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate((int) channel.size());
+        while (buffer.hasRemaining() && channel.read(buffer) != -1) {
+            // Keep reading until the buffer is full.
+        }
+
+        return buffer.array();
+    }
+
+    /**
+     * Temporary folder.
+     */
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Decrypted files, by hash.
+     */
+    private final Map<String, byte[]> _files = new TreeMap<>();
+
+    /**
+     * Writes some loose encrypted files.
+     *
+     * @throws Exception If the files couldn't be written.
+     */
+    @Before
+    public void setUp() throws Exception {
+        Settings.assets = this.folder.getRoot();
+        Settings.shardDepth = 1;
+
+        for (int length : new int[]{0, 10, 1000, EncryptionManager.BUFFER_SIZE * 2 + 3}) {
+            byte[] plain = EncryptionManagerTest.random(length);
+            String hash = Hash.of(MessageDigest.getInstance("SHA1").digest(plain)).toString();
+
+            Path blob = Index.blob(hash);
+            Files.createDirectories(blob.getParent());
+            Files.write(blob, EncryptionManager.instance().encrypt(plain));
+
+            this._files.put(hash, plain);
+        }
+    }
+
+    /**
+     * Restores the settings.
+     */
+    @After
+    public void tearDown() {
+        Settings.assets = new File("assets");
+        Settings.shardDepth = 0;
+    }
+
+    /**
+     * Packed files are read back decrypted.
+     *
+     * @throws Exception If the pack couldn't be written or read.
+     */
+    @Test
+    public void roundTrip() throws Exception {
+        Path path = this.folder.getRoot().toPath().resolve("assets.pack");
+        List<String> hashes = new ArrayList<>(this._files.keySet());
+        hashes.add("");
+
+        assertEquals(this._files.size(), Pack.write(path, hashes, null));
+
+        try (Pack pack = Pack.open(path)) {
+            assertEquals(this._files.size(), pack.count());
+            assertEquals(new ArrayList<>(this._files.keySet()), pack.hashes());
+
+            for (Map.Entry<String, byte[]> file : this._files.entrySet()) {
+                assertTrue(pack.contains(file.getKey()));
+
+                try (SeekableByteChannel channel = pack.channel(file.getKey())) {
+                    assertArrayEquals(file.getKey(), file.getValue(), PackTest.read(channel));
+                }
+            }
+
+            assertFalse(pack.contains("0000000000000000000000000000000000000000"));
+            assertFalse(pack.contains("not a hash"));
+            assertNull(pack.channel("0000000000000000000000000000000000000000"));
+        }
+    }
+
+    /**
+     * Files without a loose file are copied from the previous pack,
+     * and missing files are skipped.
+     *
+     * @throws Exception If the packs couldn't be written or read.
+     */
+    @Test
+    public void previous() throws Exception {
+        Path first = this.folder.getRoot().toPath().resolve("first.pack");
+        Path second = this.folder.getRoot().toPath().resolve("second.pack");
+        Pack.write(first, this._files.keySet(), null);
+
+        for (String hash : this._files.keySet()) {
+            Files.delete(Index.blob(hash));
+        }
+
+        List<String> hashes = new ArrayList<>(this._files.keySet());
+        hashes.add("FFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFF");
+        try (Pack previous = Pack.open(first)) {
+            assertEquals(this._files.size(), Pack.write(second, hashes, previous));
+        }
+
+        try (Pack pack = Pack.open(second)) {
+            for (Map.Entry<String, byte[]> file : this._files.entrySet()) {
+                try (SeekableByteChannel channel = pack.channel(file.getKey())) {
+                    assertArrayEquals(file.getKey(), file.getValue(), PackTest.read(channel));
+                }
+            }
+        }
+    }
+
+    /**
+     * Packed files are written back as loose files.
+     *
+     * @throws Exception If the pack couldn't be written or exploded.
+     */
+    @Test
+    public void explode() throws Exception {
+        Path path = this.folder.getRoot().toPath().resolve("assets.pack");
+        Map<String, byte[]> encrypted = new HashMap<>();
+        for (String hash : this._files.keySet()) {
+            encrypted.put(hash, Files.readAllBytes(Index.blob(hash)));
+        }
+        Pack.write(path, this._files.keySet(), null);
+
+        String kept = this._files.keySet().iterator().next();
+        for (String hash : this._files.keySet()) {
+            if (!hash.equals(kept)) {
+                Files.delete(Index.blob(hash));
+            }
+        }
+
+        try (Pack pack = Pack.open(path)) {
+            assertEquals(this._files.size() - 1, pack.explode());
+            assertEquals(0, pack.explode());
+        }
+
+        for (String hash : this._files.keySet()) {
+            assertArrayEquals(hash, encrypted.get(hash), Files.readAllBytes(Index.blob(hash)));
+        }
+    }
+
+    /**
+     * Files that aren't packs are rejected.
+     *
+     * @throws Exception If the files couldn't be written.
+     */
+    @Test
+    public void invalid() throws Exception {
+        Path path = this.folder.newFile("invalid.pack").toPath();
+
+        Files.write(path, new byte[]{1, 2, 3});
+        PackTest.assertInvalid(path);
+
+        Files.write(path, ByteBuffer.allocate(Pack.HEADER_LENGTH).putInt(0x12345678).putInt(Pack.VERSION).putInt(0).array());
+        PackTest.assertInvalid(path);
+
+        Files.write(path, ByteBuffer.allocate(Pack.HEADER_LENGTH).putInt(Pack.MAGIC).putInt(Pack.VERSION).putInt(10).array());
+        PackTest.assertInvalid(path);
+    }
+
+    /**
+     * Packs whose table points outside the pack or isn't sorted are rejected.
+     *
+     * @throws Exception If the pack couldn't be written.
+     */
+    @Test
+    public void invalidEntries() throws Exception {
+        Path path = this.folder.getRoot().toPath().resolve("assets.pack");
+        Pack.write(path, this._files.keySet(), null);
+        byte[] valid = Files.readAllBytes(path);
+        int entry = Pack.HEADER_LENGTH + Pack.ENTRY_LENGTH;
+        int offset = entry + Hash.LENGTH;
+
+        for (long[] change : new long[][]{
+                {offset, valid.length},
+                {offset, 0},
+                {offset, Long.MAX_VALUE},
+                {offset + 8, -1},
+                {offset + 8, valid.length},
+                {offset + 8, Long.MAX_VALUE}
+        }) {
+            ByteBuffer bytes = ByteBuffer.wrap(valid.clone());
+            bytes.putLong((int) change[0], change[1]);
+            Files.write(path, bytes.array());
+
+            PackTest.assertInvalid(path);
+        }
+
+        // Swaps the hashes of the first two entries.
+        byte[] unsorted = valid.clone();
+        System.arraycopy(valid, Pack.HEADER_LENGTH, unsorted, entry, Hash.LENGTH);
+        System.arraycopy(valid, entry, unsorted, Pack.HEADER_LENGTH, Hash.LENGTH);
+        Files.write(path, unsorted);
+        PackTest.assertInvalid(path);
+
+        ByteBuffer count = ByteBuffer.wrap(valid.clone());
+        count.putInt(8, Integer.MAX_VALUE);
+        Files.write(path, count.array());
+        PackTest.assertInvalid(path);
+
+        Files.write(path, valid);
+        try (Pack pack = Pack.open(path)) {
+            assertEquals(this._files.size(), pack.count());
+        }
+    }
+
+    /**
+     * Checks that a file can't be opened as a pack.
+     *
+     * @param path Path to the file.
+     */
+    private static void assertInvalid(Path path) {
+        try (Pack pack = Pack.open(path)) {
+            fail(path + " was opened as a pack with " + pack.count() + " files");
+        } catch (IOException e) {
+            // Expected.
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package com.manulaiko.assetsobscurer.assets;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.*;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.*;
+
+/**
+ * Scanner tests.
+ * ==============
+ *
+ * Scans a temporary assets folder.
+ *
+ * @author Manulaiko <manulaiko@gmail.com>
+ */
+public class ScannerTest {
+    /**
+     * Temporary folder.
+     */
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Every file of every directory is found once, with its fingerprint.
+     *
+     * @throws Exception If the files couldn't be written.
+     */
+    @Test
+    public void scan() throws Exception {
+        Path root = this.folder.getRoot().toPath();
+        List<String> expected = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            Path path = root.resolve("d" + (i % 7) + "/e" + (i % 3) + "/" + i + ".png");
+            Files.createDirectories(path.getParent());
+            Files.write(path, new byte[i]);
+            Files.setLastModifiedTime(path, FileTime.fromMillis(1000L * i));
+
+            expected.add(path.toString());
+        }
+        Path top = root.resolve("top.png");
+        Files.write(top, new byte[3]);
+        expected.add(top.toString());
+        Files.createDirectories(root.resolve("empty"));
+        Collections.sort(expected);
+
+        Scanner scanner = new Scanner(root.toFile(), new Filter(root, Collections.emptyList(), Collections.emptyList()));
+        scanner.scan();
+
+        assertEquals(expected, ScannerTest.paths(scanner.assets()));
+        for (Index.Asset asset : scanner.assets()) {
+            assertEquals("", asset.hash());
+            assertFalse(asset.isEncrypted());
+            assertEquals(Files.size(new File(asset.path()).toPath()), asset.size());
+            assertEquals(Files.getLastModifiedTime(new File(asset.path()).toPath()).toMillis(), asset.modified());
+        }
+    }
+
+    /**
+     * Index files, packs, journals and temporary files aren't assets.
+     *
+     * @throws Exception If the files couldn't be written.
+     */
+    @Test
+    public void skipped() throws Exception {
+        Path root = this.folder.getRoot().toPath();
+        for (String name : new String[]{"assets.index", "assets.index.a", "assets.pack", "assets.journal", "a/.1.png.0123.tmp"}) {
+            Path path = root.resolve(name);
+            Files.createDirectories(path.getParent());
+            Files.write(path, new byte[1]);
+        }
+        Path asset = root.resolve("a/1.png");
+        Files.write(asset, new byte[1]);
+
+        Scanner scanner = new Scanner(root.toFile(), new Filter(root, Collections.emptyList(), Collections.emptyList()));
+        scanner.scan();
+        assertEquals(Collections.singletonList(asset.toString()), ScannerTest.paths(scanner.assets()));
+
+        scanner = new Scanner(root.toFile(), new Filter(root, Collections.emptyList(), Collections.emptyList()));
+        scanner.add(asset.toFile());
+        scanner.add(root.resolve("assets.index").toFile());
+        scanner.add(root.resolve("missing.png").toFile());
+        assertEquals(Collections.singletonList(asset.toString()), ScannerTest.paths(scanner.assets()));
+    }
+
+    /**
+     * Returns the paths of some assets.
+     *
+     * @param assets Assets.
+     *
+     * @return Sorted paths of `assets`.
+     */
+    private static List<String> paths(List<Index.Asset> assets) {
+        return assets.stream()
+                     .map(Index.Asset::path)
+                     .sorted()
+                     .collect(Collectors.toList());
+    }
+}
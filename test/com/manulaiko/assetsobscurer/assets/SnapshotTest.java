@@ -0,0 +1,131 @@
+package com.manulaiko.assetsobscurer.assets;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+import static org.junit.Assert.*;
+
+/**
+ * Snapshot tests.
+ * ===============
+ *
+ * Builds snapshots of an index and updates them with its changes.
+ *
+ * @author Manulaiko <manulaiko@gmail.com>
+ */
+public class SnapshotTest {
+    /**
+     * Assets are found by any equivalent path, and missing assets aren't.
+     */
+    @Test
+    public void find() {
+        Snapshot snapshot = new Snapshot(BinaryIndexTest.index(), null);
+
+        assertEquals(5, snapshot.count());
+        assertNotNull(snapshot.find("b/z.png"));
+        assertNotNull(snapshot.find("b/./z.png"));
+        assertNotNull(snapshot.find("c/../a.txt"));
+        assertNull(snapshot.find("b/y.png"));
+        assertNull(snapshot.find("b"));
+    }
+
+    /**
+     * Snapshots don't see the changes made to the index after they were built.
+     */
+    @Test
+    public void isolation() {
+        Index index = BinaryIndexTest.index();
+        Snapshot snapshot = new Snapshot(index, null);
+        String before = snapshot.find("b/new file.ogg").toString();
+
+        index.add(new Index.Asset("", "d/added.png", false));
+        index.update(new Index.Asset("0000000000000000000000000000000000000004", "b/new file.ogg", true, 20, 2000));
+        index.remove(a -> a.path().equals("a.txt"));
+
+        assertNull(snapshot.find("d/added.png"));
+        assertEquals(before, snapshot.find("b/new file.ogg").toString());
+        assertNotNull(snapshot.find("a.txt"));
+    }
+
+    /**
+     * Updated snapshots share the maps of the previous one and see the changes.
+     */
+    @Test
+    public void update() {
+        Index index = BinaryIndexTest.index();
+        assertNull(index.changes());
+        Snapshot first = new Snapshot(index, null);
+
+        index.add(new Index.Asset("", "d/added.png", false));
+        Snapshot second = first.update(index, index.changes(), null);
+
+        index.update(new Index.Asset("0000000000000000000000000000000000000004", "b/new file.ogg", true, 20, 2000));
+        index.remove(a -> a.path().equals("a.txt"));
+        Snapshot third = second.update(index, index.changes(), null);
+
+        assertSame(first.assets(), second.assets());
+        assertSame(first.assets(), third.assets());
+        assertEquals(index.assets().size(), third.count());
+
+        assertNull(first.find("d/added.png"));
+        assertNotNull(second.find("d/added.png"));
+        assertNotNull(third.find("d/./added.png"));
+
+        assertFalse(second.find("b/new file.ogg").isEncrypted());
+        assertTrue(third.find("b/new file.ogg").isEncrypted());
+
+        assertNotNull(second.find("a.txt"));
+        assertNull(third.find("a.txt"));
+    }
+
+    /**
+     * Snapshots are built again if the changes aren't known or there are too many of them.
+     */
+    @Test
+    public void rebuild() {
+        Index index = BinaryIndexTest.index();
+        index.changes();
+        Snapshot snapshot = new Snapshot(index, null);
+
+        index.add(new Index.Asset("", "d/added.png", false));
+        Snapshot unknown = snapshot.update(index, null, null);
+        assertNotSame(snapshot.assets(), unknown.assets());
+        assertNotNull(unknown.find("d/added.png"));
+
+        index.changes();
+        int limit = Snapshot.changesLimit(index.assets().size());
+        for (int i = 0; i <= limit; i++) {
+            index.add(new Index.Asset("", "e/" + i + ".png", false));
+        }
+        Snapshot many = unknown.update(index, index.changes(), null);
+        assertNotSame(unknown.assets(), many.assets());
+        assertEquals(index.assets().size(), many.count());
+        assertNotNull(many.find("e/" + limit + ".png"));
+    }
+
+    /**
+     * Snapshots of a binary index build their bloom filter on the first miss.
+     *
+     * @throws Exception If the binary index couldn't be read.
+     */
+    @Test
+    public void binary() throws Exception {
+        Index index = BinaryIndexTest.index();
+        Snapshot snapshot = new Snapshot(BinaryIndex.read(ByteBuffer.wrap(BinaryIndex.write(index))), null);
+
+        assertNotNull(snapshot.find("b/z.png"));
+        assertNull(snapshot.filter());
+        assertNull(snapshot.find("b/y.png"));
+        assertNotNull(snapshot.filter());
+        assertNull(snapshot.find("b/y.png"));
+        assertNotNull(snapshot.find("b//z.png"));
+
+        Snapshot updated = snapshot.update(index, new HashMap<>(), null);
+        assertNotNull(updated.assets());
+        assertNotNull(updated.find("b/z.png"));
+        assertNull(new Snapshot(new Index(new ArrayList<>()), null).find("b/z.png"));
+    }
+}
@@ -0,0 +1,182 @@
+package com.manulaiko.assetsobscurer.assets;
+
+import com.manulaiko.assetsobscurer.main.EncryptionManagerTest;
+import com.manulaiko.assetsobscurer.main.Settings;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.Assert.*;
+
+/**
+ * Watcher tests.
+ * ==============
+ *
+ * Changes the files of a watched temporary assets folder.
+ *
+ * @author Manulaiko <manulaiko@gmail.com>
+ */
+public class WatcherTest {
+    /**
+     * Temporary folder.
+     */
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Assets folder.
+     */
+    private Path _root;
+
+    /**
+     * Watched assets manager.
+     */
+    private AssetsManager _manager;
+
+    /**
+     * Sets the temporary folder as the assets folder.
+     */
+    @Before
+    public void setUp() {
+        this._root = this.folder.getRoot().toPath();
+        Settings.assets = this._root.toFile();
+        Settings.watchDelay = 50;
+
+        this._manager = new AssetsManager(Settings.assets);
+        this._manager.initialize();
+    }
+
+    /**
+     * Stops watching and restores the settings.
+     */
+    @After
+    public void tearDown() {
+        this._manager.unwatch();
+
+        Settings.assets = new File("assets");
+        Settings.watchDelay = 500;
+    }
+
+    /**
+     * Only the new and changed assets are encrypted, and the
+     * encrypted files they replace are deleted.
+     *
+     * @throws Exception If the assets couldn't be written.
+     */
+    @Test
+    public void encrypt() throws Exception {
+        this._write("a/1.png", 100);
+        this._manager.scan();
+        this._manager.watch(true);
+
+        this._write("b/2.png", 200);
+        this._await(() -> this._isEncrypted("b/2.png"));
+        String hash = this._find("b/2.png").hash();
+        assertFalse(this._find("a/1.png").isEncrypted());
+
+        this._write("b/2.png", 300);
+        this._await(() -> this._isEncrypted("b/2.png") && !this._find("b/2.png").hash().equals(hash));
+        assertEquals(300, this._find("b/2.png").size());
+        assertFalse(Files.exists(Index.blob(hash)));
+        assertFalse(this._find("a/1.png").isEncrypted());
+        assertEquals(2, this._manager.snapshot().count());
+    }
+
+    /**
+     * Deleted files and directories are removed from the index.
+     *
+     * @throws Exception If the assets couldn't be written or deleted.
+     */
+    @Test
+    public void remove() throws Exception {
+        this._write("a/1.png", 100);
+        this._write("a/b/2.png", 200);
+        this._write("ab/3.png", 300);
+        this._write("4.png", 400);
+        this._manager.scan();
+        this._manager.watch(false);
+
+        Files.delete(this._root.resolve("4.png"));
+        Files.delete(this._root.resolve("a/b/2.png"));
+        Files.delete(this._root.resolve("a/b"));
+        Files.delete(this._root.resolve("a/1.png"));
+        Files.delete(this._root.resolve("a"));
+        this._await(() -> this._manager.snapshot().count() == 1);
+
+        assertNull(this._find("a/1.png"));
+        assertNull(this._find("a/b/2.png"));
+        assertNull(this._find("4.png"));
+        assertFalse(this._find("ab/3.png").isEncrypted());
+
+        this._write("ab/5.png", 500);
+        this._await(() -> this._find("ab/5.png") != null);
+        assertFalse(this._find("ab/5.png").isEncrypted());
+    }
+
+    /**
+     * Writes a decrypted asset.
+     *
+     * @param name   Path relative to the assets folder.
+     * @param length Asset length.
+     *
+     * @throws Exception If the asset couldn't be written.
+     */
+    private void _write(String name, int length) throws Exception {
+        Path path = this._root.resolve(name);
+        Path tmp = path.resolveSibling("." + path.getFileName() + ".tmp");
+
+        // Written to an ignored temporary file and moved, so the watcher doesn't read half written files.
+        Files.createDirectories(path.getParent());
+        Files.write(tmp, EncryptionManagerTest.random(length));
+        Files.move(tmp, path);
+    }
+
+    /**
+     * Finds an asset in the last published snapshot.
+     *
+     * @param name Path relative to the assets folder.
+     *
+     * @return Asset or null if it isn't indexed.
+     */
+    private Index.Asset _find(String name) {
+        return this._manager.snapshot().find(this._root.resolve(name).toString());
+    }
+
+    /**
+     * Checks whether an asset is indexed and encrypted.
+     *
+     * @param name Path relative to the assets folder.
+     *
+     * @return Whether the asset is encrypted or not.
+     */
+    private boolean _isEncrypted(String name) {
+        Index.Asset asset = this._find(name);
+
+        return asset != null && asset.isEncrypted();
+    }
+
+    /**
+     * Waits until a condition is met.
+     *
+     * @param condition Condition to wait for.
+     *
+     * @throws Exception If the condition wasn't met in 10 seconds.
+     */
+    private void _await(BooleanSupplier condition) throws Exception {
+        long end = System.currentTimeMillis() + 10000;
+        while (!condition.getAsBoolean()) {
+            if (System.currentTimeMillis() > end) {
+                fail("Timed out waiting for the watcher");
+            }
+
+            Thread.sleep(20);
+        }
+    }
+}
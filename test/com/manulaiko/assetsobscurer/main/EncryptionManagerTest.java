@@ -0,0 +1,357 @@
+package com.manulaiko.assetsobscurer.main;
+
+import com.manulaiko.assetsobscurer.assets.AssetChannel;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.IvParameterSpec;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * EncryptionManager tests.
+ * ========================
+ *
+ * Round trips through the current (AES-CTR) container and
+ * reads of legacy (AES-CBC) assets.
+ *
+ * @author Manulaiko <manulaiko@gmail.com>
+ */
+public class EncryptionManagerTest {
+    /**
+     * Builds a legacy (version 1) asset the way the first releases did.
+     *
+     * @param plain Decrypted asset.
+     *
+     * @return Encrypted asset.
+     *
+     * @throws Exception If the asset couldn't be encrypted.
+     */
+    public static byte[] legacy(byte[] plain) throws Exception {
+        EncryptionManager manager = EncryptionManager.instance();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream output = new DataOutputStream(bytes);
+
+        Cipher rsa = Cipher.getInstance(EncryptionManager.ASYMMETRIC_TRANSFORMATION);
+        rsa.init(Cipher.ENCRYPT_MODE, manager.publicKey());
+        byte[] key = rsa.doFinal(manager.secretKey().getEncoded());
+        output.writeInt(key.length);
+        output.write(key);
+
+        byte[] iv = new byte[EncryptionManager.BLOCK_SIZE];
+        new Random(1).nextBytes(iv);
+        output.write(iv);
+
+        Cipher cipher = Cipher.getInstance(EncryptionManager.LEGACY_TRANSFORMATION);
+        cipher.init(Cipher.ENCRYPT_MODE, manager.secretKey(), new IvParameterSpec(iv));
+        output.write(cipher.doFinal(plain));
+
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Returns random bytes.
+     *
+     * @param length Amount of bytes.
+     *
+     * @return Random bytes.
+     */
+    public static byte[] random(int length) {
+        byte[] bytes = new byte[length];
+        new Random(length).nextBytes(bytes);
+
+        return bytes;
+    }
+
+    /**
+     * Temporary folder.
+     */
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Encrypted assets are decrypted back, whatever their size.
+     */
+    @Test
+    public void roundTrip() {
+        EncryptionManager manager = EncryptionManager.instance();
+
+        for (int length : new int[]{0, 1, 15, 16, 17, EncryptionManager.BUFFER_SIZE + 1, 3 * EncryptionManager.BUFFER_SIZE}) {
+            byte[] plain = EncryptionManagerTest.random(length);
+            byte[] encrypted = manager.encrypt(plain);
+
+            assertNotNull(encrypted);
+            assertArrayEquals("Length " + length, plain, manager.decrypt(encrypted));
+        }
+    }
+
+    /**
+     * Streams are encrypted as they're written and decrypted
+     * without closing them.
+     *
+     * @throws Exception If the streams couldn't be written.
+     */
+    @Test
+    public void streams() throws Exception {
+        EncryptionManager manager = EncryptionManager.instance();
+        byte[] plain = EncryptionManagerTest.random(2 * EncryptionManager.BUFFER_SIZE + 7);
+
+        ByteArrayOutputStream encrypted = new ByteArrayOutputStream();
+        try (OutputStream output = manager.encrypt(encrypted)) {
+            for (int i = 0; i < plain.length; i += 1000) {
+                output.write(plain, i, Math.min(1000, plain.length - i));
+            }
+        }
+
+        boolean[] closed = new boolean[1];
+        InputStream input = new ByteArrayInputStream(encrypted.toByteArray()) {
+            @Override
+            public void close() {
+                closed[0] = true;
+            }
+        };
+        ByteArrayOutputStream decrypted = new ByteArrayOutputStream();
+
+        assertTrue(manager.decrypt(input, decrypted));
+        assertFalse(closed[0]);
+        assertArrayEquals(plain, decrypted.toByteArray());
+        assertArrayEquals(plain, manager.decrypt(encrypted.toByteArray()));
+    }
+
+    /**
+     * Channels are encrypted and decrypted from their current position.
+     *
+     * @throws Exception If the channels couldn't be read or written.
+     */
+    @Test
+    public void channels() throws Exception {
+        EncryptionManager manager = EncryptionManager.instance();
+        byte[] plain = EncryptionManagerTest.random(3 * EncryptionManager.BUFFER_SIZE + 5);
+        Path input = this.folder.newFile("input").toPath();
+        Path encrypted = this.folder.newFile("encrypted").toPath();
+        Path decrypted = this.folder.newFile("decrypted").toPath();
+        Files.write(input, plain);
+
+        try (
+                FileChannel in = FileChannel.open(input, StandardOpenOption.READ);
+                FileChannel out = FileChannel.open(encrypted, StandardOpenOption.WRITE)
+        ) {
+            out.write(ByteBuffer.wrap(new byte[]{1, 2, 3}));
+            assertTrue(manager.encrypt(in, out));
+        }
+
+        try (
+                FileChannel in = FileChannel.open(encrypted, StandardOpenOption.READ);
+                FileChannel out = FileChannel.open(decrypted, StandardOpenOption.WRITE)
+        ) {
+            in.position(3);
+            assertTrue(manager.decrypt(in, out));
+            assertEquals(in.size(), in.position());
+        }
+
+        assertArrayEquals(plain, Files.readAllBytes(decrypted));
+    }
+
+    /**
+     * Assets sharing a session key cost at most one RSA operation.
+     */
+    @Test
+    public void sessionKeys() {
+        EncryptionManager manager = EncryptionManager.instance();
+        byte[][] encrypted = new byte[10][];
+        for (int i = 0; i < encrypted.length; i++) {
+            encrypted[i] = manager.encrypt(EncryptionManagerTest.random(i));
+        }
+
+        long misses = manager.keyCacheMisses().get();
+        long hits = manager.keyCacheHits().get();
+        for (int i = 0; i < encrypted.length; i++) {
+            assertArrayEquals(EncryptionManagerTest.random(i), manager.decrypt(encrypted[i]));
+        }
+
+        assertTrue(manager.keyCacheMisses().get() - misses <= 1);
+        assertTrue(manager.keyCacheHits().get() - hits >= encrypted.length - 1);
+    }
+
+    /**
+     * Ciphers are given back to the pool when streams fail.
+     */
+    @Test
+    public void failedStreams() {
+        EncryptionManager manager = EncryptionManager.instance();
+        byte[] encrypted = manager.encrypt(EncryptionManagerTest.random(100));
+        OutputStream failing = new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                throw new IOException("Disk full");
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                throw new IOException("Disk full");
+            }
+        };
+
+        int pooled = Math.max(1, manager.pooled(EncryptionManager.SYMMETRIC_TRANSFORMATION));
+        assertFalse(manager.encrypt(new ByteArrayInputStream(new byte[100]), failing));
+        assertEquals(pooled, manager.pooled(EncryptionManager.SYMMETRIC_TRANSFORMATION));
+        assertFalse(manager.decrypt(new ByteArrayInputStream(encrypted), failing));
+        assertEquals(pooled, manager.pooled(EncryptionManager.SYMMETRIC_TRANSFORMATION));
+    }
+
+    /**
+     * Ciphers are reused instead of creating new ones for each asset.
+     */
+    @Test
+    public void pooledCiphers() {
+        EncryptionManager manager = EncryptionManager.instance();
+        byte[] encrypted = manager.encrypt(EncryptionManagerTest.random(100));
+        int pooled = manager.pooled(EncryptionManager.SYMMETRIC_TRANSFORMATION);
+
+        for (int i = 0; i < 20; i++) {
+            assertArrayEquals(EncryptionManagerTest.random(100), manager.decrypt(manager.encrypt(EncryptionManagerTest.random(100))));
+            assertArrayEquals(EncryptionManagerTest.random(100), manager.decrypt(encrypted));
+        }
+
+        assertEquals(pooled, manager.pooled(EncryptionManager.SYMMETRIC_TRANSFORMATION));
+    }
+
+    /**
+     * Session keys longer than the RSA modulus are rejected before reading them.
+     *
+     * @throws Exception If the legacy asset couldn't be built.
+     */
+    @Test
+    public void invalidKeyLength() throws Exception {
+        EncryptionManager manager = EncryptionManager.instance();
+        byte[] encrypted = manager.encrypt(EncryptionManagerTest.random(100));
+        byte[] legacy = EncryptionManagerTest.legacy(EncryptionManagerTest.random(100));
+
+        for (int length : new int[]{Integer.MAX_VALUE, 1 << 20, 129, 0, -1}) {
+            ByteBuffer.wrap(encrypted).putInt(8, length);
+            ByteBuffer.wrap(legacy).putInt(0, length);
+
+            assertNull("Length " + length, manager.decrypt(encrypted));
+            assertNull("Legacy length " + length, manager.decrypt(legacy));
+        }
+    }
+
+    /**
+     * Assets are written in the current container format.
+     *
+     * @throws Exception If the header couldn't be read.
+     */
+    @Test
+    public void header() throws Exception {
+        EncryptionManager manager = EncryptionManager.instance();
+        byte[] plain = EncryptionManagerTest.random(100);
+        byte[] encrypted = manager.encrypt(plain);
+
+        ByteBuffer buffer = ByteBuffer.wrap(encrypted);
+        assertEquals(EncryptionManager.MAGIC, buffer.getInt(0));
+        assertEquals(EncryptionManager.VERSION, buffer.getInt(4));
+
+        Header header = manager.readHeader(new DataInputStream(new ByteArrayInputStream(encrypted)));
+        assertFalse(header.isLegacy());
+        assertEquals(encrypted.length - plain.length, header.length());
+    }
+
+    /**
+     * Any block of the payload can be decrypted on its own.
+     *
+     * @throws Exception If the block couldn't be decrypted.
+     */
+    @Test
+    public void randomAccess() throws Exception {
+        EncryptionManager manager = EncryptionManager.instance();
+        byte[] plain = EncryptionManagerTest.random(10 * EncryptionManager.BLOCK_SIZE);
+        byte[] encrypted = manager.encrypt(plain);
+        Header header = manager.readHeader(new DataInputStream(new ByteArrayInputStream(encrypted)));
+
+        int block = 7;
+        int start = (int) header.length() + block * EncryptionManager.BLOCK_SIZE;
+        Cipher cipher = manager.cipher(header, block, null);
+        byte[] decrypted = cipher.update(Arrays.copyOfRange(encrypted, start, start + EncryptionManager.BLOCK_SIZE));
+        manager.release(cipher);
+
+        assertArrayEquals(
+                Arrays.copyOfRange(plain, block * EncryptionManager.BLOCK_SIZE, (block + 1) * EncryptionManager.BLOCK_SIZE),
+                decrypted
+        );
+    }
+
+    /**
+     * Legacy assets can still be decrypted.
+     *
+     * @throws Exception If the legacy asset couldn't be built.
+     */
+    @Test
+    public void legacy() throws Exception {
+        EncryptionManager manager = EncryptionManager.instance();
+
+        for (int length : new int[]{0, 16, 100, 2 * EncryptionManager.BUFFER_SIZE + 5}) {
+            byte[] plain = EncryptionManagerTest.random(length);
+            byte[] encrypted = EncryptionManagerTest.legacy(plain);
+
+            Header header = manager.readHeader(new DataInputStream(new ByteArrayInputStream(encrypted)));
+            assertTrue(header.isLegacy());
+            assertArrayEquals("Length " + length, plain, manager.decrypt(encrypted));
+        }
+    }
+
+    /**
+     * Both formats can be read from any position through an `AssetChannel`.
+     *
+     * @throws Exception If the assets couldn't be read.
+     */
+    @Test
+    public void channel() throws Exception {
+        byte[] plain = EncryptionManagerTest.random(5 * EncryptionManager.BUFFER_SIZE + 123);
+        Path current = this.folder.newFile("current").toPath();
+        Path legacy = this.folder.newFile("legacy").toPath();
+        Files.write(current, EncryptionManager.instance().encrypt(plain));
+        Files.write(legacy, EncryptionManagerTest.legacy(plain));
+
+        for (Path path : new Path[]{current, legacy}) {
+            try (AssetChannel channel = AssetChannel.open(path)) {
+                assertEquals(plain.length, channel.size());
+
+                int position = 3 * EncryptionManager.BUFFER_SIZE - 7;
+                ByteBuffer buffer = ByteBuffer.allocate(1000);
+                channel.position(position);
+                while (buffer.hasRemaining() && channel.read(buffer) != -1) {
+                    // Keep reading until the buffer is full.
+                }
+
+                assertArrayEquals(path.toString(), Arrays.copyOfRange(plain, position, position + 1000), buffer.array());
+            }
+        }
+    }
+
+    /**
+     * Containers of a newer version are rejected.
+     */
+    @Test
+    public void unsupportedVersion() {
+        byte[] encrypted = EncryptionManager.instance().encrypt(EncryptionManagerTest.random(10));
+        ByteBuffer.wrap(encrypted).putInt(4, EncryptionManager.VERSION + 1);
+
+        assertNull(EncryptionManager.instance().decrypt(encrypted));
+    }
+}